@@ -0,0 +1,82 @@
+package atri.palaash.jvosk.bench;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Deterministic speech-like test audio so benchmarks never need real recordings.
+ * <p>
+ * The signal is a harmonic "voice" whose pitch and loudness change per syllable,
+ * separated by short pauses, which exercises both the acoustic model and endpointing.
+ */
+public final class SyntheticAudio {
+
+    private SyntheticAudio() {
+    }
+
+    /**
+     * Generate 16-bit little-endian PCM with the given rate and channel count.
+     */
+    public static byte[] speechLikePcm(int seconds, int sampleRate, int channels) {
+        Random random = new Random(42);
+        int frames = seconds * sampleRate;
+        byte[] pcm = new byte[frames * channels * 2];
+
+        int syllableFrames = 0;
+        double pitch = 120;
+        double amplitude = 0;
+        double phase = 0;
+
+        for (int i = 0; i < frames; i++) {
+            if (syllableFrames-- <= 0) {
+                // ~200ms syllables, one in five is a pause
+                syllableFrames = sampleRate / 8 + random.nextInt(sampleRate / 6);
+                pitch = 90 + random.nextInt(160);
+                amplitude = random.nextInt(5) == 0 ? 0 : 3000 + random.nextInt(6000);
+            }
+
+            phase += 2 * Math.PI * pitch / sampleRate;
+            double sample = 0;
+            for (int harmonic = 1; harmonic <= 6; harmonic++) {
+                sample += Math.sin(phase * harmonic) / harmonic;
+            }
+            sample = sample * amplitude + random.nextGaussian() * 150;
+
+            short value = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            for (int channel = 0; channel < channels; channel++) {
+                int offset = (i * channels + channel) * 2;
+                pcm[offset] = (byte) value;
+                pcm[offset + 1] = (byte) (value >> 8);
+            }
+        }
+
+        return pcm;
+    }
+
+    public static AudioFormat pcmFormat(int sampleRate, int channels) {
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, 16, channels,
+                channels * 2, sampleRate, false);
+    }
+
+    /**
+     * Write a WAV file containing {@link #speechLikePcm} audio.
+     */
+    public static File writeWav(int seconds, int sampleRate, int channels) throws IOException {
+        byte[] pcm = speechLikePcm(seconds, sampleRate, channels);
+        AudioFormat format = pcmFormat(sampleRate, channels);
+
+        File wav = File.createTempFile("jvosk_bench_", ".wav");
+        wav.deleteOnExit();
+        try (AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(pcm), format,
+                pcm.length / format.getFrameSize())) {
+            AudioSystem.write(ais, AudioFileFormat.Type.WAVE, wav);
+        }
+        return wav;
+    }
+}
@@ -0,0 +1,101 @@
+package atri.palaash.jvosk.models;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Installation of a downloaded model archive through {@link ModelManager#extractZip},
+ * including stripping of the archive's top-level directory.
+ * <p>
+ * The archive mirrors the layout of a small Vosk model (a few large graph/acoustic files
+ * plus many small config files) filled with incompressible data.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractZipBenchmark {
+
+    @Param({"64"})
+    public int archiveMegabytes;
+
+    private Path workDir;
+    private Path zipPath;
+    private Path extractPath;
+    private ModelManager modelManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("jvosk_bench_");
+        zipPath = workDir.resolve("vosk-model-bench.zip");
+        extractPath = workDir.resolve("models").resolve("vosk-model-bench");
+        modelManager = new ModelManager(workDir.resolve("models").toString());
+
+        Random random = new Random(7);
+        byte[] block = new byte[1024 * 1024];
+        long largeBytes = archiveMegabytes * 1024L * 1024L;
+
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+            String root = "vosk-model-bench/";
+            writeEntry(zos, root + "am/final.mdl", largeBytes / 2, block, random);
+            writeEntry(zos, root + "graph/HCLr.fst", largeBytes / 4, block, random);
+            writeEntry(zos, root + "graph/Gr.fst", largeBytes / 4, block, random);
+            for (int i = 0; i < 50; i++) {
+                writeEntry(zos, root + "conf/file" + i + ".conf", 2048, block, random);
+            }
+            writeEntry(zos, root + "conf/mfcc.conf", 256, block, random);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanIteration() throws IOException {
+        deleteRecursively(extractPath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public Path extractZip() throws IOException {
+        modelManager.extractZip(zipPath, extractPath);
+        return extractPath;
+    }
+
+    private static void writeEntry(ZipOutputStream zos, String name, long size,
+                                   byte[] block, Random random) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        OutputStream out = zos;
+        long remaining = size;
+        while (remaining > 0) {
+            random.nextBytes(block);
+            int length = (int) Math.min(block.length, remaining);
+            out.write(block, 0, length);
+            remaining -= length;
+        }
+        zos.closeEntry();
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (var paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
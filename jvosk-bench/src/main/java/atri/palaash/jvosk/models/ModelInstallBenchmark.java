@@ -0,0 +1,143 @@
+package atri.palaash.jvosk.models;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * End-to-end model install from a local HTTP server: {@link StreamingModelInstaller}
+ * (extract while downloading, over parallel ranges) against {@link RangedDownloader} followed by
+ * {@link ModelManager#extractZip} (download the zip, then extract it).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelInstallBenchmark {
+
+    @Param({"64"})
+    public int archiveMegabytes;
+
+    private HttpServer server;
+    private String url;
+    private Path workDir;
+    private Path zipPath;
+    private Path extractPath;
+    private ModelManager modelManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] archive = buildArchive(archiveMegabytes);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/model.zip", exchange -> {
+            // Serves whole-file GETs and single "bytes=a-b" / "bytes=a-" ranges
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0;
+            int end = archive.length - 1;
+            int status = 200;
+            if (range != null) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                start = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Integer.parseInt(bounds[1]);
+                }
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + archive.length);
+            }
+            exchange.sendResponseHeaders(status, end - start + 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(archive, start, end - start + 1);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/model.zip";
+
+        workDir = Files.createTempDirectory("jvosk_bench_");
+        zipPath = workDir.resolve("models").resolve("vosk-model-bench.zip");
+        extractPath = workDir.resolve("models").resolve("vosk-model-bench");
+        modelManager = new ModelManager(workDir.resolve("models").toString());
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanIteration() throws IOException {
+        deleteRecursively(extractPath);
+        Files.deleteIfExists(zipPath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.stop(0);
+        deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public Path streamingInstall() throws IOException {
+        new StreamingModelInstaller(url, extractPath, 4, () -> false).install(null);
+        return extractPath;
+    }
+
+    @Benchmark
+    public Path downloadThenExtract() throws IOException {
+        new RangedDownloader(url, zipPath, 4, () -> false).download(null);
+        modelManager.extractZip(zipPath, extractPath);
+        Files.delete(zipPath);
+        return extractPath;
+    }
+
+    private static byte[] buildArchive(int megabytes) throws IOException {
+        Random random = new Random(7);
+        byte[] block = new byte[1024 * 1024];
+        long largeBytes = megabytes * 1024L * 1024L;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            String root = "vosk-model-bench/";
+            writeEntry(zos, root + "am/final.mdl", largeBytes / 2, block, random);
+            writeEntry(zos, root + "graph/HCLr.fst", largeBytes / 4, block, random);
+            writeEntry(zos, root + "graph/Gr.fst", largeBytes / 4, block, random);
+            for (int i = 0; i < 50; i++) {
+                writeEntry(zos, root + "conf/file" + i + ".conf", 2048, block, random);
+            }
+            writeEntry(zos, root + "conf/mfcc.conf", 256, block, random);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeEntry(ZipOutputStream zos, String name, long size,
+                                   byte[] block, Random random) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        long remaining = size;
+        while (remaining > 0) {
+            random.nextBytes(block);
+            int length = (int) Math.min(block.length, remaining);
+            zos.write(block, 0, length);
+            remaining -= length;
+        }
+        zos.closeEntry();
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (var paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of recognizer result JSON: {@link RecognizerResultParser} against a Jackson
+ * {@code readTree} baseline, for plain-text and word-level results.
+ * <p>
+ * Run with {@code -prof gc} to compare allocation per result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultParserBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"text", "words"})
+    public String shape;
+
+    private String json;
+    private RecognizerResultParser parser;
+
+    @Setup
+    public void setUp() {
+        json = "words".equals(shape) ? wordLevelResult(40) : "{\n  \"text\" : \"the quick brown fox jumps over the lazy dog\"\n}";
+        parser = new RecognizerResultParser();
+    }
+
+    @Benchmark
+    public JsonNode readTreeOnly() throws IOException {
+        return MAPPER.readTree(json);
+    }
+
+    @Benchmark
+    public TranscriptSegment readTreeToSegment() throws IOException {
+        JsonNode root = MAPPER.readTree(json);
+        String text = root.path("text").asText("");
+        JsonNode result = root.path("result");
+        if (result.isEmpty()) {
+            return new TranscriptSegment(text, 0, 0);
+        }
+
+        List<Word> words = new ArrayList<>(result.size());
+        double confidenceSum = 0;
+        for (JsonNode node : result) {
+            double confidence = node.path("conf").asDouble(1.0);
+            words.add(new Word(node.path("word").asText(),
+                    Math.round(node.path("start").asDouble() * 1000),
+                    Math.round(node.path("end").asDouble() * 1000),
+                    confidence));
+            confidenceSum += confidence;
+        }
+        return new TranscriptSegment(text, words.get(0).startTimeMs,
+                words.get(words.size() - 1).endTimeMs, words, confidenceSum / words.size());
+    }
+
+    @Benchmark
+    public int streamingParseOnly() throws IOException {
+        return parser.parse(json).getWords().size();
+    }
+
+    @Benchmark
+    public TranscriptSegment streamingToSegment() throws IOException {
+        return parser.parse(json).toSegment(0);
+    }
+
+    /**
+     * Build a result in the shape Vosk emits with {@code setWords(true)}.
+     */
+    static String wordLevelResult(int words) {
+        String[] vocabulary = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog"};
+        StringBuilder result = new StringBuilder("{\n  \"result\" : [");
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < words; i++) {
+            String word = vocabulary[i % vocabulary.length];
+            if (i > 0) {
+                result.append(',');
+                text.append(' ');
+            }
+            result.append(String.format("{%n      \"conf\" : %.6f,%n      \"end\" : %.6f,%n      \"start\" : %.6f,%n      \"word\" : \"%s\"%n    }",
+                    0.8 + (i % 5) * 0.04, i * 0.4 + 0.35, i * 0.4, word));
+            text.append(word);
+        }
+
+        return result.append("],\n  \"text\" : \"").append(text).append("\"\n}").toString();
+    }
+}
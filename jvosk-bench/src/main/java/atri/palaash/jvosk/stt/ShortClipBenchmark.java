@@ -0,0 +1,70 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.bench.SyntheticAudio;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per short clip (voicemail-sized) with a fresh {@link Recognizer} per clip against one
+ * taken from the {@link RecognizerPool}.
+ * <p>
+ * Requires {@code -Djvosk.bench.model=<model dir>}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShortClipBenchmark {
+
+    @Param({"1", "5"})
+    public int clipSeconds;
+
+    private Model model;
+    private byte[] pcm;
+
+    @Setup
+    public void setUp() throws IOException {
+        String modelPath = System.getProperty("jvosk.bench.model", "jvosk-bench/model");
+        if (!new File(modelPath).isDirectory()) {
+            throw new IllegalStateException("Vosk model not found at " + modelPath
+                    + " (set -Djvosk.bench.model=<model dir>)");
+        }
+
+        LibVosk.setLogLevel(LogLevel.WARNINGS);
+        model = new Model(modelPath);
+        pcm = SyntheticAudio.speechLikePcm(clipSeconds, 16000, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RecognizerPool.getInstance().closeIdle(model);
+        model.close();
+    }
+
+    @Benchmark
+    public void newRecognizerPerClip(Blackhole blackhole) throws IOException {
+        try (Recognizer recognizer = RecognizerConfig.DEFAULT.createRecognizer(model)) {
+            recognizer.acceptWaveForm(pcm, pcm.length);
+            blackhole.consume(recognizer.getFinalResult());
+        }
+    }
+
+    @Benchmark
+    public void pooledRecognizer(Blackhole blackhole) throws IOException {
+        try (RecognizerPool.Lease lease = RecognizerPool.getInstance().acquire(model, RecognizerConfig.DEFAULT)) {
+            Recognizer recognizer = lease.getRecognizer();
+            recognizer.acceptWaveForm(pcm, pcm.length);
+            blackhole.consume(recognizer.getFinalResult());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.bench.SyntheticAudio;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognition throughput of {@link VoskTranscriber#transcribeFile} on a 16kHz mono WAV
+ * (the {@code transcribeWav} path) for different chunk sizes.
+ * <p>
+ * The score is seconds of processing per second of audio, i.e. the real-time factor.
+ * Requires {@code -Djvosk.bench.model=<model dir>}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TranscribeWavBenchmark {
+
+    private static final int AUDIO_SECONDS = 30;
+
+    @Param({"1024", "4096", "16384", "65536"})
+    public int bufferSize;
+
+    private Model model;
+    private VoskTranscriber transcriber;
+    private File wav;
+
+    @Setup
+    public void setUp() throws IOException {
+        String modelPath = System.getProperty("jvosk.bench.model", "jvosk-bench/model");
+        if (!new File(modelPath).isDirectory()) {
+            throw new IllegalStateException("Vosk model not found at " + modelPath
+                    + " (set -Djvosk.bench.model=<model dir>)");
+        }
+
+        LibVosk.setLogLevel(LogLevel.WARNINGS);
+        model = new Model(modelPath);
+        transcriber = new VoskTranscriber(model);
+        transcriber.setBufferSize(bufferSize);
+        wav = SyntheticAudio.writeWav(AUDIO_SECONDS, 16000, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RecognizerPool.getInstance().closeIdle(model);
+        model.close();
+        wav.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AUDIO_SECONDS)
+    public void transcribeWav(Blackhole blackhole) throws InterruptedException {
+        transcriber.transcribeFile(wav, blackhole::consume);
+    }
+}
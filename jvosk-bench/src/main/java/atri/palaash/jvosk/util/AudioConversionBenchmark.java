@@ -0,0 +1,59 @@
+package atri.palaash.jvosk.util;
+
+import atri.palaash.jvosk.bench.SyntheticAudio;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link AudioSystem} conversion {@code transcribeWav} applies to WAV files
+ * that are not already 16kHz mono, per second of audio.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AudioConversionBenchmark {
+
+    private static final int AUDIO_SECONDS = 10;
+
+    private static final AudioFormat TARGET = new AudioFormat(
+            AudioFormat.Encoding.PCM_SIGNED, 16000, 16, 1, 2, 16000, false);
+
+    @Param({"16000", "22050", "44100", "48000"})
+    public int sourceRate;
+
+    private byte[] pcm;
+    private AudioFormat sourceFormat;
+    private final byte[] buffer = new byte[4096];
+
+    @Setup
+    public void setUp() {
+        pcm = SyntheticAudio.speechLikePcm(AUDIO_SECONDS, sourceRate, 1);
+        sourceFormat = SyntheticAudio.pcmFormat(sourceRate, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AUDIO_SECONDS)
+    public long convertToRecognizerFormat() throws IOException {
+        AudioInputStream source = new AudioInputStream(new ByteArrayInputStream(pcm), sourceFormat,
+                pcm.length / sourceFormat.getFrameSize());
+        AudioInputStream converted = sourceFormat.matches(TARGET)
+                ? source
+                : AudioSystem.getAudioInputStream(TARGET, source);
+
+        long total = 0;
+        int read;
+        while ((read = converted.read(buffer)) >= 0) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,108 @@
+package atri.palaash.jvosk.util;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON export of a million segments: the Jackson-based sinks against the String.format
+ * exporter they replaced, kept here as {@link #legacyJSON}. The legacy exporter writes
+ * neither words nor confidences, so with words the sinks also write several times as much.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class JsonExportBenchmark {
+
+    private static final String[] VOCABULARY = (
+            "the quick brown fox jumps over lazy dog \"quoted\" back\\slash and then "
+            + "some more words that people say in meetings every day").split(" ");
+
+    @Param({"1000000"})
+    public int segmentCount;
+
+    @Param({"0", "8"})
+    public int wordsPerSegment;
+
+    private List<TranscriptSegment> segments;
+    private File output;
+
+    @Setup
+    public void setUp() throws IOException {
+        segments = new ArrayList<>(segmentCount);
+        long time = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            long start = time;
+            List<Word> words = new ArrayList<>(wordsPerSegment);
+            StringBuilder text = new StringBuilder("segment ").append(i);
+            for (int w = 0; w < wordsPerSegment; w++) {
+                String word = VOCABULARY[(i + w * 7) % VOCABULARY.length];
+                words.add(new Word(word, time, time + 280, 0.5 + (i + w) % 50 / 100.0));
+                text.append(' ').append(word);
+                time += 320;
+            }
+            if (wordsPerSegment == 0) {
+                text.append(" says \"the quick brown fox\" jumps over the lazy dog");
+                time += 2000;
+            }
+            segments.add(new TranscriptSegment(text.toString(), start, time,
+                    wordsPerSegment > 0 ? words : Collections.emptyList(), 0.9));
+            time += 120;
+        }
+        output = File.createTempFile("jvosk_bench_", ".json");
+        output.deleteOnExit();
+    }
+
+    @TearDown
+    public void tearDown() {
+        output.delete();
+    }
+
+    @Benchmark
+    public long legacyJSON() throws IOException {
+        legacyJSON(segments, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long sinkJSON() throws IOException {
+        TranscriptExporter.export(segments, "json", output, Map.of("model", "vosk-model-small-en-us-0.15"));
+        return output.length();
+    }
+
+    @Benchmark
+    public long sinkJSONLines() throws IOException {
+        TranscriptExporter.export(segments, "jsonl", output, Map.of("model", "vosk-model-small-en-us-0.15"));
+        return output.length();
+    }
+
+    /**
+     * The exporter as it was before the sinks: String.format per segment, only quotes escaped.
+     */
+    private static void legacyJSON(List<TranscriptSegment> segments, File outputFile) throws IOException {
+        try (FileWriter writer = new FileWriter(outputFile)) {
+            writer.write("{\n  \"segments\": [\n");
+            for (int i = 0; i < segments.size(); i++) {
+                TranscriptSegment seg = segments.get(i);
+                writer.write(String.format("    {\"text\": \"%s\", \"start\": %d, \"end\": %d}%s\n",
+                    seg.text.replace("\"", "\\\""),
+                    seg.startTimeMs,
+                    seg.endTimeMs,
+                    i < segments.size() - 1 ? "," : ""));
+            }
+            writer.write("  ]\n}");
+        }
+    }
+}
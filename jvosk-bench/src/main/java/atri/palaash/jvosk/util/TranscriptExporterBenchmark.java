@@ -0,0 +1,64 @@
+package atri.palaash.jvosk.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export of a long transcript (100k segments, roughly a day of audio) to each timed format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TranscriptExporterBenchmark {
+
+    @Param({"100000"})
+    public int segmentCount;
+
+    private List<TranscriptExporter.TranscriptSegment> segments;
+    private File output;
+
+    @Setup
+    public void setUp() throws IOException {
+        segments = new ArrayList<>(segmentCount);
+        long time = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            long duration = 800 + (i % 7) * 350;
+            segments.add(new TranscriptExporter.TranscriptSegment(
+                    "segment " + i + " says \"the quick brown fox\" jumps over the lazy dog", time, time + duration));
+            time += duration + 120;
+        }
+        output = File.createTempFile("jvosk_bench_", ".out");
+        output.deleteOnExit();
+    }
+
+    @TearDown
+    public void tearDown() {
+        output.delete();
+    }
+
+    @Benchmark
+    public long exportSRT() throws IOException {
+        TranscriptExporter.exportAsSRT(segments, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long exportVTT() throws IOException {
+        TranscriptExporter.exportAsVTT(segments, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long exportJSON() throws IOException {
+        TranscriptExporter.exportAsJSON(segments, output);
+        return output.length();
+    }
+}
@@ -1,19 +1,35 @@
 package atri.palaash.jvosk;
 
+import atri.palaash.jvosk.cli.ServeCommand;
+import atri.palaash.jvosk.cli.TranscribeCommand;
 import atri.palaash.jvosk.models.ModelManager;
 import atri.palaash.jvosk.models.VoskModel;
 import atri.palaash.jvosk.ui.MainFrame;
 import atri.palaash.jvosk.util.AppPreferences;
+import atri.palaash.jvosk.util.TaskScheduler;
 import com.formdev.flatlaf.themes.FlatMacDarkLaf;
 import com.formdev.flatlaf.themes.FlatMacLightLaf;
 
 import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
 public class App {
     public static void main(String[] args) {
+        // Headless commands must be dispatched before anything touches AWT
+        if (args.length > 0 && TranscribeCommand.NAME.equals(args[0])) {
+            System.exit(TranscribeCommand.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && ServeCommand.NAME.equals(args[0])) {
+            System.exit(ServeCommand.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        
+        launchGui();
+    }
+    
+    private static void launchGui() {
         // Set system properties for better macOS integration
         System.setProperty("apple.laf.useScreenMenuBar", "true");
         System.setProperty("apple.awt.application.name", "jvosk");
@@ -63,8 +79,8 @@ public class App {
     }
     
     private static void checkForModelUpdates(ModelManager modelManager) {
-        // Run in background thread
-        new Thread(() -> {
+        // Network request: run on the I/O executor
+        TaskScheduler.getInstance().io().execute(() -> {
             try {
                 // Check if there are installed models first
                 if (modelManager.getInstalledModels().isEmpty()) {
@@ -101,6 +117,6 @@ public class App {
                 // Silently fail - not critical
                 System.err.println("Failed to check for model updates: " + e.getMessage());
             }
-        }, "Model-Update-Checker").start();
+        });
     }
 }
@@ -0,0 +1,190 @@
+package atri.palaash.jvosk.cli;
+
+import atri.palaash.jvosk.models.ModelManager;
+import atri.palaash.jvosk.server.StreamingServer;
+import atri.palaash.jvosk.server.TranscriptionServer;
+import atri.palaash.jvosk.util.TaskScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless transcription server: {@code java -jar jvosk.jar serve --model X --port 8080}.
+ * <p>
+ * Runs a {@link TranscriptionServer} on the models installed in the models directory until
+ * the process is stopped, and with {@code --ws-port} a {@link StreamingServer} for live audio
+ * next to it. Like {@link TranscribeCommand} it never touches Swing or AWT.
+ */
+public class ServeCommand {
+
+    public static final String NAME = "serve";
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    // How long running requests get to finish on shutdown
+    private static final int SHUTDOWN_GRACE_SECONDS = 5;
+
+    private String modelArg;
+    private String modelsDir = System.getProperty("user.home") + File.separator + ".jvosk" + File.separator + "models";
+    private String host = "127.0.0.1";
+    private int port = 8080;
+    private int maxConcurrent = Runtime.getRuntime().availableProcessors();
+    private int maxQueued = -1;
+    private int wsPort = -1;
+    private int maxStreams = -1;
+
+    /**
+     * Parse arguments and serve until the process is stopped.
+     * @return process exit code
+     */
+    public static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        ServeCommand command = new ServeCommand();
+        try {
+            if (!command.parseArgs(args)) {
+                printUsage();
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println();
+            printUsage();
+            return EXIT_USAGE;
+        }
+
+        try {
+            return command.execute();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return EXIT_FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_OK;
+        }
+    }
+
+    private boolean parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h", "--help" -> {
+                    return false;
+                }
+                case "-m", "--model" -> modelArg = requireValue(args, ++i, arg);
+                case "--models-dir" -> modelsDir = requireValue(args, ++i, arg);
+                case "--host" -> host = requireValue(args, ++i, arg);
+                case "--port" -> port = parseInt(requireValue(args, ++i, arg), arg, 0);
+                case "-c", "--max-concurrent" -> maxConcurrent = parseInt(requireValue(args, ++i, arg), arg, 1);
+                case "-q", "--max-queued" -> maxQueued = parseInt(requireValue(args, ++i, arg), arg, 0);
+                case "--ws-port" -> wsPort = parseInt(requireValue(args, ++i, arg), arg, 0);
+                case "--max-streams" -> maxStreams = parseInt(requireValue(args, ++i, arg), arg, 1);
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return true;
+    }
+
+    private int execute() throws IOException, InterruptedException {
+        ModelManager modelManager = new ModelManager(modelsDir);
+        if (modelArg != null && !modelManager.getModelsDirectory().resolve(modelArg).toFile().isDirectory()) {
+            System.err.println("Model not installed in " + modelsDir + ": " + modelArg);
+            return EXIT_FAILED;
+        }
+
+        TranscriptionServer.Builder builder = new TranscriptionServer.Builder(modelManager)
+                .host(host)
+                .port(port)
+                .defaultModel(modelArg)
+                .maxConcurrent(maxConcurrent);
+        if (maxQueued >= 0) {
+            builder.maxQueued(maxQueued);
+        }
+        TranscriptionServer server = builder.build();
+
+        StreamingServer streamingServer = null;
+        if (wsPort >= 0) {
+            StreamingServer.Builder streamingBuilder = new StreamingServer.Builder(modelManager)
+                    .host(host)
+                    .port(wsPort)
+                    .defaultModel(modelArg);
+            if (maxStreams > 0) {
+                streamingBuilder.maxConnections(maxStreams);
+            }
+            streamingServer = streamingBuilder.build();
+        }
+
+        if (modelArg != null) {
+            // Load the default model now rather than on the first request
+            long loadStart = System.currentTimeMillis();
+            modelManager.acquireModel(modelArg).close();
+            System.err.printf("Loaded model %s in %d ms%n", modelArg, System.currentTimeMillis() - loadStart);
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        StreamingServer streams = streamingServer;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.err.println("Shutting down...");
+            if (streams != null) {
+                streams.stop();
+            }
+            server.stop(SHUTDOWN_GRACE_SECONDS);
+            TaskScheduler.getInstance().shutdown(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+            stopped.countDown();
+        }, "ServerShutdown"));
+
+        server.start();
+        System.err.printf("Listening on http://%s:%d/transcribe%n", server.getHost(), server.getPort());
+        if (streams != null) {
+            streams.start();
+            System.err.printf("Streaming on ws://%s:%d/%n", streams.getHost(), streams.getPort());
+        }
+        stopped.await();
+        return EXIT_OK;
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static int parseInt(String value, String option, int min) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < min) {
+                throw new IllegalArgumentException(option + " must be at least " + min);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java -jar jvosk.jar serve [options]");
+        System.err.println();
+        System.err.println("Options:");
+        System.err.println("  -m, --model <name>          Installed model used when a request names none");
+        System.err.println("      --models-dir <dir>      Directory containing installed models (default ~/.jvosk/models)");
+        System.err.println("      --host <address>        Address to bind (default 127.0.0.1)");
+        System.err.println("      --port <n>              Port to listen on (default 8080)");
+        System.err.println("  -c, --max-concurrent <n>    Requests transcribed at once (default: number of cores)");
+        System.err.println("  -q, --max-queued <n>        Requests waiting before others get 429 (default 2x max-concurrent)");
+        System.err.println("      --ws-port <n>           Also accept live audio over WebSocket on this port (Vosk uses 2700)");
+        System.err.println("      --max-streams <n>       WebSocket streams served at once (default 512)");
+        System.err.println("  -h, --help                  Show this help");
+        System.err.println();
+        System.err.println("POST /transcribe?model=<name>&skipSilence=true with a WAV, PCM (audio/pcm;rate=16000)");
+        System.err.println("or compressed audio body. Send Accept: text/event-stream for segments as they are");
+        System.err.println("recognized. GET /health reports the load.");
+        System.err.println();
+        System.err.println("WebSocket clients connect to ws://host:<ws-port>/?model=<name>, send 16-bit mono PCM as");
+        System.err.println("binary messages and {\"eof\": 1} at the end, as with Vosk's own server.");
+    }
+}
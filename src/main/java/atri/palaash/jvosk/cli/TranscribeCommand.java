@@ -0,0 +1,305 @@
+package atri.palaash.jvosk.cli;
+
+import atri.palaash.jvosk.models.ModelManager;
+import atri.palaash.jvosk.models.ModelPool;
+import atri.palaash.jvosk.stt.EnergyVoiceActivityDetector;
+import atri.palaash.jvosk.stt.TranscriptCache;
+import atri.palaash.jvosk.stt.TranscriptionProgress;
+import atri.palaash.jvosk.stt.VoskTranscriber;
+import atri.palaash.jvosk.util.TaskScheduler;
+import atri.palaash.jvosk.util.TranscriptExporter;
+import atri.palaash.jvosk.util.TranscriptSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Headless batch transcription: {@code java -jar jvosk.jar transcribe --model X --out dir/ *.mp3}.
+ * <p>
+ * Runs without touching Swing or AWT so it can be used on servers without a display.
+ * All files share a single model acquired through {@link ModelManager}. Transcripts are
+ * cached in the {@link TranscriptCache}, so re-running a batch skips files already done.
+ */
+public class TranscribeCommand {
+
+    public static final String NAME = "transcribe";
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    // How often a file still being transcribed reports its progress
+    private static final long PROGRESS_INTERVAL_MILLIS = 10_000;
+
+    private String modelArg;
+    private String modelsDir = System.getProperty("user.home") + File.separator + ".jvosk" + File.separator + "models";
+    private Path outputDir = Paths.get(".");
+    private String format = "txt";
+    private int jobs = 1;
+    private int parallelism = 1;
+    private boolean skipSilence;
+    private boolean useCache = true;
+    private final List<String> inputs = new ArrayList<>();
+
+    /**
+     * Parse arguments and run the batch.
+     * @return process exit code
+     */
+    public static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        TranscribeCommand command = new TranscribeCommand();
+        try {
+            if (!command.parseArgs(args)) {
+                printUsage();
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println();
+            printUsage();
+            return EXIT_USAGE;
+        }
+
+        try {
+            return command.execute();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return EXIT_FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted");
+            return EXIT_FAILED;
+        }
+    }
+
+    private boolean parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h", "--help" -> {
+                    return false;
+                }
+                case "-m", "--model" -> modelArg = requireValue(args, ++i, arg);
+                case "--models-dir" -> modelsDir = requireValue(args, ++i, arg);
+                case "-o", "--out" -> outputDir = Paths.get(requireValue(args, ++i, arg));
+                case "-f", "--format" -> format = requireValue(args, ++i, arg).toLowerCase(Locale.ROOT);
+                case "-j", "--jobs" -> jobs = parsePositiveInt(requireValue(args, ++i, arg), arg);
+                case "-p", "--parallel" -> parallelism = parsePositiveInt(requireValue(args, ++i, arg), arg);
+                case "--skip-silence" -> skipSilence = true;
+                case "--no-cache" -> useCache = false;
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(arg);
+                }
+            }
+        }
+
+        if (modelArg == null) {
+            throw new IllegalArgumentException("--model is required");
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input files given");
+        }
+        if (!TranscriptSink.FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        return true;
+    }
+
+    private int execute() throws IOException, InterruptedException {
+        List<File> files = resolveInputs();
+        if (files.isEmpty()) {
+            System.err.println("No audio files matched the given inputs");
+            return EXIT_FAILED;
+        }
+
+        Files.createDirectories(outputDir);
+
+        long loadStart = System.currentTimeMillis();
+        ModelPool.Lease lease = acquireModel();
+        Path modelPath = lease.getModelPath();
+        System.err.printf("Loaded model %s in %d ms%n", modelArg, System.currentTimeMillis() - loadStart);
+
+        ExecutorService executor = TaskScheduler.getInstance().newPool("Transcribe", Math.min(jobs, files.size()));
+
+        int failures = 0;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(executor.submit(() -> {
+                    transcribeOne(modelPath, file);
+                    return null;
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    failures++;
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.printf("FAILED %s: %s%n", files.get(i).getName(), cause.getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            lease.close();
+        }
+
+        System.err.printf("Transcribed %d of %d file(s)%n", files.size() - failures, files.size());
+        return failures == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    private void transcribeOne(Path modelPath, File audioFile) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        File outputFile = outputDir.resolve(baseName(audioFile) + "." + format).toFile();
+
+        TranscriptionProgress[] last = new TranscriptionProgress[1];
+        long[] nextReport = {PROGRESS_INTERVAL_MILLIS};
+
+        // Segments go to the file as they are recognized, so memory stays flat and a crash
+        // leaves everything up to the last segment on disk.
+        // The model is already loaded; a lease of our own lets the transcriber key the cache by it
+        try (TranscriptSink sink = TranscriptSink.open(format, outputFile,
+                TranscriptExporter.metadata(modelPath.getFileName().toString(), audioFile));
+             VoskTranscriber transcriber = new VoskTranscriber(ModelPool.getInstance().acquire(modelPath))) {
+            transcriber.setParallelism(parallelism);
+            transcriber.setProgressListener(progress -> {
+                last[0] = progress;
+                if (!progress.isDone() && progress.getElapsedMillis() >= nextReport[0]) {
+                    nextReport[0] = progress.getElapsedMillis() + PROGRESS_INTERVAL_MILLIS;
+                    System.err.printf("   %s: %s%n", audioFile.getName(), progress);
+                }
+            });
+            if (skipSilence) {
+                transcriber.setVoiceActivityDetector(new EnergyVoiceActivityDetector());
+            }
+            if (useCache) {
+                transcriber.setTranscriptCache(TranscriptCache.getInstance());
+            }
+            try {
+                transcriber.transcribeFile(audioFile, segment -> {
+                    try {
+                        sink.accept(segment);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw new IOException("Failed to write " + outputFile + ": " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        TranscriptionProgress progress = last[0];
+        if (progress != null && progress.getAudioMillis() > 0) {
+            System.err.printf("OK %s -> %s (%d ms, %s of audio, %.2fx real time)%n",
+                    audioFile.getName(), outputFile.getPath(), System.currentTimeMillis() - start,
+                    TranscriptionProgress.formatDuration(progress.getAudioMillis()),
+                    progress.getAverageRealTimeFactor());
+        } else {
+            System.err.printf("OK %s -> %s (%d ms)%n",
+                    audioFile.getName(), outputFile.getPath(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private ModelPool.Lease acquireModel() throws IOException {
+        // Either a path to a model directory or the name of a model installed in the models dir
+        Path modelPath = Paths.get(modelArg);
+        if (Files.isDirectory(modelPath) && modelPath.getFileName() != null) {
+            Path parent = modelPath.toAbsolutePath().getParent();
+            return new ModelManager(parent.toString()).acquireModel(modelPath.getFileName().toString());
+        }
+        return new ModelManager(modelsDir).acquireModel(modelArg);
+    }
+
+    private List<File> resolveInputs() throws IOException {
+        Set<File> files = new LinkedHashSet<>();
+
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+
+            if (Files.isDirectory(path)) {
+                try (var entries = Files.list(path)) {
+                    entries.filter(Files::isRegularFile)
+                           .filter(p -> VoskTranscriber.isSupportedAudioFile(p.getFileName().toString()))
+                           .sorted()
+                           .forEach(p -> files.add(p.toFile()));
+                }
+            } else if (Files.isRegularFile(path)) {
+                files.add(path.toFile());
+            } else if (input.contains("*") || input.contains("?") || input.contains("[")) {
+                // Glob that the shell did not expand, e.g. quoted or on Windows
+                Path parent = path.getParent() != null ? path.getParent() : Paths.get(".");
+                PathMatcher matcher = FileSystems.getDefault()
+                        .getPathMatcher("glob:" + path.getFileName().toString());
+                try (var entries = Files.list(parent)) {
+                    entries.filter(Files::isRegularFile)
+                           .filter(p -> matcher.matches(p.getFileName()))
+                           .sorted()
+                           .forEach(p -> files.add(p.toFile()));
+                }
+            } else {
+                System.err.println("Skipping missing input: " + input);
+            }
+        }
+
+        return new ArrayList<>(files);
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static int parsePositiveInt(String value, String option) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 1) {
+                throw new IllegalArgumentException(option + " must be at least 1");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java -jar jvosk.jar transcribe --model <name|path> [options] <files|dirs|globs>...");
+        System.err.println();
+        System.err.println("Options:");
+        System.err.println("  -m, --model <name|path>  Installed model name or path to a model directory");
+        System.err.println("      --models-dir <dir>   Directory containing installed models (default ~/.jvosk/models)");
+        System.err.println("  -o, --out <dir>          Output directory (default: current directory)");
+        System.err.println("  -f, --format <fmt>       Output format: txt, md, srt, vtt, json, jsonl, jvt (default txt)");
+        System.err.println("  -j, --jobs <n>           Files transcribed concurrently (default 1)");
+        System.err.println("  -p, --parallel <n>       Recognizers per file for long recordings (default 1)");
+        System.err.println("      --skip-silence       Don't recognize silence and noise; timestamps are unaffected");
+        System.err.println("      --no-cache           Transcribe again even if a cached transcript exists");
+        System.err.println("  -h, --help               Show this help");
+    }
+}
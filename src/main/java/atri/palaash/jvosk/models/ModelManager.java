@@ -1,17 +1,13 @@
 package atri.palaash.jvosk.models;
 
-import org.vosk.Model;
-
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 /**
  * Manages Vosk models including downloading, installation, version checking, and loading.
@@ -21,15 +17,18 @@ public class ModelManager {
     // Sentinel value for installed models that don't have a remote download URL
     private static final String INSTALLED_MODEL_URL = "installed://local";
     
+    // Parallel range requests per model download
+    private static final int DOWNLOAD_CONNECTIONS = 4;
+    
+    private static final int EXTRACT_BUFFER_SIZE = 1 << 20;
+    
     private final Path modelsDirectory;
     private final ModelRegistry registry;
-    private final Map<String, Model> loadedModels;
     private final Map<String, VoskModel> installedModels;
     
     public ModelManager(String modelsPath) {
         this.modelsDirectory = Paths.get(modelsPath);
         this.registry = new ModelRegistry();
-        this.loadedModels = new ConcurrentHashMap<>();
         this.installedModels = new ConcurrentHashMap<>();
         
         // Ensure models directory exists
@@ -56,6 +55,7 @@ public class ModelManager {
             
             try (var paths = Files.list(modelsDirectory)) {
                 paths.filter(Files::isDirectory)
+                     .filter(path -> !StreamingModelInstaller.isStagingDirectory(path))
                      .forEach(modelPath -> {
                          String modelName = modelPath.getFileName().toString();
                          
@@ -108,9 +108,34 @@ public class ModelManager {
      * Get all available models from registry (online).
      */
     public List<VoskModel> getAvailableModels() throws IOException {
-        List<VoskModel> available = registry.fetchModels(false);
-        
-        // Mark installed models
+        return getAvailableModels(false);
+    }
+    
+    /**
+     * Get all available models from registry (online).
+     * @param forceRefresh if true, revalidate the model list even if the snapshot is recent
+     */
+    public List<VoskModel> getAvailableModels(boolean forceRefresh) throws IOException {
+        return markInstalled(registry.fetchModels(forceRefresh));
+    }
+    
+    /**
+     * Get the available models from the last registry snapshot, without touching the network.
+     * @return the snapshot list, empty if models were never fetched
+     */
+    public List<VoskModel> getCachedAvailableModels() {
+        return markInstalled(registry.getCachedModels());
+    }
+    
+    /**
+     * Get when the available model list was last fetched.
+     * @return epoch millis, or 0 if models were never fetched
+     */
+    public long getRegistrySnapshotTime() {
+        return registry.getSnapshotTime();
+    }
+    
+    private List<VoskModel> markInstalled(List<VoskModel> available) {
         List<VoskModel> result = new ArrayList<>();
         for (VoskModel model : available) {
             if (installedModels.containsKey(model.getName())) {
@@ -144,6 +169,10 @@ public class ModelManager {
     
     /**
      * Download and install a model.
+     * <p>
+     * Models are extracted while they download, over parallel range requests where the
+     * server allows them, so no room is needed for the zip. Only a zip that can't be read
+     * front to back is downloaded first and extracted afterwards.
      * @param model the model to download
      * @param progressCallback callback for download progress (0-100)
      */
@@ -152,17 +181,26 @@ public class ModelManager {
         Path extractPath = modelsDirectory.resolve(model.getName());
         
         try {
-            // Download
-            downloadFile(model.getDownloadUrl(), zipPath, progressCallback);
+            if (RangedDownloader.hasPartialDownload(zipPath)) {
+                // Finish a zip download interrupted earlier
+                downloadThenExtract(model, zipPath, extractPath, progressCallback);
+            } else {
+                try {
+                    // Extract while downloading, continuing an interrupted install if there is one
+                    new StreamingModelInstaller(model.getDownloadUrl(), extractPath, DOWNLOAD_CONNECTIONS)
+                            .install(progressCallback);
+                } catch (StreamingModelInstaller.NotStreamableException e) {
+                    System.out.println("Cannot extract " + model.getName() + " while downloading (" +
+                            e.getMessage() + "), downloading the zip first");
+                    downloadThenExtract(model, zipPath, extractPath, progressCallback);
+                }
+            }
             
             // Check for cancellation
             if (DownloadManager.getInstance().isCancellationRequested()) {
                 throw new IOException("Download cancelled by user");
             }
             
-            // Extract
-            extractZip(zipPath, extractPath);
-            
             // Verify installation
             if (isValidVoskModel(extractPath)) {
                 VoskModel installed = new VoskModel.Builder()
@@ -181,23 +219,50 @@ public class ModelManager {
             }
             
         } catch (IOException e) {
-            // Clean up on failure
+            // Clean up on failure, but keep a partial download so it can be resumed
             try {
-                Files.deleteIfExists(zipPath);
-                deleteDirectory(extractPath);
+                if (!RangedDownloader.hasPartialDownload(zipPath)) {
+                    Files.deleteIfExists(zipPath);
+                }
+                if (Files.exists(extractPath)) {
+                    deleteDirectory(extractPath);
+                }
             } catch (IOException ignored) {}
             throw e;
         } finally {
-            // Clean up zip file
-            try {
-                Files.deleteIfExists(zipPath);
-            } catch (IOException ignored) {}
-            
             // Clear active download
             DownloadManager.getInstance().clearActiveDownload();
         }
     }
     
+    private void downloadThenExtract(VoskModel model, Path zipPath, Path extractPath,
+                                     Consumer<Integer> progressCallback) throws IOException {
+        new RangedDownloader(model.getDownloadUrl(), zipPath, DOWNLOAD_CONNECTIONS).download(progressCallback);
+        
+        if (DownloadManager.getInstance().isCancellationRequested()) {
+            throw new IOException("Download cancelled by user");
+        }
+        
+        extractZip(zipPath, extractPath);
+        Files.deleteIfExists(zipPath);
+    }
+    
+    /**
+     * Check if an interrupted download of the model can be resumed.
+     */
+    public boolean hasPartialDownload(String modelName) {
+        return RangedDownloader.hasPartialDownload(modelsDirectory.resolve(modelName + ".zip")) ||
+               StreamingModelInstaller.hasPartialInstall(modelsDirectory.resolve(modelName));
+    }
+    
+    /**
+     * Throw away an interrupted download so the next attempt starts over.
+     */
+    public void discardPartialDownload(String modelName) throws IOException {
+        RangedDownloader.discardPartialDownload(modelsDirectory.resolve(modelName + ".zip"));
+        StreamingModelInstaller.discardPartialInstall(modelsDirectory.resolve(modelName));
+    }
+    
     /**
      * Check if a download is currently active.
      */
@@ -213,14 +278,10 @@ public class ModelManager {
     }
     
     /**
-     * Load a model into memory for use.
+     * Acquire an installed model from the shared {@link ModelPool}, loading it if no other
+     * caller holds it. Close the lease when done with the model.
      */
-    public Model loadModel(String modelName) throws IOException {
-        // Check if already loaded
-        if (loadedModels.containsKey(modelName)) {
-            return loadedModels.get(modelName);
-        }
-        
+    public ModelPool.Lease acquireModel(String modelName) throws IOException {
         Path modelPath = modelsDirectory.resolve(modelName);
         
         if (!Files.exists(modelPath)) {
@@ -231,20 +292,14 @@ public class ModelManager {
             throw new IOException("Invalid Vosk model: " + modelName);
         }
         
-        Model model = new Model(modelPath.toString());
-        loadedModels.put(modelName, model);
-        
-        return model;
+        return ModelWarmup.acquire(modelPath, null);
     }
     
     /**
-     * Unload a model from memory.
+     * Unload a model from memory. A model still in use is unloaded once it is released.
      */
     public void unloadModel(String modelName) {
-        Model model = loadedModels.remove(modelName);
-        if (model != null) {
-            model.close();
-        }
+        ModelPool.getInstance().evict(modelsDirectory.resolve(modelName));
     }
     
     /**
@@ -260,49 +315,11 @@ public class ModelManager {
             deleteDirectory(modelPath);
         }
         
+        discardPartialDownload(modelName);
         installedModels.remove(modelName);
     }
     
-    private void downloadFile(String urlString, Path destination, Consumer<Integer> progressCallback) throws IOException {
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0 (compatible; jvosk/1.0)");
-        
-        long fileSize = connection.getContentLengthLong();
-        
-        try (InputStream in = new BufferedInputStream(connection.getInputStream());
-             FileOutputStream out = new FileOutputStream(destination.toFile())) {
-            
-            byte[] buffer = new byte[8192];
-            long totalBytesRead = 0;
-            int bytesRead;
-            int lastProgress = 0;
-            
-            while ((bytesRead = in.read(buffer)) != -1) {
-                // Check for cancellation request
-                if (DownloadManager.getInstance().isCancellationRequested()) {
-                    throw new IOException("Download cancelled by user");
-                }
-                
-                out.write(buffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
-                
-                if (fileSize > 0 && progressCallback != null) {
-                    int progress = (int) ((totalBytesRead * 100) / fileSize);
-                    if (progress != lastProgress) {
-                        progressCallback.accept(progress);
-                        lastProgress = progress;
-                    }
-                }
-            }
-            
-            if (progressCallback != null) {
-                progressCallback.accept(100);
-            }
-        }
-    }
-    
-    private void extractZip(Path zipPath, Path destinationDir) throws IOException {
+    void extractZip(Path zipPath, Path destinationDir) throws IOException {
         // Delete destination if it exists
         if (Files.exists(destinationDir)) {
             deleteDirectory(destinationDir);
@@ -310,11 +327,21 @@ public class ModelManager {
         
         Files.createDirectories(destinationDir);
         
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipPath.toFile()))) {
-            ZipEntry entry;
+        // ZipFile reads the central directory, so it also handles entries a stream can't
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            // Strip the top-level directory while extracting instead of moving files afterwards
+            String prefix = commonTopLevelDirectory(zip);
+            byte[] buffer = new byte[EXTRACT_BUFFER_SIZE];
             
-            while ((entry = zis.getNextEntry()) != null) {
-                Path entryPath = destinationDir.resolve(entry.getName());
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName().substring(prefix.length());
+                if (name.isEmpty()) {
+                    continue;
+                }
+                
+                Path entryPath = destinationDir.resolve(name);
                 
                 // Security check - prevent zip slip vulnerability
                 if (!entryPath.normalize().startsWith(destinationDir.normalize())) {
@@ -331,58 +358,43 @@ public class ModelManager {
                     }
                     
                     // Extract file
-                    try (FileOutputStream fos = new FileOutputStream(entryPath.toFile())) {
-                        byte[] buffer = new byte[8192];
+                    try (InputStream in = zip.getInputStream(entry);
+                         OutputStream out = Files.newOutputStream(entryPath)) {
                         int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, len);
+                        while ((len = in.read(buffer)) > 0) {
+                            out.write(buffer, 0, len);
                         }
                     }
                 }
-                
-                zis.closeEntry();
             }
         }
-        
-        // Flatten if model is in a subdirectory
-        flattenModelDirectory(destinationDir);
     }
     
-    private void flattenModelDirectory(Path modelDir) throws IOException {
-        // Check if model files are in a subdirectory
-        List<Path> topLevelDirs;
-        try (var paths = Files.list(modelDir)) {
-            topLevelDirs = paths.filter(Files::isDirectory)
-                    .toList();
-        }
-        
-        // If there's exactly one directory and no model files at top level
-        if (topLevelDirs.size() == 1 && !hasModelFiles(modelDir)) {
-            Path subDir = topLevelDirs.get(0);
-            
-            // Move all files from subdir to parent
-            try (var files = Files.list(subDir)) {
-                files.forEach(file -> {
-                    try {
-                        Files.move(file, modelDir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
-                    } catch (IOException e) {
-                        System.err.println("Failed to move file: " + file);
-                    }
-                });
+    /**
+     * The single directory all entries live in (with trailing slash), or "" if the model files
+     * are at the top level of the zip.
+     */
+    private String commonTopLevelDirectory(ZipFile zip) {
+        String prefix = null;
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            int slash = name.indexOf('/');
+            if (slash <= 0) {
+                return "";
+            }
+            String top = name.substring(0, slash + 1);
+            if (prefix == null) {
+                prefix = top;
+            } else if (!prefix.equals(top)) {
+                return "";
             }
-            
-            // Delete the now-empty subdirectory
-            Files.deleteIfExists(subDir);
         }
-    }
-    
-    private boolean hasModelFiles(Path dir) {
-        try {
-            return Files.exists(dir.resolve("am/final.mdl")) ||
-                   Files.exists(dir.resolve("conf/model.conf"));
-        } catch (Exception e) {
-            return false;
+        
+        if (prefix == null || prefix.equals("am/") || prefix.equals("conf/") || prefix.equals("graph/")) {
+            return "";
         }
+        return prefix;
     }
     
     private boolean isValidVoskModel(Path modelPath) {
@@ -0,0 +1,318 @@
+package atri.palaash.jvosk.models;
+
+import org.vosk.Model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Process-wide pool of loaded Vosk models.
+ * <p>
+ * Callers {@link #acquire} a {@link Lease} and close it when done; a model stays loaded
+ * while any lease is open. Concurrent requests for the same model directory share a single
+ * {@code new Model(path)}. Idle models are kept for reuse and evicted least-recently-used
+ * first once the estimated native memory of all loaded models exceeds the budget.
+ * <p>
+ * The budget defaults to 4 GB and can be set with {@code -Djvosk.models.memoryBudgetMb}.
+ */
+public class ModelPool {
+
+    private static final long DEFAULT_BUDGET_MB = 4096;
+
+    private static final ModelPool INSTANCE = new ModelPool(
+            Long.getLong("jvosk.models.memoryBudgetMb", DEFAULT_BUDGET_MB) * 1024 * 1024);
+
+    // Access-ordered, so iteration starts at the least recently used model
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, CompletableFuture<Entry>> loading = new HashMap<>();
+    private final List<Consumer<Model>> evictionListeners = new CopyOnWriteArrayList<>();
+    private long memoryBudgetBytes;
+    private long residentBytes;
+
+    ModelPool(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public static ModelPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Acquire the model in the given directory, loading it if needed.
+     * The returned lease must be closed to release the model.
+     */
+    public Lease acquire(Path modelPath) throws IOException {
+        Path key = modelPath.toAbsolutePath().normalize();
+
+        while (true) {
+            CompletableFuture<Entry> future;
+            boolean isLoader = false;
+
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    entry.refCount++;
+                    return new Lease(entry);
+                }
+
+                future = loading.get(key);
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    loading.put(key, future);
+                    isLoader = true;
+                }
+            }
+
+            if (isLoader) {
+                return load(key, future);
+            }
+
+            // Another thread is already loading this model - wait for it instead of loading twice
+            Entry loaded;
+            try {
+                loaded = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for model: " + key);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Failed to load model: " + key, cause);
+            }
+
+            synchronized (this) {
+                // Retry if it was evicted between loading and now
+                if (!loaded.closed) {
+                    entries.get(key); // Touch for LRU order
+                    loaded.refCount++;
+                    return new Lease(loaded);
+                }
+            }
+        }
+    }
+
+    private Lease load(Path key, CompletableFuture<Entry> future) throws IOException {
+        List<Entry> evicted;
+        Entry entry;
+
+        try {
+            long estimatedBytes = estimateNativeBytes(key);
+
+            // Make room before the new model is read in
+            synchronized (this) {
+                evicted = evictIdle(estimatedBytes);
+            }
+            closeAll(evicted);
+
+            Model model = new Model(key.toString());
+            entry = new Entry(key, model, estimatedBytes);
+
+            synchronized (this) {
+                entries.put(key, entry);
+                loading.remove(key);
+                residentBytes += estimatedBytes;
+                entry.refCount++;
+            }
+        } catch (Throwable e) {
+            // Includes native link errors and OOM, or waiters would block on the future forever
+            synchronized (this) {
+                loading.remove(key);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+
+        future.complete(entry);
+        return new Lease(entry);
+    }
+
+    private void release(Entry entry) {
+        List<Entry> evicted;
+
+        synchronized (this) {
+            entry.refCount--;
+            if (entry.refCount > 0) {
+                return;
+            }
+
+            if (entry.evictWhenIdle) {
+                remove(entry);
+                evicted = List.of(entry);
+            } else {
+                evicted = evictIdle(0);
+            }
+        }
+
+        closeAll(evicted);
+    }
+
+    /**
+     * Unload the model in the given directory. If it is in use it is unloaded as soon as
+     * the last lease is closed.
+     */
+    public void evict(Path modelPath) {
+        Path key = modelPath.toAbsolutePath().normalize();
+        List<Entry> evicted = List.of();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return;
+            }
+            if (entry.refCount == 0) {
+                remove(entry);
+                evicted = List.of(entry);
+            } else {
+                entry.evictWhenIdle = true;
+            }
+        }
+
+        closeAll(evicted);
+    }
+
+    /**
+     * Remove idle models, least recently used first, until {@code incomingBytes} more fit in
+     * the budget. Models with open leases are never evicted, so the pool may temporarily
+     * exceed the budget.
+     */
+    private List<Entry> evictIdle(long incomingBytes) {
+        List<Entry> evicted = new ArrayList<>();
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (residentBytes + incomingBytes > memoryBudgetBytes && iterator.hasNext()) {
+            Entry candidate = iterator.next();
+            if (candidate.refCount == 0) {
+                iterator.remove();
+                residentBytes -= candidate.estimatedBytes;
+                candidate.closed = true;
+                evicted.add(candidate);
+            }
+        }
+
+        return evicted;
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.path);
+        residentBytes -= entry.estimatedBytes;
+        entry.closed = true;
+    }
+
+    private void closeAll(List<Entry> evicted) {
+        for (Entry entry : evicted) {
+            for (Consumer<Model> listener : evictionListeners) {
+                listener.accept(entry.model);
+            }
+            entry.model.close();
+            System.out.println("Unloaded model: " + entry.path.getFileName());
+        }
+    }
+
+    /**
+     * Register a callback invoked just before an evicted model is closed, so resources tied
+     * to it can be released.
+     */
+    public void addEvictionListener(Consumer<Model> listener) {
+        evictionListeners.add(listener);
+    }
+
+    public void setMemoryBudget(long bytes) {
+        List<Entry> evicted;
+        synchronized (this) {
+            this.memoryBudgetBytes = bytes;
+            evicted = evictIdle(0);
+        }
+        closeAll(evicted);
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * Estimated native memory of all loaded models.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized List<Path> getLoadedModels() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public synchronized boolean isLoaded(Path modelPath) {
+        return entries.containsKey(modelPath.toAbsolutePath().normalize());
+    }
+
+    /**
+     * A model's native footprint is dominated by its graph and acoustic model, which are
+     * read into memory whole, so the on-disk size is a good estimate.
+     */
+    private static long estimateNativeBytes(Path modelDir) throws IOException {
+        try (var paths = Files.walk(modelDir)) {
+            return paths.filter(Files::isRegularFile)
+                        .mapToLong(path -> path.toFile().length())
+                        .sum();
+        }
+    }
+
+    private static final class Entry {
+        final Path path;
+        final Model model;
+        final long estimatedBytes;
+        int refCount;
+        boolean evictWhenIdle;
+        boolean closed;
+
+        Entry(Path path, Model model, long estimatedBytes) {
+            this.path = path;
+            this.model = model;
+            this.estimatedBytes = estimatedBytes;
+        }
+    }
+
+    /**
+     * A reference to a pooled model. Closing it releases the reference; closing twice is a no-op.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private boolean released;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Model getModel() {
+            return entry.model;
+        }
+
+        public Path getModelPath() {
+            return entry.path;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(entry);
+        }
+    }
+}
@@ -1,59 +1,231 @@
 package atri.palaash.jvosk.models;
 
+import atri.palaash.jvosk.util.NetworkUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
  * Registry for fetching and parsing Vosk models from the official models page.
+ * The parsed list is kept in a snapshot under {@code ~/.jvosk}, so it is available
+ * straight away on the next start (and offline), and refreshed with conditional
+ * requests that only re-download the page when it has changed.
  */
 public class ModelRegistry {
     
     private static final String MODELS_PAGE_URL = "https://alphacephei.com/vosk/models";
     private static final String MODELS_BASE_URL = "https://alphacephei.com/vosk/models/";
     private static final int TIMEOUT_MS = 10000;
+    private static final long MAX_AGE_MS = 3600000; // 1 hour
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final ObjectMapper JSON = new ObjectMapper();
     
-    private List<VoskModel> models = new ArrayList<>();
-    private Map<String, List<VoskModel>> modelsByLanguage = new HashMap<>();
-    private long lastFetchTime = 0;
+    private final String pageUrl;
+    private final Path snapshotPath;
+    
+    // Replaced as a whole, so readers never need the lock
+    private volatile List<VoskModel> models = Collections.emptyList();
+    private volatile Map<String, List<VoskModel>> modelsByLanguage = Collections.emptyMap();
+    private volatile long lastFetchTime = 0;
+    private String etag;
+    private String lastModified;
+    
+    public ModelRegistry() {
+        this(MODELS_PAGE_URL, Paths.get(System.getProperty("user.home"), ".jvosk", "registry.json"));
+    }
+    
+    /**
+     * Create a registry for the given models page, persisting its snapshot at {@code snapshotPath}.
+     */
+    public ModelRegistry(String pageUrl, Path snapshotPath) {
+        this.pageUrl = pageUrl;
+        this.snapshotPath = snapshotPath;
+        loadSnapshot();
+    }
     
     /**
      * Fetch models from the official Vosk models page.
-     * @param forceRefresh if true, fetch even if recently cached
+     * @param forceRefresh if true, revalidate even if the snapshot is recent
      * @return list of all available models
      */
-    public List<VoskModel> fetchModels(boolean forceRefresh) throws IOException {
+    public synchronized List<VoskModel> fetchModels(boolean forceRefresh) throws IOException {
         long now = System.currentTimeMillis();
         
-        // Use cache if less than 1 hour old
-        if (!forceRefresh && !models.isEmpty() && (now - lastFetchTime) < 3600000) {
+        // Use snapshot if less than 1 hour old
+        if (!forceRefresh && !models.isEmpty() && (now - lastFetchTime) < MAX_AGE_MS) {
             return new ArrayList<>(models);
         }
         
+        Connection.Response response;
         try {
-            Document doc = Jsoup.connect(MODELS_PAGE_URL)
+            Connection connection = Jsoup.connect(pageUrl)
                     .timeout(TIMEOUT_MS)
                     .userAgent("Mozilla/5.0 (compatible; jvosk/1.0)")
-                    .get();
+                    .ignoreHttpErrors(true);
             
-            models.clear();
-            modelsByLanguage.clear();
+            // Only revalidate when there is a list to fall back on
+            if (!models.isEmpty()) {
+                if (etag != null) {
+                    connection.header("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    connection.header("If-Modified-Since", lastModified);
+                }
+            }
             
-            parseModelsFromPage(doc);
+            response = connection.execute();
+        } catch (IOException e) {
+            // Record either way, so callers never need to probe after a failed fetch
+            NetworkUtils.recordConnectivity(!NetworkUtils.isUnreachable(e));
+            throw new IOException("Failed to fetch models from " + pageUrl + ": " + e.getMessage(), e);
+        }
+        
+        // Any HTTP response means we are online
+        NetworkUtils.recordConnectivity(true);
+        
+        int status = response.statusCode();
+        if (status == 304 && !models.isEmpty()) {
             lastFetchTime = now;
+        } else if (status == 200) {
+            Document doc;
+            try {
+                doc = response.parse();
+            } catch (IOException e) {
+                throw new IOException("Failed to fetch models from " + pageUrl + ": " + e.getMessage(), e);
+            }
             
-            return new ArrayList<>(models);
+            List<VoskModel> parsed = parseModelsFromPage(doc);
+            if (parsed.isEmpty()) {
+                throw new IOException("No models found on " + pageUrl);
+            }
             
+            setModels(parsed);
+            etag = response.header("ETag");
+            lastModified = response.header("Last-Modified");
+            lastFetchTime = now;
+        } else {
+            throw new IOException("Failed to fetch models from " + pageUrl + ": HTTP " + status);
+        }
+        
+        saveSnapshot();
+        return new ArrayList<>(models);
+    }
+    
+    /**
+     * Get the models from the last successful fetch, without touching the network.
+     * @return the snapshot list, empty if models were never fetched
+     */
+    public List<VoskModel> getCachedModels() {
+        return new ArrayList<>(models);
+    }
+    
+    /**
+     * Get when the model list was last fetched or revalidated.
+     * @return epoch millis, or 0 if models were never fetched
+     */
+    public long getSnapshotTime() {
+        return lastFetchTime;
+    }
+    
+    private void setModels(List<VoskModel> parsed) {
+        // Sort models
+        Collections.sort(parsed);
+        
+        // Group by language
+        Map<String, List<VoskModel>> byLanguage = new HashMap<>();
+        for (VoskModel model : parsed) {
+            byLanguage.computeIfAbsent(model.getLanguage(), k -> new ArrayList<>()).add(model);
+        }
+        
+        modelsByLanguage = byLanguage;
+        models = Collections.unmodifiableList(parsed);
+    }
+    
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        
+        try {
+            JsonNode root = JSON.readTree(snapshotPath.toFile());
+            if (root.path("version").asInt() != SNAPSHOT_VERSION || !pageUrl.equals(root.path("url").asText())) {
+                return;
+            }
+            
+            List<VoskModel> loaded = new ArrayList<>();
+            for (JsonNode node : root.path("models")) {
+                loaded.add(new VoskModel.Builder()
+                        .name(node.path("name").asText())
+                        .language(node.path("language").asText())
+                        .size(node.path("size").asText())
+                        .accuracy(node.path("accuracy").asText())
+                        .description(node.path("description").asText())
+                        .license(node.path("license").asText())
+                        .downloadUrl(node.path("downloadUrl").asText())
+                        .type(VoskModel.ModelType.valueOf(node.path("type").asText()))
+                        .build());
+            }
+            
+            setModels(loaded);
+            etag = root.hasNonNull("etag") ? root.get("etag").asText() : null;
+            lastModified = root.hasNonNull("lastModified") ? root.get("lastModified").asText() : null;
+            lastFetchTime = root.path("fetchedAt").asLong();
+        } catch (IOException | IllegalArgumentException e) {
+            // A damaged snapshot only costs one full fetch
+            System.err.println("Ignoring model registry snapshot " + snapshotPath + ": " + e.getMessage());
+        }
+    }
+    
+    private void saveSnapshot() {
+        ObjectNode root = JSON.createObjectNode();
+        root.put("version", SNAPSHOT_VERSION);
+        root.put("url", pageUrl);
+        root.put("fetchedAt", lastFetchTime);
+        root.put("etag", etag);
+        root.put("lastModified", lastModified);
+        
+        ArrayNode list = root.putArray("models");
+        for (VoskModel model : models) {
+            list.addObject()
+                    .put("name", model.getName())
+                    .put("language", model.getLanguage())
+                    .put("size", model.getSize())
+                    .put("accuracy", model.getAccuracy())
+                    .put("description", model.getDescription())
+                    .put("license", model.getLicense())
+                    .put("downloadUrl", model.getDownloadUrl())
+                    .put("type", model.getType().name());
+        }
+        
+        // Write then rename, so a crash never leaves a truncated snapshot behind
+        try {
+            Files.createDirectories(snapshotPath.getParent());
+            Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                JSON.writeValue(out, root);
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
-            throw new IOException("Failed to fetch models from " + MODELS_PAGE_URL + ": " + e.getMessage(), e);
+            System.err.println("Failed to save model registry snapshot: " + e.getMessage());
         }
     }
     
-    private void parseModelsFromPage(Document doc) {
+    private List<VoskModel> parseModelsFromPage(Document doc) {
+        List<VoskModel> parsed = new ArrayList<>();
         String currentLanguage = "Unknown";
         String currentSection = "";
         
@@ -75,20 +247,14 @@ public class ModelRegistry {
                 currentLanguage = extractLanguage(element.text());
             } else if (element.tagName().equals("table")) {
                 // Parse table rows
-                parseTableRows(element, currentLanguage, currentSection);
+                parseTableRows(element, currentLanguage, currentSection, parsed);
             }
         }
         
-        // Sort models
-        Collections.sort(models);
-        
-        // Group by language
-        for (VoskModel model : models) {
-            modelsByLanguage.computeIfAbsent(model.getLanguage(), k -> new ArrayList<>()).add(model);
-        }
+        return parsed;
     }
     
-    private void parseTableRows(Element table, String language, String section) {
+    private void parseTableRows(Element table, String language, String section, List<VoskModel> parsed) {
         Elements rows = table.select("tr");
         
         for (Element row : rows) {
@@ -139,7 +305,7 @@ public class ModelRegistry {
                         .type(type)
                         .build();
                 
-                models.add(model);
+                parsed.add(model);
                 
             } catch (Exception e) {
                 // Skip malformed rows
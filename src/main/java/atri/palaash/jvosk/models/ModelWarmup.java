@@ -0,0 +1,272 @@
+package atri.palaash.jvosk.models;
+
+import atri.palaash.jvosk.util.TaskScheduler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads a model into the {@link ModelPool} after reading its files into the OS page cache.
+ * <p>
+ * Vosk reads the graph and acoustic model with small sequential reads and parses as it
+ * goes, so a cold load alternates between waiting on the disk and working. Reading the
+ * files first, in large chunks from several threads, keeps the disk busy at full speed;
+ * the load that follows then only parses. Files are split into ranges of
+ * {@link #RANGE_BYTES} so one big {@code HCLG.fst} is read in parallel too, and the ranges
+ * are handed out in file order so each thread still reads mostly sequentially.
+ * <p>
+ * Prefetching is skipped when the model is already loaded, and when it is larger than half
+ * the physical memory, where the start of the model would be evicted before Vosk got to it.
+ * Reads run on the {@link TaskScheduler#io()} executor, 4 at a time by default or as many as
+ * {@code -Djvosk.models.prefetchThreads} says.
+ */
+public class ModelWarmup {
+
+    static final int RANGE_BYTES = 64 * 1024 * 1024;
+
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final Map<Path, Metrics> METRICS = new ConcurrentHashMap<>();
+
+    /**
+     * Receives prefetch progress on the reading threads, once per chunk read.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onProgress(Path file, long fileBytesRead, long fileBytes, long totalBytesRead, long totalBytes);
+    }
+
+    private ModelWarmup() {}
+
+    /**
+     * Acquire the model in the given directory from the {@link ModelPool}, prefetching its
+     * files first if it isn't loaded yet.
+     * @param listener notified as files are read; may be null
+     */
+    public static ModelPool.Lease acquire(Path modelPath, Listener listener) throws IOException {
+        ModelPool pool = ModelPool.getInstance();
+        Path key = modelPath.toAbsolutePath().normalize();
+        if (pool.isLoaded(key)) {
+            return pool.acquire(key);
+        }
+
+        long start = System.nanoTime();
+        List<Path> files = listFiles(key);
+        long totalBytes = 0;
+        for (Path file : files) {
+            totalBytes += Files.size(file);
+        }
+
+        boolean prefetched = totalBytes <= physicalMemoryBytes() / 2;
+        if (prefetched) {
+            prefetch(files, totalBytes, listener);
+        }
+        long prefetchNanos = System.nanoTime() - start;
+
+        ModelPool.Lease lease = pool.acquire(key);
+        Metrics metrics = new Metrics(key.getFileName().toString(), files.size(), totalBytes, prefetched,
+                prefetchNanos / 1_000_000, (System.nanoTime() - start - prefetchNanos) / 1_000_000);
+        METRICS.put(key, metrics);
+        System.out.println("Loaded model " + metrics);
+        return lease;
+    }
+
+    /**
+     * How the last cold load of the model in the given directory went, or null if it hasn't
+     * been loaded through here.
+     */
+    public static Metrics getMetrics(Path modelPath) {
+        return METRICS.get(modelPath.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Read the files in parallel ranges, discarding the data.
+     */
+    static void prefetch(List<Path> files, long totalBytes, Listener listener) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        for (Path file : files) {
+            long size = Files.size(file);
+            AtomicLong fileRead = new AtomicLong();
+            for (long offset = 0; offset < size; offset += RANGE_BYTES) {
+                ranges.add(new Range(file, size, fileRead, offset, Math.min(RANGE_BYTES, size - offset)));
+            }
+        }
+        if (ranges.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.max(1, Math.min(Integer.getInteger("jvosk.models.prefetchThreads", DEFAULT_THREADS), ranges.size()));
+        Queue<Range> remaining = new ConcurrentLinkedQueue<>(ranges);
+        AtomicLong totalRead = new AtomicLong();
+        TaskScheduler scheduler = TaskScheduler.getInstance();
+        try (TaskScheduler.Scope scope = scheduler.openScope(scheduler.io())) {
+            for (int i = 0; i < threads; i++) {
+                scope.fork(() -> {
+                    // Direct, so reads go from the page cache into native memory without a heap copy
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+                    Range range;
+                    while ((range = remaining.poll()) != null) {
+                        read(range, buffer, totalRead, totalBytes, listener);
+                    }
+                    return null;
+                });
+            }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while prefetching model");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to prefetch model", cause);
+        }
+    }
+
+    private static void read(Range range, ByteBuffer buffer, AtomicLong totalRead, long totalBytes,
+                             Listener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(range.file, StandardOpenOption.READ)) {
+            long position = range.offset;
+            long end = range.offset + range.length;
+            while (position < end) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while prefetching model");
+                }
+                buffer.clear().limit((int) Math.min(CHUNK_BYTES, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break; // Shrunk since it was listed
+                }
+                position += read;
+                long fileRead = range.fileRead.addAndGet(read);
+                long total = totalRead.addAndGet(read);
+                if (listener != null) {
+                    listener.onProgress(range.file, fileRead, range.fileSize, total, totalBytes);
+                }
+            }
+        }
+    }
+
+    private static List<Path> listFiles(Path modelDir) throws IOException {
+        try (var paths = Files.walk(modelDir)) {
+            // Largest first: they take longest, and the graph is what Vosk spends most time on
+            return paths.filter(Files::isRegularFile)
+                        .sorted(Comparator.comparingLong((Path path) -> path.toFile().length()).reversed())
+                        .toList();
+        }
+    }
+
+    private static long physicalMemoryBytes() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getTotalMemorySize();
+        }
+        return Long.MAX_VALUE; // Unknown: prefetch anyway
+    }
+
+    private static final class Range {
+        final Path file;
+        final long fileSize;
+        final AtomicLong fileRead; // Shared by all ranges of the file
+        final long offset;
+        final long length;
+
+        Range(Path file, long fileSize, AtomicLong fileRead, long offset, long length) {
+            this.file = file;
+            this.fileSize = fileSize;
+            this.fileRead = fileRead;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Timings of a cold model load: reading the files, then constructing the model.
+     */
+    public static final class Metrics {
+
+        private final String modelName;
+        private final int fileCount;
+        private final long totalBytes;
+        private final boolean prefetched;
+        private final long prefetchMillis;
+        private final long loadMillis;
+
+        Metrics(String modelName, int fileCount, long totalBytes, boolean prefetched, long prefetchMillis, long loadMillis) {
+            this.modelName = modelName;
+            this.fileCount = fileCount;
+            this.totalBytes = totalBytes;
+            this.prefetched = prefetched;
+            this.prefetchMillis = prefetchMillis;
+            this.loadMillis = loadMillis;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * False if the model was too large to prefetch.
+         */
+        public boolean isPrefetched() {
+            return prefetched;
+        }
+
+        public long getPrefetchMillis() {
+            return prefetchMillis;
+        }
+
+        /**
+         * Time Vosk took to construct the model after the prefetch.
+         */
+        public long getLoadMillis() {
+            return loadMillis;
+        }
+
+        public long getTotalMillis() {
+            return prefetchMillis + loadMillis;
+        }
+
+        /**
+         * Prefetch read rate, or 0 if nothing was prefetched.
+         */
+        public double getReadMegabytesPerSecond() {
+            return prefetched && prefetchMillis > 0 ? totalBytes / 1048576.0 / (prefetchMillis / 1000.0) : 0;
+        }
+
+        @Override
+        public String toString() {
+            if (!prefetched) {
+                return String.format("%s in %.1f s (%d MB, not prefetched)",
+                        modelName, getTotalMillis() / 1000.0, totalBytes / 1048576);
+            }
+            return String.format("%s in %.1f s (%d MB in %d files read in %.1f s at %.0f MB/s, constructed in %.1f s)",
+                    modelName, getTotalMillis() / 1000.0, totalBytes / 1048576, fileCount,
+                    prefetchMillis / 1000.0, getReadMegabytesPerSecond(), loadMillis / 1000.0);
+        }
+    }
+}
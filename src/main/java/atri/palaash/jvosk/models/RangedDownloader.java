@@ -0,0 +1,494 @@
+package atri.palaash.jvosk.models;
+
+import atri.palaash.jvosk.util.TaskScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Downloads a file over several HTTP range requests at once, with resume.
+ * <p>
+ * The destination is preallocated to its full size and every segment writes its bytes at
+ * their final position through a shared {@link FileChannel}. Progress of each segment is
+ * saved to a manifest next to the destination ({@code <file>.download}), so a download that
+ * was cancelled, failed or interrupted by a crash continues where it stopped the next time
+ * the same URL is downloaded to the same file. Servers that do not support ranges get a
+ * plain single-connection download that cannot be resumed, and so does a server that stops
+ * honouring them part way, or a file that changed since the partial download was started.
+ */
+public class RangedDownloader {
+
+    static final String MANIFEST_SUFFIX = ".download";
+
+    private static final String USER_AGENT = "Mozilla/5.0 (compatible; jvosk/1.0)";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long MIN_SEGMENT_BYTES = 8L * 1024 * 1024;
+    private static final long MANIFEST_SAVE_INTERVAL_MS = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final URL url;
+    private final Path destination;
+    private final Path manifestPath;
+    private final int connections;
+    private final BooleanSupplier cancellationRequested;
+
+    public RangedDownloader(String url, Path destination, int connections) throws IOException {
+        this(url, destination, connections, DownloadManager.getInstance()::isCancellationRequested);
+    }
+
+    RangedDownloader(String url, Path destination, int connections, BooleanSupplier cancellationRequested)
+            throws IOException {
+        this.url = new URL(url);
+        this.destination = destination;
+        this.manifestPath = manifestPath(destination);
+        this.connections = Math.max(1, connections);
+        this.cancellationRequested = cancellationRequested;
+    }
+
+    /**
+     * Whether an unfinished download of this file can be resumed.
+     */
+    public static boolean hasPartialDownload(Path destination) {
+        return Files.exists(manifestPath(destination)) && Files.exists(destination);
+    }
+
+    /**
+     * Delete an unfinished download and its manifest.
+     */
+    public static void discardPartialDownload(Path destination) throws IOException {
+        Files.deleteIfExists(manifestPath(destination));
+        Files.deleteIfExists(destination);
+    }
+
+    private static Path manifestPath(Path destination) {
+        return destination.resolveSibling(destination.getFileName() + MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Download the file.
+     * @param progressCallback callback for download progress (0-100), invoked on the calling thread
+     */
+    public void download(Consumer<Integer> progressCallback) throws IOException {
+        // Ask for the first byte: a 206 tells us ranges work and gives the total size
+        HttpURLConnection probe = openConnection(url);
+        probe.setRequestProperty("Range", "bytes=0-0");
+
+        int status = probe.getResponseCode();
+        if (status == HttpURLConnection.HTTP_PARTIAL) {
+            long length = parseTotalLength(probe.getHeaderField("Content-Range"));
+            String validator = validator(probe);
+            probe.disconnect();
+
+            if (length > 0) {
+                try {
+                    downloadRanges(length, validator, progressCallback);
+                    return;
+                } catch (RangeNotHonouredException e) {
+                    // Retrying ranges would get the same answer
+                    System.out.println("Downloading " + destination.getFileName() + " again over one connection: "
+                            + e.getMessage());
+                }
+            }
+            probe = openConnection(url);
+            status = probe.getResponseCode();
+        }
+
+        if (status != HttpURLConnection.HTTP_OK) {
+            probe.disconnect();
+            throw new IOException("Download failed: HTTP " + status + " from " + url);
+        }
+
+        // No range support, stream the response we already have
+        try {
+            discardPartialDownload(destination);
+            downloadSingle(probe, progressCallback);
+        } finally {
+            probe.disconnect();
+        }
+    }
+
+    private void downloadSingle(HttpURLConnection connection, Consumer<Integer> progressCallback) throws IOException {
+        long fileSize = connection.getContentLengthLong();
+
+        try (InputStream in = connection.getInputStream();
+             OutputStream out = Files.newOutputStream(destination)) {
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long totalBytesRead = 0;
+            int bytesRead;
+            int lastProgress = -1;
+
+            while ((bytesRead = in.read(buffer)) != -1) {
+                if (cancellationRequested.getAsBoolean()) {
+                    throw new IOException("Download cancelled by user");
+                }
+
+                out.write(buffer, 0, bytesRead);
+                totalBytesRead += bytesRead;
+                lastProgress = reportProgress(progressCallback, totalBytesRead, fileSize, lastProgress);
+            }
+        }
+
+        if (progressCallback != null) {
+            progressCallback.accept(100);
+        }
+    }
+
+    private void downloadRanges(long length, String validator, Consumer<Integer> progressCallback) throws IOException {
+        List<Segment> segments = loadManifest(length, validator);
+        if (segments == null) {
+            segments = split(length);
+            try (RandomAccessFile file = new RandomAccessFile(destination.toFile(), "rw")) {
+                file.setLength(length);
+            }
+            saveManifest(length, validator, segments);
+        } else {
+            System.out.println("Resuming download of " + destination.getFileName());
+        }
+
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        TaskScheduler scheduler = TaskScheduler.getInstance();
+
+        try (TaskScheduler.Scope scope = scheduler.openScope(scheduler.io());
+             FileChannel channel = FileChannel.open(destination, StandardOpenOption.WRITE)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (!segment.isComplete()) {
+                    futures.add(scope.fork(() -> {
+                        fetchSegment(segment, validator, channel, aborted);
+                        return null;
+                    }));
+                }
+            }
+
+            int lastProgress = -1;
+            long lastSave = System.currentTimeMillis();
+            IOException failure = null;
+
+            try {
+                while (!futures.isEmpty()) {
+                    // Surface a failed segment right away rather than after the ones before it
+                    Iterator<Future<?>> iterator = futures.iterator();
+                    while (iterator.hasNext()) {
+                        Future<?> future = iterator.next();
+                        if (future.isDone()) {
+                            future.get();
+                            iterator.remove();
+                        }
+                    }
+                    if (futures.isEmpty()) {
+                        break;
+                    }
+
+                    Thread.sleep(200);
+                    lastProgress = reportProgress(progressCallback, downloaded(segments), length, lastProgress);
+                    if (System.currentTimeMillis() - lastSave >= MANIFEST_SAVE_INTERVAL_MS) {
+                        checkpoint(channel, length, validator, segments);
+                        lastSave = System.currentTimeMillis();
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                failure = cause instanceof IOException ? (IOException) cause
+                        : new IOException("Download failed: " + cause.getMessage(), cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IOException("Download cancelled by user", e);
+            } finally {
+                // No-op after success; otherwise stops the remaining segments
+                aborted.set(true);
+                try {
+                    // Let the segments stop at a buffer boundary so the manifest is exact;
+                    // interrupting them would close the channel they share. One still stuck
+                    // in a read after that is saved as far as it had got before the force
+                    scope.awaitTermination(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                try {
+                    checkpoint(channel, length, validator, segments);
+                } catch (IOException e) {
+                    // Don't hide why the download stopped behind why its progress wasn't saved
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.addSuppressed(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        Files.deleteIfExists(manifestPath);
+        if (progressCallback != null) {
+            progressCallback.accept(100);
+        }
+    }
+
+    private void fetchSegment(Segment segment, String validator, FileChannel channel, AtomicBoolean aborted)
+            throws IOException {
+        IOException lastFailure = null;
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && !segment.isComplete(); attempt++) {
+            long before = segment.next;
+            try {
+                fetchRange(segment, validator, channel, aborted);
+                return;
+            } catch (RangeNotHonouredException e) {
+                throw e;
+            } catch (IOException e) {
+                if (aborted.get() || cancellationRequested.getAsBoolean()) {
+                    throw e;
+                }
+                lastFailure = e;
+                // A dropped connection that still made progress doesn't count against the segment
+                if (segment.next > before) {
+                    attempt--;
+                }
+                System.err.println("Retrying download segment at byte " + segment.next + ": " + e.getMessage());
+            }
+        }
+
+        if (!segment.isComplete()) {
+            throw lastFailure != null ? lastFailure : new IOException("Download segment incomplete");
+        }
+    }
+
+    private void fetchRange(Segment segment, String validator, FileChannel channel, AtomicBoolean aborted)
+            throws IOException {
+        HttpURLConnection connection = openConnection(url);
+        connection.setRequestProperty("Range", "bytes=" + segment.next + "-" + segment.end);
+        if (validator != null) {
+            // Sends the whole file (200) instead of the range if it changed since the manifest was written
+            connection.setRequestProperty("If-Range", validator);
+        }
+
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new RangeNotHonouredException(status);
+            }
+
+            try (InputStream in = connection.getInputStream()) {
+                byte[] bytes = new byte[BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                int read;
+
+                while (!segment.isComplete() && (read = in.read(bytes, 0, (int) Math.min(bytes.length, segment.remaining()))) != -1) {
+                    if (aborted.get() || cancellationRequested.getAsBoolean()) {
+                        throw new IOException("Download cancelled by user");
+                    }
+
+                    buffer.clear().limit(read);
+                    long position = segment.next;
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    segment.next = position;
+                }
+            }
+
+            if (!segment.isComplete()) {
+                throw new IOException("Connection closed at byte " + segment.next + " of segment ending at " + segment.end);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static HttpURLConnection openConnection(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("User-Agent", USER_AGENT);
+        connection.setConnectTimeout(15000);
+        connection.setReadTimeout(30000);
+        return connection;
+    }
+
+    private List<Segment> split(long length) {
+        int count = (int) Math.max(1, Math.min(connections, length / MIN_SEGMENT_BYTES));
+        long segmentLength = length / count;
+
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long start = i * segmentLength;
+            long end = i == count - 1 ? length - 1 : start + segmentLength - 1;
+            segments.add(new Segment(start, end, start));
+        }
+        return segments;
+    }
+
+    private static long downloaded(List<Segment> segments) {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.next - segment.start;
+        }
+        return total;
+    }
+
+    private static int reportProgress(Consumer<Integer> progressCallback, long done, long total, int lastProgress) {
+        if (total <= 0 || progressCallback == null) {
+            return lastProgress;
+        }
+        int progress = (int) ((done * 100) / total);
+        if (progress != lastProgress) {
+            progressCallback.accept(progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Strong ETag, else Last-Modified; usable in If-Range and to tell whether a manifest
+     * still describes the file on the server.
+     */
+    static String validator(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    static long parseTotalLength(String contentRange) {
+        // bytes 0-0/123456
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || contentRange.endsWith("*")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read the manifest if it belongs to this download, else {@code null}.
+     */
+    private List<Segment> loadManifest(long length, String validator) {
+        if (!hasPartialDownload(destination)) {
+            return null;
+        }
+
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            manifest.load(in);
+
+            boolean matches = url.toString().equals(manifest.getProperty("url"))
+                    && length == Long.parseLong(manifest.getProperty("length", "-1"))
+                    && (validator == null || validator.equals(manifest.getProperty("validator")))
+                    && Files.size(destination) == length;
+            if (!matches) {
+                System.out.println("Discarding stale partial download of " + destination.getFileName());
+                return null;
+            }
+
+            int count = Integer.parseInt(manifest.getProperty("segments"));
+            List<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                segments.add(new Segment(
+                        Long.parseLong(manifest.getProperty("segment." + i + ".start")),
+                        Long.parseLong(manifest.getProperty("segment." + i + ".end")),
+                        Long.parseLong(manifest.getProperty("segment." + i + ".next"))));
+            }
+            return segments;
+
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable download manifest: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Save progress. Positions are read before the data is forced, so the manifest never
+     * claims bytes that aren't on disk, even while segments are still writing.
+     */
+    private void checkpoint(FileChannel channel, long length, String validator, List<Segment> segments)
+            throws IOException {
+        List<Segment> written = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            written.add(new Segment(segment.start, segment.end, segment.next));
+        }
+        channel.force(false);
+        saveManifest(length, validator, written);
+    }
+
+    private void saveManifest(long length, String validator, List<Segment> segments) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("url", url.toString());
+        manifest.setProperty("length", String.valueOf(length));
+        if (validator != null) {
+            manifest.setProperty("validator", validator);
+        }
+        manifest.setProperty("segments", String.valueOf(segments.size()));
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            manifest.setProperty("segment." + i + ".start", String.valueOf(segment.start));
+            manifest.setProperty("segment." + i + ".end", String.valueOf(segment.end));
+            manifest.setProperty("segment." + i + ".next", String.valueOf(segment.next));
+        }
+
+        // Write then rename, so a crash never leaves a truncated manifest behind
+        Path temp = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            manifest.store(out, "jvosk partial download");
+        }
+        Files.move(temp, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A ranged request was answered with something other than 206: the server ignores ranges,
+     * or the file changed since the validator sent in {@code If-Range} was taken.
+     */
+    static class RangeNotHonouredException extends IOException {
+        RangeNotHonouredException(int status) {
+            super("Server did not honour range request (HTTP " + status + "); the file may have changed on the server");
+        }
+    }
+
+    /**
+     * Byte range {@code [start, end]}; bytes before {@code next} are on disk.
+     */
+    private static final class Segment {
+        final long start;
+        final long end;
+        volatile long next;
+
+        Segment(long start, long end, long next) {
+            this.start = start;
+            this.end = end;
+            this.next = next;
+        }
+
+        boolean isComplete() {
+            return next > end;
+        }
+
+        long remaining() {
+            return end - next + 1;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package atri.palaash.jvosk.models;
+
+import atri.palaash.jvosk.util.TaskScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A remote file read in order from a given offset, fetched ahead in fixed-size chunks with
+ * range requests over several connections at once.
+ * <p>
+ * At most {@code connections} chunks are being fetched or waiting for the reader, so memory
+ * stays at a few chunks however large the file is. A connection that drops is retried from
+ * the byte it stopped at and only costs the bytes in flight. A reply other than 206 means the
+ * server ignored the range, or the file changed since {@code validator} was taken, and fails
+ * the stream at once.
+ */
+class RangedInputStream extends InputStream {
+
+    static final int CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final URL url;
+    private final long length;
+    private final String validator;
+    private final int connections;
+    private final BooleanSupplier cancellationRequested;
+    private final Deque<Future<byte[]>> ahead = new ArrayDeque<>();
+
+    private volatile boolean closed;
+    private long nextChunkStart; // First byte not yet requested
+    private byte[] current = new byte[0];
+    private int position;
+
+    /**
+     * @param offset first byte to read
+     * @param length total length of the file
+     * @param validator ETag or Last-Modified the file must still have, or null to not check
+     */
+    RangedInputStream(URL url, long offset, long length, String validator, int connections,
+                      BooleanSupplier cancellationRequested) {
+        this.url = url;
+        this.length = length;
+        this.validator = validator;
+        this.connections = Math.max(1, connections);
+        this.cancellationRequested = cancellationRequested;
+        this.nextChunkStart = offset;
+        fetchAhead();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int count) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        if (position == current.length) {
+            Future<byte[]> next = ahead.poll();
+            if (next == null) {
+                return -1;
+            }
+            current = await(next);
+            position = 0;
+            fetchAhead();
+        }
+
+        int copied = Math.min(count, current.length - position);
+        System.arraycopy(current, position, bytes, offset, copied);
+        position += copied;
+        return copied;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Future<byte[]> future : ahead) {
+            future.cancel(true);
+        }
+        ahead.clear();
+    }
+
+    private void fetchAhead() {
+        while (ahead.size() < connections && nextChunkStart < length) {
+            long start = nextChunkStart;
+            long end = Math.min(length, start + CHUNK_BYTES) - 1;
+            ahead.add(TaskScheduler.getInstance().io().submit(() -> fetchChunk(start, end)));
+            nextChunkStart = end + 1;
+        }
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Download failed: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download cancelled by user");
+        }
+    }
+
+    private byte[] fetchChunk(long start, long end) throws IOException {
+        byte[] chunk = new byte[(int) (end - start + 1)];
+        int[] filled = {0};
+        IOException lastFailure = null;
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            int before = filled[0];
+            try {
+                fetchRange(start, chunk, filled);
+                return chunk;
+            } catch (RangedDownloader.RangeNotHonouredException e) {
+                throw e;
+            } catch (IOException e) {
+                if (closed || cancellationRequested.getAsBoolean()) {
+                    throw e;
+                }
+                lastFailure = e;
+                // A dropped connection that still made progress doesn't count against the chunk
+                if (filled[0] > before) {
+                    attempt--;
+                }
+                System.err.println("Retrying download at byte " + (start + filled[0]) + ": " + e.getMessage());
+            }
+        }
+        throw lastFailure;
+    }
+
+    private void fetchRange(long start, byte[] chunk, int[] filled) throws IOException {
+        HttpURLConnection connection = RangedDownloader.openConnection(url);
+        connection.setRequestProperty("Range", "bytes=" + (start + filled[0]) + "-" + (start + chunk.length - 1));
+        if (validator != null) {
+            connection.setRequestProperty("If-Range", validator);
+        }
+
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new RangedDownloader.RangeNotHonouredException(status);
+            }
+
+            try (InputStream in = connection.getInputStream()) {
+                int read;
+                while (filled[0] < chunk.length && (read = in.read(chunk, filled[0], chunk.length - filled[0])) != -1) {
+                    if (closed || cancellationRequested.getAsBoolean()) {
+                        throw new IOException("Download cancelled by user");
+                    }
+                    filled[0] += read;
+                }
+            }
+
+            if (filled[0] < chunk.length) {
+                throw new IOException("Connection closed at byte " + (start + filled[0]) + " of chunk ending at "
+                        + (start + chunk.length - 1));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,629 @@
+package atri.palaash.jvosk.models;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Installs a model by extracting its zip while it downloads.
+ * <p>
+ * The zip is read once, local file header by local file header, and each entry is inflated
+ * straight into its file through a direct buffer. The zip itself never touches the disk, so
+ * an install costs one write of the model instead of writing the zip, reading it back and
+ * moving the extracted files, and peak disk usage is the size of the model. The single
+ * top-level directory that model zips wrap their files in is stripped on the fly. When the
+ * server supports ranges the zip is fetched ahead over several connections through a
+ * {@link RangedInputStream}, so a dropped connection is retried without losing the entry.
+ * <p>
+ * Files are extracted into a staging directory ({@code .<model>.partial}) that is moved into
+ * place when the zip is complete. After every entry, and every {@link #CHECKPOINT_BYTES}
+ * within a large one, the install's position is saved in the staging directory. An
+ * interrupted install requests the zip again from the unfinished entry's header and
+ * re-inflates that entry without rewriting the part already on disk.
+ */
+public class StreamingModelInstaller {
+
+    private static final String STAGING_SUFFIX = ".partial";
+    private static final String MANIFEST_NAME = ".install";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long CHECKPOINT_BYTES = 64L * 1024 * 1024;
+
+    // Directories of a model itself, never a wrapper to strip
+    private static final Set<String> MODEL_SUBDIRECTORIES = Set.of(
+            "am/", "conf/", "graph/", "ivector/", "rescore/", "rnnlm/");
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final URL url;
+    private final Path targetDir;
+    private final Path stagingDir;
+    private final Path manifestPath;
+    private final int connections;
+    private final BooleanSupplier cancellationRequested;
+
+    // Progress, saved to the manifest
+    private String validator;
+    private long totalLength = -1;
+    private long nextEntryOffset; // Header of the first entry not completely on disk
+    private long entryWritten; // Bytes of that entry already on disk
+    private String stripPrefix;
+
+    private Consumer<Integer> progressCallback;
+    private int lastProgress = -1;
+
+    /**
+     * @param connections parallel range requests, when the server supports them
+     */
+    public StreamingModelInstaller(String url, Path targetDir, int connections) throws IOException {
+        this(url, targetDir, connections, DownloadManager.getInstance()::isCancellationRequested);
+    }
+
+    StreamingModelInstaller(String url, Path targetDir, int connections, BooleanSupplier cancellationRequested)
+            throws IOException {
+        this.url = new URL(url);
+        this.targetDir = targetDir;
+        this.stagingDir = stagingDir(targetDir);
+        this.manifestPath = stagingDir.resolve(MANIFEST_NAME);
+        this.connections = Math.max(1, connections);
+        this.cancellationRequested = cancellationRequested;
+    }
+
+    /**
+     * Whether an interrupted install into this directory can be resumed.
+     */
+    public static boolean hasPartialInstall(Path targetDir) {
+        return Files.exists(stagingDir(targetDir).resolve(MANIFEST_NAME));
+    }
+
+    /**
+     * Delete the staging directory of an interrupted install.
+     */
+    public static void discardPartialInstall(Path targetDir) throws IOException {
+        deleteDirectory(stagingDir(targetDir));
+    }
+
+    /**
+     * Whether a directory in the models folder is the staging area of an install.
+     */
+    static boolean isStagingDirectory(Path dir) {
+        String name = dir.getFileName().toString();
+        return name.startsWith(".") && name.endsWith(STAGING_SUFFIX);
+    }
+
+    private static Path stagingDir(Path targetDir) {
+        return targetDir.resolveSibling("." + targetDir.getFileName() + STAGING_SUFFIX);
+    }
+
+    /**
+     * Download and extract the model into the target directory, replacing it if it exists.
+     * @param progressCallback callback for download progress (0-100), invoked on the calling thread
+     * @throws NotStreamableException if the zip has entries that can only be extracted with its
+     *                                central directory; nothing is left behind in that case
+     */
+    public void install(Consumer<Integer> progressCallback) throws IOException {
+        this.progressCallback = progressCallback;
+        boolean resuming = loadManifest();
+
+        // Ask for the first byte: a 206 tells us ranges work and gives the total size
+        HttpURLConnection probe = RangedDownloader.openConnection(url);
+        probe.setRequestProperty("Range", "bytes=0-0");
+
+        try {
+            int status = probe.getResponseCode();
+            long length = status == HttpURLConnection.HTTP_PARTIAL
+                    ? RangedDownloader.parseTotalLength(probe.getHeaderField("Content-Range")) : -1;
+
+            if (length > 0) {
+                String current = RangedDownloader.validator(probe);
+                probe.disconnect();
+                if (resuming && (length != totalLength || (validator != null && !validator.equals(current)))) {
+                    System.out.println("Restarting install of " + targetDir.getFileName() + ": the zip changed on the server");
+                    resuming = false;
+                }
+                if (resuming) {
+                    System.out.println("Resuming install of " + targetDir.getFileName() + " at byte " + nextEntryOffset);
+                } else {
+                    startOver(length, current);
+                }
+
+                try (InputStream in = new RangedInputStream(url, nextEntryOffset, length, validator,
+                        connections, cancellationRequested)) {
+                    extract(new Source(in, nextEntryOffset));
+                }
+            } else {
+                // No range support: one plain request, which can't be resumed
+                if (status == HttpURLConnection.HTTP_PARTIAL) {
+                    probe.disconnect();
+                    probe = RangedDownloader.openConnection(url);
+                    status = probe.getResponseCode();
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Download failed: HTTP " + status + " from " + url);
+                }
+                if (resuming) {
+                    System.out.println("Restarting install of " + targetDir.getFileName() + " from the beginning");
+                }
+                startOver(probe.getContentLengthLong(), RangedDownloader.validator(probe));
+
+                try (InputStream in = probe.getInputStream()) {
+                    extract(new Source(in, 0));
+                }
+            }
+        } catch (NotStreamableException e) {
+            deleteDirectory(stagingDir);
+            throw e;
+        } finally {
+            probe.disconnect();
+        }
+
+        // Complete: swap the staging directory into place
+        Files.deleteIfExists(manifestPath);
+        deleteDirectory(targetDir);
+        Files.move(stagingDir, targetDir, StandardCopyOption.ATOMIC_MOVE);
+
+        if (progressCallback != null) {
+            progressCallback.accept(100);
+        }
+    }
+
+    private void startOver(long length, String validator) throws IOException {
+        deleteDirectory(stagingDir);
+        Files.createDirectories(stagingDir);
+        this.totalLength = length;
+        this.validator = validator;
+        nextEntryOffset = 0;
+        entryWritten = 0;
+        stripPrefix = null;
+    }
+
+    private void extract(Source source) throws IOException {
+        ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        Inflater inflater = new Inflater(true);
+
+        try {
+            while (true) {
+                long entryOffset = source.offset;
+                int signature = source.readInt();
+                if (signature == CENTRAL_HEADER_SIGNATURE || signature == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    // All entries are out; the central directory only repeats what we've seen
+                    return;
+                }
+                if (signature != LOCAL_HEADER_SIGNATURE) {
+                    throw new IOException(String.format("Invalid zip data at byte %d (signature %08x)",
+                            source.offset - 4, signature));
+                }
+
+                LocalEntry entry = readLocalHeader(source);
+                Path entryPath = resolveEntry(entry.name);
+
+                if (entry.isDirectory() || entryPath == null) {
+                    if (entryPath != null) {
+                        Files.createDirectories(entryPath);
+                    }
+                    // Directories can still carry an (empty) compressed body
+                    readData(source, entry, inflater, output, new EntryOutput(source, entryOffset, null, 0));
+                } else {
+                    Path parent = entryPath.getParent();
+                    if (parent != null) {
+                        Files.createDirectories(parent);
+                    }
+                    try (FileChannel channel = FileChannel.open(entryPath, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE)) {
+                        // Only the first entry of a resumed install has a part on disk already
+                        long onDisk = entryOffset == nextEntryOffset && entryWritten <= channel.size() ? entryWritten : 0;
+                        channel.truncate(onDisk);
+                        channel.position(onDisk);
+                        readData(source, entry, inflater, output, new EntryOutput(source, entryOffset, channel, onDisk));
+                    }
+                }
+
+                nextEntryOffset = source.offset;
+                entryWritten = 0;
+                saveManifest();
+                reportProgress(source.offset);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private LocalEntry readLocalHeader(Source source) throws IOException {
+        source.readShort(); // version needed
+        int flags = source.readShort();
+        int method = source.readShort();
+        source.readInt(); // modification time and date
+        LocalEntry entry = new LocalEntry();
+        entry.crc = source.readInt() & 0xffffffffL;
+        entry.compressedSize = source.readInt() & 0xffffffffL;
+        entry.size = source.readInt() & 0xffffffffL;
+        int nameLength = source.readShort();
+        int extraLength = source.readShort();
+        entry.name = new String(source.readBytes(nameLength), StandardCharsets.UTF_8);
+        byte[] extra = source.readBytes(extraLength);
+
+        entry.method = method;
+        entry.hasDataDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+        readZip64Sizes(entry, extra);
+
+        if ((flags & FLAG_ENCRYPTED) != 0) {
+            throw new IOException("Encrypted zip entries are not supported: " + entry.name);
+        }
+        if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+            throw new NotStreamableException("Unsupported compression method " + method + " for " + entry.name);
+        }
+        if (method == METHOD_STORED && entry.hasDataDescriptor) {
+            // Its length is only in the central directory
+            throw new NotStreamableException("Stored entry without size: " + entry.name);
+        }
+        return entry;
+    }
+
+    private static void readZip64Sizes(LocalEntry entry, byte[] extra) {
+        ByteBuffer buffer = ByteBuffer.wrap(extra).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        while (buffer.remaining() >= 4) {
+            int id = buffer.getShort() & 0xffff;
+            int length = buffer.getShort() & 0xffff;
+            if (length > buffer.remaining()) {
+                return;
+            }
+            if (id == ZIP64_EXTRA_ID) {
+                entry.zip64 = true;
+                int end = buffer.position() + length;
+                // Only the fields that are 0xffffffff in the header are present, in this order
+                if (entry.size == 0xffffffffL && buffer.position() + 8 <= end) {
+                    entry.size = buffer.getLong();
+                }
+                if (entry.compressedSize == 0xffffffffL && buffer.position() + 8 <= end) {
+                    entry.compressedSize = buffer.getLong();
+                }
+                return;
+            }
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    /**
+     * Strip the top-level directory the first entry lives in. Returns {@code null} for that
+     * directory itself.
+     */
+    private Path resolveEntry(String name) throws IOException {
+        if (stripPrefix == null) {
+            int slash = name.indexOf('/');
+            stripPrefix = slash > 0 ? name.substring(0, slash + 1) : "";
+            if (MODEL_SUBDIRECTORIES.contains(stripPrefix)) {
+                stripPrefix = "";
+            }
+        }
+
+        String relative = !stripPrefix.isEmpty() && name.startsWith(stripPrefix)
+                ? name.substring(stripPrefix.length())
+                : name;
+        if (relative.isEmpty()) {
+            return null;
+        }
+
+        Path entryPath = stagingDir.resolve(relative).normalize();
+        // Security check - prevent zip slip vulnerability
+        if (!entryPath.startsWith(stagingDir.normalize()) || entryPath.equals(manifestPath)) {
+            throw new IOException("Invalid zip entry: " + name);
+        }
+        return entryPath;
+    }
+
+    private void readData(Source source, LocalEntry entry, Inflater inflater, ByteBuffer output,
+                          EntryOutput out) throws IOException {
+        if (entry.method == METHOD_STORED) {
+            long remaining = entry.compressedSize;
+            while (remaining > 0) {
+                checkCancelled();
+                int length = (int) Math.min(source.fill(), Math.min(remaining, output.capacity()));
+                output.clear();
+                output.put(source.buffer, source.position, length);
+                source.advance(length);
+                remaining -= length;
+                output.flip();
+                out.write(output);
+            }
+        } else {
+            inflate(source, entry, inflater, output, out);
+        }
+
+        finishEntry(source, entry, out.crc);
+    }
+
+    private void inflate(Source source, LocalEntry entry, Inflater inflater, ByteBuffer output,
+                         EntryOutput out) throws IOException {
+        inflater.reset();
+        // Input bytes handed to the inflater that it hasn't consumed yet are still in the source buffer
+        int given = 0;
+        long compressedRemaining = entry.hasDataDescriptor ? Long.MAX_VALUE : entry.compressedSize;
+
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    source.advance(given);
+                    compressedRemaining -= given;
+                    checkCancelled();
+                    if (compressedRemaining <= 0) {
+                        throw new IOException("Truncated zip entry: " + entry.name);
+                    }
+                    given = (int) Math.min(source.fill(), compressedRemaining);
+                    inflater.setInput(source.buffer, source.position, given);
+                }
+
+                output.clear();
+                inflater.inflate(output);
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Unsupported zip entry: " + entry.name);
+                }
+                output.flip();
+                out.write(output);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt zip entry " + entry.name + ": " + e.getMessage(), e);
+        }
+
+        source.advance(given - inflater.getRemaining());
+    }
+
+    private void finishEntry(Source source, LocalEntry entry, CRC32 crc) throws IOException {
+        long expectedCrc = entry.crc;
+
+        if (entry.hasDataDescriptor) {
+            int first = source.readInt();
+            // The descriptor signature is optional
+            expectedCrc = (first == DATA_DESCRIPTOR_SIGNATURE ? source.readInt() : first) & 0xffffffffL;
+            source.skip(entry.zip64 ? 16 : 8);
+        }
+
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("CRC mismatch in zip entry: " + entry.name);
+        }
+    }
+
+    private void checkCancelled() throws IOException {
+        if (cancellationRequested.getAsBoolean()) {
+            throw new IOException("Download cancelled by user");
+        }
+    }
+
+    private void reportProgress(long offset) {
+        if (totalLength <= 0 || progressCallback == null) {
+            return;
+        }
+        int progress = (int) Math.min(99, (offset * 100) / totalLength);
+        if (progress != lastProgress) {
+            progressCallback.accept(progress);
+            lastProgress = progress;
+        }
+    }
+
+    private boolean loadManifest() {
+        if (!Files.exists(manifestPath)) {
+            return false;
+        }
+
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            manifest.load(in);
+            if (!url.toString().equals(manifest.getProperty("url"))) {
+                return false;
+            }
+            validator = manifest.getProperty("validator");
+            totalLength = Long.parseLong(manifest.getProperty("length", "-1"));
+            nextEntryOffset = Long.parseLong(manifest.getProperty("offset"));
+            entryWritten = Long.parseLong(manifest.getProperty("entryWritten", "0"));
+            stripPrefix = manifest.getProperty("stripPrefix");
+            return nextEntryOffset > 0 || entryWritten > 0;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable install manifest: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("url", url.toString());
+        manifest.setProperty("length", String.valueOf(totalLength));
+        manifest.setProperty("offset", String.valueOf(nextEntryOffset));
+        manifest.setProperty("entryWritten", String.valueOf(entryWritten));
+        if (validator != null) {
+            manifest.setProperty("validator", validator);
+        }
+        if (stripPrefix != null) {
+            manifest.setProperty("stripPrefix", stripPrefix);
+        }
+
+        // Write then rename, so a crash never leaves a truncated manifest behind
+        Path temp = manifestPath.resolveSibling(MANIFEST_NAME + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            manifest.store(out, "jvosk partial install");
+        }
+        Files.move(temp, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                 .forEach(path -> {
+                     try {
+                         Files.delete(path);
+                     } catch (IOException e) {
+                         System.err.println("Failed to delete: " + path);
+                     }
+                 });
+        }
+    }
+
+    /**
+     * Thrown when the zip needs its central directory to be extracted, so it has to be
+     * downloaded whole first.
+     */
+    public static class NotStreamableException extends IOException {
+        public NotStreamableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Where the data of one entry goes. Everything is checksummed, but the first
+     * {@code onDisk} bytes, which a resumed install already has, are not written again.
+     * Large entries are checkpointed as they go.
+     */
+    private final class EntryOutput {
+        final CRC32 crc = new CRC32();
+        private final Source source;
+        private final long entryOffset;
+        private final FileChannel channel; // null: only check the data
+        private long skip;
+        private long written;
+        private long checkpointed;
+
+        EntryOutput(Source source, long entryOffset, FileChannel channel, long onDisk) {
+            this.source = source;
+            this.entryOffset = entryOffset;
+            this.channel = channel;
+            this.skip = onDisk;
+            this.checkpointed = onDisk;
+        }
+
+        void write(ByteBuffer output) throws IOException {
+            crc.update(output.duplicate());
+            int length = output.remaining();
+            written += length;
+            if (channel == null) {
+                return;
+            }
+
+            if (skip > 0) {
+                int skipped = (int) Math.min(skip, length);
+                output.position(output.position() + skipped);
+                skip -= skipped;
+            }
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+
+            if (written - checkpointed >= CHECKPOINT_BYTES) {
+                // Data first, so the manifest never claims bytes that aren't on disk
+                channel.force(false);
+                nextEntryOffset = entryOffset;
+                entryWritten = written;
+                saveManifest();
+                checkpointed = written;
+                reportProgress(source.offset);
+            }
+        }
+    }
+
+    private static final class LocalEntry {
+        String name;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        boolean hasDataDescriptor;
+        boolean zip64;
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Buffered view of the response body that tracks the zip offset of the next unread byte.
+     */
+    private static final class Source {
+        final InputStream in;
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int position;
+        int limit;
+        long offset;
+
+        Source(InputStream in, long offset) {
+            this.in = in;
+            this.offset = offset;
+        }
+
+        /**
+         * Make sure at least one byte is buffered and return how many are.
+         */
+        int fill() throws IOException {
+            if (position == limit) {
+                position = 0;
+                limit = 0;
+                int read = in.read(buffer);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of zip data at byte " + offset);
+                }
+                limit = read;
+            }
+            return limit - position;
+        }
+
+        void advance(int count) {
+            position += count;
+            offset += count;
+        }
+
+        void skip(long count) throws IOException {
+            while (count > 0) {
+                int step = (int) Math.min(fill(), count);
+                advance(step);
+                count -= step;
+            }
+        }
+
+        byte[] readBytes(int count) throws IOException {
+            byte[] bytes = new byte[count];
+            int copied = 0;
+            while (copied < count) {
+                int step = Math.min(fill(), count - copied);
+                System.arraycopy(buffer, position, bytes, copied, step);
+                advance(step);
+                copied += step;
+            }
+            return bytes;
+        }
+
+        int readShort() throws IOException {
+            byte[] bytes = readBytes(2);
+            return (bytes[0] & 0xff) | (bytes[1] & 0xff) << 8;
+        }
+
+        int readInt() throws IOException {
+            byte[] bytes = readBytes(4);
+            return (bytes[0] & 0xff) | (bytes[1] & 0xff) << 8 | (bytes[2] & 0xff) << 16 | (bytes[3] & 0xff) << 24;
+        }
+    }
+}
@@ -0,0 +1,998 @@
+package atri.palaash.jvosk.server;
+
+import atri.palaash.jvosk.models.ModelManager;
+import atri.palaash.jvosk.models.ModelPool;
+import atri.palaash.jvosk.stt.FfmpegPcmDecoder;
+import atri.palaash.jvosk.stt.RecognizerConfig;
+import atri.palaash.jvosk.stt.RecognizerPool;
+import atri.palaash.jvosk.util.TaskScheduler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.vosk.Recognizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocket endpoint for live recognition, speaking the protocol of Vosk's own server so
+ * existing clients work unchanged: binary messages carry 16-bit little-endian mono PCM, an
+ * optional first text message {@code {"config": {"sample_rate": 8000, "words": 1}}} sets the
+ * format, and {@code {"eof": 1}} asks for the final result. The server answers with the
+ * recognizer's own JSON: {@code {"partial": "..."}} while an utterance is in progress and
+ * {@code {"text": "...", "result": [...]}} when it is final. The model is picked with
+ * {@code ?model=} on the URL, the sample rate also with {@code ?sample_rate=}. Only the
+ * usual rates from 8 to 48 kHz are accepted, since each rate in use keeps its own idle
+ * recognizers in the {@link RecognizerPool}.
+ * <p>
+ * Each connection has a thread reading frames and one writing them, virtual where the JDK
+ * has them; recognition runs on the shared {@link TaskScheduler#cpu()} pool, so hundreds of
+ * streams share the cores instead of fighting over them. A connection's audio is decoded in turns of a few chunks, one turn at a
+ * time, and partials are only computed once the connection has caught up, so a client
+ * sending faster than real time costs no extra work.
+ * <p>
+ * Memory per connection is bounded. Audio waiting for the recognizer is capped at
+ * {@link #MAX_BUFFERED_AUDIO_MILLIS}; beyond that the reader stops reading, and TCP flow
+ * control slows the client. Outgoing partials are coalesced, so a slow reader only ever
+ * gets the newest one. Final results queue up to {@link #MAX_PENDING_RESULTS}. A client
+ * that falls further behind than that is disconnected instead of stalling the recognizer.
+ */
+public class StreamingServer {
+
+    static final int MAX_BUFFERED_AUDIO_MILLIS = 10_000;
+    static final int MAX_PENDING_RESULTS = 64;
+
+    private static final int MAX_FRAME_BYTES = 64 * 1024;
+    private static final Set<Integer> SAMPLE_RATES = Set.of(8000, 11025, 16000, 22050, 32000, 44100, 48000);
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final int CHUNKS_PER_TURN = 4;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    private static final int CLOSE_TIMEOUT_MILLIS = 5_000;
+    // Small stacks when threads are not virtual: there are two per connection
+    private static final long THREAD_STACK_BYTES = 256 * 1024;
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    private static final int CLOSE_NORMAL = 1000;
+    private static final int CLOSE_GOING_AWAY = 1001;
+    private static final int CLOSE_PROTOCOL_ERROR = 1002;
+    private static final int CLOSE_POLICY = 1008;
+    private static final int CLOSE_TOO_BIG = 1009;
+    private static final int CLOSE_INTERNAL_ERROR = 1011;
+
+    private final ModelManager modelManager;
+    private final String defaultModel;
+    private final int maxConnections;
+    private final int idleTimeoutMillis;
+    private final ServerSocket serverSocket;
+    private final ExecutorService decoders;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private Thread acceptThread;
+    private volatile boolean stopped;
+
+    protected StreamingServer(Builder builder) throws IOException {
+        this.modelManager = builder.modelManager;
+        this.defaultModel = builder.defaultModel;
+        this.maxConnections = builder.maxConnections;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.decoders = TaskScheduler.getInstance().cpu();
+
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(builder.host, builder.port), 128);
+    }
+
+    public synchronized void start() {
+        acceptThread = TaskScheduler.getInstance().startIoThread("StreamAccept", this::acceptLoop);
+    }
+
+    /**
+     * Stop accepting, tell connected clients the server is going away and drop them.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {}
+        for (Connection connection : connections) {
+            connection.outbox.close(CLOSE_GOING_AWAY, "Server is shutting down");
+            connection.disconnect();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getHost() {
+        InetAddress address = serverSocket.getInetAddress();
+        return address != null ? address.getHostAddress() : null;
+    }
+
+    /**
+     * Open WebSocket connections, including ones still in the handshake.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    private void acceptLoop() {
+        while (!stopped) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!stopped) {
+                    System.err.println("Stream server stopped accepting: " + e.getMessage());
+                }
+                return;
+            }
+
+            // Over capacity: answer right here, without a thread or reading the request
+            if (connectionCount.incrementAndGet() > maxConnections) {
+                connectionCount.decrementAndGet();
+                refuseOverCapacity(socket);
+                continue;
+            }
+
+            Connection connection = new Connection(socket);
+            try {
+                TaskScheduler.getInstance().startIoThread("StreamReader-" + threadCounter.incrementAndGet(),
+                        THREAD_STACK_BYTES, connection::run);
+            } catch (RuntimeException e) {
+                connectionCount.decrementAndGet();
+                System.err.println("Failed to start stream connection: " + e.getMessage());
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Send a 503 and close. The response fits in the socket's send buffer, so this doesn't
+     * block the accept loop on a client that never reads.
+     */
+    private static void refuseOverCapacity(Socket socket) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(refusal(503, "Service Unavailable", "Server is at capacity, try again shortly"));
+            out.flush();
+            socket.shutdownOutput();
+        } catch (IOException ignored) {
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static byte[] refusal(int status, String reason, String message) throws IOException {
+        byte[] body = JSON.writeValueAsBytes(Map.of("error", message));
+        ByteArrayOutputStream response = new ByteArrayOutputStream(160 + body.length);
+        response.write(("HTTP/1.1 " + status + " " + reason + "\r\nContent-Type: application/json\r\n"
+                + (status == 503 ? "Retry-After: 1\r\n" : "")
+                + "Content-Length: " + body.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        response.write(body);
+        return response.toByteArray();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
+    }
+
+    private static boolean isSupportedSampleRate(float sampleRate) {
+        return sampleRate == (int) sampleRate && SAMPLE_RATES.contains((int) sampleRate);
+    }
+
+    /**
+     * A recognizer for one stream, used by one decoder turn at a time.
+     */
+    interface Session {
+        boolean acceptWaveForm(byte[] data, int length);
+
+        String getResult();
+
+        String getPartialResult();
+
+        String getFinalResult();
+
+        void close();
+    }
+
+    /**
+     * Check the model exists and load it, before the handshake is answered.
+     */
+    ModelPool.Lease acquireModel(String modelName) throws IOException {
+        return modelManager.acquireModel(modelName);
+    }
+
+    boolean isModelInstalled(String modelName) {
+        // Names only: a path would reach outside the models directory
+        return !modelName.isEmpty() && !modelName.contains("/") && !modelName.contains("\\")
+                && !modelName.startsWith(".") && Files.isDirectory(modelManager.getModelsDirectory().resolve(modelName));
+    }
+
+    /**
+     * Take a pooled recognizer for the model. Called on a decoder thread.
+     */
+    Session openSession(ModelPool.Lease model, float sampleRate, boolean words) throws IOException {
+        RecognizerConfig config = new RecognizerConfig.Builder().sampleRate(sampleRate).words(words).build();
+        RecognizerPool.Lease lease = RecognizerPool.getInstance().acquire(model.getModel(), config);
+        Recognizer recognizer = lease.getRecognizer();
+        return new Session() {
+            @Override
+            public boolean acceptWaveForm(byte[] data, int length) {
+                return recognizer.acceptWaveForm(data, length);
+            }
+
+            @Override
+            public String getResult() {
+                return recognizer.getResult();
+            }
+
+            @Override
+            public String getPartialResult() {
+                return recognizer.getPartialResult();
+            }
+
+            @Override
+            public String getFinalResult() {
+                return recognizer.getFinalResult();
+            }
+
+            @Override
+            public void close() {
+                lease.close();
+            }
+        };
+    }
+
+    /**
+     * One client: the handshake and frame reading on the thread that runs it, recognition
+     * in turns on the decoder pool, and replies from a writer thread fed by the outbox.
+     */
+    private final class Connection {
+
+        private final Socket socket;
+        private final Outbox outbox = new Outbox();
+        private final ConcurrentLinkedQueue<byte[]> audio = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private Semaphore audioBudget;
+        private OutputStream out;
+        private ModelPool.Lease model;
+        private float sampleRate = FfmpegPcmDecoder.SAMPLE_RATE;
+        private boolean words;
+        private int carriedByte = -1; // Odd trailing byte of the last audio frame
+        private volatile boolean audioStarted;
+        private volatile boolean eof;
+        private volatile boolean closed;
+
+        // Only touched in decoder turns, which never overlap
+        private Session session;
+        private String lastPartial;
+        private boolean finished;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Serve the connection; the accept loop has already counted it.
+         */
+        void run() {
+            Thread writer = null;
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+
+                if (!handshake(in)) {
+                    return;
+                }
+                connections.add(this);
+                socket.setSoTimeout(idleTimeoutMillis);
+
+                writer = TaskScheduler.getInstance().startIoThread(
+                        "StreamWriter-" + threadCounter.incrementAndGet(), THREAD_STACK_BYTES, this::writeLoop);
+
+                readLoop(in);
+                // Let the writer send the results and the close frame before the socket goes
+                writer.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (SocketTimeoutException e) {
+                outbox.close(CLOSE_GOING_AWAY, "Idle timeout");
+                joinQuietly(writer);
+            } catch (EOFException e) {
+                // Client went away without a close frame
+            } catch (IOException e) {
+                if (!closed && !stopped) {
+                    System.err.println("Stream connection failed: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                connectionCount.decrementAndGet();
+                connections.remove(this);
+                disconnect();
+            }
+        }
+
+        /**
+         * Answer the upgrade request.
+         * @return false if the request was refused and the connection should be closed
+         */
+        private boolean handshake(InputStream in) throws IOException {
+            String request = readHeaders(in);
+            String[] lines = request.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+                }
+            }
+
+            String key = headers.get("sec-websocket-key");
+            if (requestLine.length < 3 || !requestLine[0].equals("GET") || key == null
+                    || !headers.getOrDefault("upgrade", "").toLowerCase(Locale.ROOT).contains("websocket")) {
+                refuse(426, "Upgrade Required", "Expected a WebSocket upgrade request");
+                return false;
+            }
+            if (!"13".equals(headers.get("sec-websocket-version"))) {
+                refuse(426, "Upgrade Required", "Only WebSocket version 13 is supported");
+                return false;
+            }
+            if (stopped) {
+                refuse(503, "Service Unavailable", "Server is shutting down");
+                return false;
+            }
+
+            Map<String, String> query = parseQuery(requestLine[1]);
+            String modelName = query.getOrDefault("model", defaultModel);
+            if (modelName == null || !isModelInstalled(modelName)) {
+                refuse(404, "Not Found", "Model not installed: " + modelName);
+                return false;
+            }
+            try {
+                if (query.containsKey("sample_rate")) {
+                    sampleRate = Float.parseFloat(query.get("sample_rate"));
+                }
+            } catch (NumberFormatException e) {
+                sampleRate = -1;
+            }
+            if (!isSupportedSampleRate(sampleRate)) {
+                refuse(400, "Bad Request", "Invalid sample_rate: " + query.get("sample_rate"));
+                return false;
+            }
+            words = "1".equals(query.get("words")) || "true".equalsIgnoreCase(query.get("words"));
+            try {
+                model = acquireModel(modelName);
+            } catch (IOException e) {
+                refuse(500, "Internal Server Error", "Failed to load model: " + e.getMessage());
+                return false;
+            }
+
+            String accept = Base64.getEncoder().encodeToString(sha1((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII)));
+            out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            return true;
+        }
+
+        private void refuse(int status, String reason, String message) throws IOException {
+            out.write(refusal(status, reason, message));
+            out.flush();
+        }
+
+        private void readLoop(InputStream in) throws IOException, InterruptedException {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            int messageType = -1; // Opcode of the fragmented message in progress
+
+            while (!closed) {
+                int b0 = in.read();
+                int b1 = in.read();
+                if (b0 < 0 || b1 < 0) {
+                    throw new EOFException();
+                }
+                boolean fin = (b0 & 0x80) != 0;
+                int opcode = b0 & 0x0F;
+                long length = b1 & 0x7F;
+                if (length == 126) {
+                    length = (readByte(in) << 8) | readByte(in);
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | readByte(in);
+                    }
+                }
+
+                if ((b1 & 0x80) == 0 || (b0 & 0x70) != 0) {
+                    protocolError(CLOSE_PROTOCOL_ERROR, "Client frames must be masked and without extensions");
+                    return;
+                }
+                if (opcode >= OP_CLOSE && (length > 125 || !fin)) {
+                    protocolError(CLOSE_PROTOCOL_ERROR, "Invalid control frame");
+                    return;
+                }
+                if (length < 0) {
+                    // 64-bit length with the top bit set
+                    protocolError(CLOSE_PROTOCOL_ERROR, "Invalid frame length");
+                    return;
+                }
+                if (length > MAX_FRAME_BYTES) {
+                    protocolError(CLOSE_TOO_BIG, "Frames are limited to " + MAX_FRAME_BYTES + " bytes");
+                    return;
+                }
+                byte[] payload = readPayload(in, (int) length);
+
+                switch (opcode) {
+                    case OP_CLOSE -> {
+                        // Echo the code; an abrupt close by the client discards what is still queued
+                        int code = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : CLOSE_NORMAL;
+                        outbox.close(code, "");
+                        return;
+                    }
+                    case OP_PING -> outbox.pong(payload);
+                    case OP_PONG -> {}
+                    case OP_BINARY, OP_TEXT, OP_CONTINUATION -> {
+                        int type = opcode == OP_CONTINUATION ? messageType : opcode;
+                        if (type < 0 || (opcode != OP_CONTINUATION && messageType >= 0)) {
+                            protocolError(CLOSE_PROTOCOL_ERROR, "Unexpected frame " + opcode);
+                            return;
+                        }
+                        messageType = fin ? -1 : type;
+                        if (type == OP_BINARY) {
+                            // Fragments are audio as much as whole messages are
+                            if (!acceptAudio(payload)) {
+                                return;
+                            }
+                        } else {
+                            text.write(payload, 0, payload.length);
+                            if (text.size() > MAX_FRAME_BYTES) {
+                                protocolError(CLOSE_TOO_BIG, "Text messages are limited to " + MAX_FRAME_BYTES + " bytes");
+                                return;
+                            }
+                            if (fin) {
+                                String message = text.toString(StandardCharsets.UTF_8);
+                                text.reset();
+                                if (!handleText(message)) {
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                    default -> {
+                        protocolError(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private boolean acceptAudio(byte[] payload) throws InterruptedException {
+            if (eof) {
+                protocolError(CLOSE_PROTOCOL_ERROR, "Audio after eof");
+                return false;
+            }
+            payload = alignToSamples(payload);
+            if (payload.length == 0) {
+                return true;
+            }
+            if (audioBudget == null) {
+                int bytesPerSecond = Math.max(2, (int) sampleRate * 2);
+                audioBudget = new Semaphore(Math.max(MAX_FRAME_BYTES,
+                        (int) ((long) bytesPerSecond * MAX_BUFFERED_AUDIO_MILLIS / 1000)));
+            }
+            audioStarted = true;
+            // Blocks while the recognizer is behind, which stops reading the socket
+            while (!audioBudget.tryAcquire(payload.length, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    return false;
+                }
+            }
+            audio.add(payload);
+            schedule();
+            return true;
+        }
+
+        /**
+         * Frames can end mid-sample; carry an odd trailing byte over to the next frame so the
+         * recognizer always gets whole 16-bit samples.
+         */
+        private byte[] alignToSamples(byte[] payload) {
+            if (carriedByte < 0 && (payload.length & 1) == 0) {
+                return payload;
+            }
+            int start = carriedByte >= 0 ? 1 : 0;
+            byte[] samples = new byte[(start + payload.length) & ~1];
+            if (start == 1 && samples.length > 0) {
+                samples[0] = (byte) carriedByte;
+            }
+            int copied = Math.max(0, samples.length - start);
+            System.arraycopy(payload, 0, samples, start, copied);
+            if (copied < payload.length) {
+                carriedByte = payload[payload.length - 1] & 0xFF;
+            } else if (samples.length > 0) {
+                carriedByte = -1;
+            }
+            return samples;
+        }
+
+        private boolean handleText(String message) {
+            JsonNode node;
+            try {
+                node = JSON.readTree(message);
+            } catch (IOException e) {
+                protocolError(CLOSE_POLICY, "Text messages must be JSON");
+                return false;
+            }
+            if (node == null) {
+                return true;
+            }
+
+            JsonNode config = node.get("config");
+            if (config != null) {
+                if (audioStarted) {
+                    protocolError(CLOSE_POLICY, "config must come before any audio");
+                    return false;
+                }
+                if (config.has("sample_rate")) {
+                    sampleRate = (float) config.get("sample_rate").asDouble(-1);
+                    if (!isSupportedSampleRate(sampleRate)) {
+                        protocolError(CLOSE_POLICY, "Invalid sample_rate");
+                        return false;
+                    }
+                }
+                if (config.has("words")) {
+                    JsonNode value = config.get("words");
+                    words = value.isBoolean() ? value.asBoolean() : value.asInt() != 0;
+                }
+            }
+            if (node.has("eof")) {
+                eof = true;
+                schedule();
+            }
+            return true;
+        }
+
+        private void protocolError(int code, String reason) {
+            outbox.close(code, reason);
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    decoders.execute(this::decodeTurn);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Feed up to {@link #CHUNKS_PER_TURN} chunks to the recognizer, then give the thread
+         * to the next connection.
+         */
+        private void decodeTurn() {
+            try {
+                if (closed) {
+                    release();
+                    return;
+                }
+                for (int i = 0; i < CHUNKS_PER_TURN; i++) {
+                    byte[] chunk = audio.poll();
+                    if (chunk == null) {
+                        break;
+                    }
+                    audioBudget.release(chunk.length);
+                    if (session == null) {
+                        session = openSession(model, sampleRate, words);
+                    }
+                    if (session.acceptWaveForm(chunk, chunk.length)) {
+                        outbox.result(session.getResult());
+                        lastPartial = null;
+                    } else if (audio.isEmpty()) {
+                        // Only once caught up: a backlog would make every partial stale at once
+                        String partial = session.getPartialResult();
+                        if (!partial.equals(lastPartial)) {
+                            outbox.partial(partial);
+                            lastPartial = partial;
+                        }
+                    }
+                }
+                if (eof && audio.isEmpty() && !finished) {
+                    finished = true;
+                    outbox.result(session != null ? session.getFinalResult() : "{\"text\" : \"\"}");
+                    outbox.close(CLOSE_NORMAL, "");
+                    release();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Stream recognition failed: " + e.getMessage());
+                outbox.close(CLOSE_INTERNAL_ERROR, "Recognition failed");
+                closed = true;
+                release();
+            } finally {
+                scheduled.set(false);
+                if (closed || !audio.isEmpty() || (eof && !finished)) {
+                    if (!(closed && session == null && model == null)) {
+                        schedule();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Hand the recognizer and model back. Decoder turns only, so never during recognition.
+         */
+        private void release() {
+            if (session != null) {
+                session.close();
+                session = null;
+            }
+            if (model != null) {
+                model.close();
+                model = null;
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                while (true) {
+                    Outbox.Frame frame = outbox.take();
+                    if (frame == null) {
+                        break;
+                    }
+                    writeFrame(frame.opcode, frame.payload);
+                    if (outbox.isEmpty()) {
+                        out.flush();
+                    }
+                    if (frame.opcode == OP_CLOSE) {
+                        out.flush();
+                        // Wait briefly for the client's close frame, then give up on it
+                        socket.setSoTimeout(CLOSE_TIMEOUT_MILLIS);
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // Client gone; the reader notices too
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (outbox.isOverflowed()) {
+                    disconnect();
+                }
+            }
+        }
+
+        private void writeFrame(int opcode, byte[] payload) throws IOException {
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else if (payload.length < 65536) {
+                out.write(126);
+                out.write(payload.length >>> 8);
+                out.write(payload.length);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) ((long) payload.length >>> shift));
+                }
+            }
+            out.write(payload);
+        }
+
+        /**
+         * Close the socket and free the recognizer once no turn is using it.
+         */
+        void disconnect() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+            outbox.abandon();
+            schedule();
+        }
+
+        /**
+         * Replies waiting for the writer: at most one partial, since each replaces the last,
+         * and a bounded number of results.
+         */
+        private final class Outbox {
+
+            private Frame pong; // Only the latest ping is answered, so a ping flood stays bounded
+            private final ArrayDeque<String> results = new ArrayDeque<>();
+            private String partial;
+            private Frame close;
+            private boolean closeSent;
+            private boolean overflowed;
+
+            synchronized void partial(String json) {
+                if (close == null) {
+                    partial = json;
+                    notifyAll();
+                }
+            }
+
+            synchronized void result(String json) {
+                if (close != null) {
+                    return;
+                }
+                if (results.size() >= MAX_PENDING_RESULTS) {
+                    // Not reading; a close frame would not get through either
+                    overflowed = true;
+                    results.clear();
+                    partial = null;
+                    close = closeFrame(CLOSE_POLICY, "Client is not reading results");
+                    notifyAll();
+                    disconnect();
+                    return;
+                }
+                results.add(json);
+                partial = null; // Superseded by the result
+                notifyAll();
+            }
+
+            synchronized void pong(byte[] payload) {
+                pong = new Frame(OP_PONG, payload);
+                notifyAll();
+            }
+
+            /**
+             * Send a close frame after the queued results (for a normal close) or instead of them.
+             */
+            synchronized void close(int code, String reason) {
+                if (close != null) {
+                    return;
+                }
+                close = closeFrame(code, reason);
+                partial = null;
+                if (code != CLOSE_NORMAL) {
+                    results.clear();
+                }
+                notifyAll();
+            }
+
+            /**
+             * The socket is gone: let the writer stop instead of waiting for frames.
+             */
+            synchronized void abandon() {
+                closeSent = true;
+                notifyAll();
+            }
+
+            synchronized boolean isOverflowed() {
+                return overflowed;
+            }
+
+            synchronized boolean isEmpty() {
+                return pong == null && results.isEmpty() && partial == null && (close == null || closeSent);
+            }
+
+            /**
+             * Next frame to write, waiting for one; null once the close frame has been taken.
+             */
+            synchronized Frame take() throws InterruptedException {
+                while (true) {
+                    if (closeSent) {
+                        return null;
+                    }
+                    if (pong != null) {
+                        Frame frame = pong;
+                        pong = null;
+                        return frame;
+                    }
+                    if (!results.isEmpty()) {
+                        return new Frame(OP_TEXT, results.poll().getBytes(StandardCharsets.UTF_8));
+                    }
+                    if (close != null) {
+                        closeSent = true;
+                        return close;
+                    }
+                    if (partial != null) {
+                        Frame frame = new Frame(OP_TEXT, partial.getBytes(StandardCharsets.UTF_8));
+                        partial = null;
+                        return frame;
+                    }
+                    wait();
+                }
+            }
+
+            private Frame closeFrame(int code, String reason) {
+                byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+                byte[] payload = new byte[2 + Math.min(text.length, 123)];
+                payload[0] = (byte) (code >>> 8);
+                payload[1] = (byte) code;
+                System.arraycopy(text, 0, payload, 2, payload.length - 2);
+                return new Frame(OP_CLOSE, payload);
+            }
+
+            private final class Frame {
+                final int opcode;
+                final byte[] payload;
+
+                Frame(int opcode, byte[] payload) {
+                    this.opcode = opcode;
+                    this.payload = payload;
+                }
+            }
+        }
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int matched = 0; // Progress through \r\n\r\n
+        while (matched < 4) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            header.write(b);
+            if (header.size() > MAX_HEADER_BYTES) {
+                throw new IOException("Request headers too large");
+            }
+            matched = (b == '\r' && matched % 2 == 0) || (b == '\n' && matched % 2 == 1) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+        return header.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static byte[] readPayload(InputStream in, int length) throws IOException {
+        byte[] mask = new byte[4];
+        readFully(in, mask);
+        byte[] payload = new byte[length];
+        readFully(in, payload);
+        for (int i = 0; i < length; i++) {
+            payload[i] ^= mask[i & 3];
+        }
+        return payload;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int n = in.read(buffer, offset, buffer.length - offset);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            offset += n;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String target) {
+        Map<String, String> query = new HashMap<>();
+        int question = target.indexOf('?');
+        if (question < 0) {
+            return query;
+        }
+        for (String pair : target.substring(question + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void joinQuietly(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] sha1(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    public static class Builder {
+        private final ModelManager modelManager;
+        private String host = "127.0.0.1";
+        private int port = 2700;
+        private String defaultModel;
+        private int maxConnections = 512;
+        private int idleTimeoutMillis = 60_000;
+
+        public Builder(ModelManager modelManager) {
+            this.modelManager = modelManager;
+        }
+
+        /**
+         * Address to bind; the loopback interface by default.
+         */
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * Port to listen on, 2700 (as Vosk's server) by default; 0 picks a free one.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Installed model used when a connection doesn't name one.
+         */
+        public Builder defaultModel(String defaultModel) {
+            this.defaultModel = defaultModel;
+            return this;
+        }
+
+        /**
+         * Connections served at once; more are refused with 503. 512 by default.
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = Math.max(1, maxConnections);
+            return this;
+        }
+
+        /**
+         * How long a connection may send nothing before it is closed; a minute by default.
+         */
+        public Builder idleTimeoutMillis(int idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Bind the server; call {@link StreamingServer#start()} to begin serving.
+         */
+        public StreamingServer build() throws IOException {
+            return new StreamingServer(this);
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package atri.palaash.jvosk.server;
+
+import atri.palaash.jvosk.models.ModelManager;
+import atri.palaash.jvosk.models.ModelPool;
+import atri.palaash.jvosk.stt.EnergyVoiceActivityDetector;
+import atri.palaash.jvosk.stt.FfmpegPcmDecoder;
+import atri.palaash.jvosk.stt.VoskTranscriber;
+import atri.palaash.jvosk.util.TaskScheduler;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptSink;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Headless HTTP front end: {@code POST /transcribe} with an audio body returns its transcript.
+ * <p>
+ * WAV and raw PCM bodies ({@code audio/pcm} or {@code application/octet-stream},
+ * little-endian, and big-endian {@code audio/L16}, with optional {@code rate} and
+ * {@code channels} parameters) are converted on the fly and streamed straight into the
+ * recognizer as they arrive. Compressed formats such as {@code audio/mpeg} are spooled to a
+ * temporary file first, since ffmpeg needs to seek in some containers.
+ * <p>
+ * The response is a JSON document in the same layout as a JSON export, or, for clients
+ * sending {@code Accept: text/event-stream}, Server-Sent Events with each segment as it is
+ * recognized. Query parameters: {@code model} (an installed model, defaulting to the
+ * server's), {@code skipSilence=true}.
+ * <p>
+ * At most {@code maxConcurrent} requests are transcribed at once and {@code maxQueued} more
+ * wait for a slot without their bodies being read, so TCP flow control holds the uploads
+ * back; anything beyond that is answered {@code 429 Too Many Requests} straight away.
+ * Models come from the shared {@link ModelPool}, so concurrent requests for the same model
+ * share one copy. {@code GET /health} reports the load.
+ */
+public class TranscriptionServer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final AudioFormat TARGET_FORMAT = new AudioFormat(
+            AudioFormat.Encoding.PCM_SIGNED, FfmpegPcmDecoder.SAMPLE_RATE, 16, 1, 2, FfmpegPcmDecoder.SAMPLE_RATE, false);
+
+    // Content types ffmpeg decodes from a spooled file, by the extension it is given
+    private static final Map<String, String> SPOOLED_TYPES = Map.ofEntries(
+            Map.entry("audio/mpeg", "mp3"), Map.entry("audio/mp3", "mp3"),
+            Map.entry("audio/mp4", "m4a"), Map.entry("audio/m4a", "m4a"), Map.entry("audio/x-m4a", "m4a"),
+            Map.entry("audio/aac", "aac"), Map.entry("audio/flac", "flac"), Map.entry("audio/x-flac", "flac"),
+            Map.entry("audio/ogg", "ogg"), Map.entry("audio/opus", "opus"), Map.entry("audio/x-ms-wma", "wma"));
+
+    private final ModelManager modelManager;
+    private final String defaultModel;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxSpooledBytes;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore admitted;
+    private final Semaphore running;
+    private final AtomicInteger active = new AtomicInteger();
+
+    private TranscriptionServer(Builder builder) throws IOException {
+        this.modelManager = builder.modelManager;
+        this.defaultModel = builder.defaultModel;
+        this.maxConcurrent = builder.maxConcurrent;
+        this.maxQueued = builder.maxQueued;
+        this.maxSpooledBytes = builder.maxSpooledBytes;
+        this.admitted = new Semaphore(maxConcurrent + maxQueued);
+        this.running = new Semaphore(maxConcurrent, true);
+
+        // A few threads beyond the admitted requests, so rejections are answered even at capacity
+        this.executor = TaskScheduler.getInstance().newPool("HttpServer", maxConcurrent + maxQueued + 2);
+
+        this.server = HttpServer.create(new InetSocketAddress(builder.host, builder.port), 64);
+        server.setExecutor(executor);
+        server.createContext("/transcribe", this::handleTranscribe);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, give running ones the delay to finish, then cancel them.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdownNow();
+    }
+
+    /**
+     * The bound port, useful when the server was built with port 0.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getHost() {
+        return server.getAddress().getHostString();
+    }
+
+    /**
+     * Requests being transcribed right now.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Requests admitted but waiting for a transcription slot.
+     */
+    public int getQueuedCount() {
+        return Math.max(0, maxConcurrent + maxQueued - admitted.availablePermits() - active.get());
+    }
+
+    private void handleTranscribe(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Use POST with an audio body");
+                return;
+            }
+            if (!admitted.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 429, "Server is at capacity, try again shortly");
+                return;
+            }
+            try {
+                transcribe(exchange);
+            } finally {
+                admitted.release();
+            }
+        }
+    }
+
+    private void transcribe(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String modelName = query.getOrDefault("model", defaultModel);
+        if (modelName == null) {
+            sendError(exchange, 400, "No model given and the server has no default");
+            return;
+        }
+        // Names only: a path would reach outside the models directory
+        if (modelName.isEmpty() || modelName.contains("/") || modelName.contains("\\") || modelName.startsWith(".")
+                || !Files.isDirectory(modelManager.getModelsDirectory().resolve(modelName))) {
+            sendError(exchange, 404, "Model not installed: " + modelName);
+            return;
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        Map<String, String> typeParams = new HashMap<>();
+        String mediaType = parseContentType(contentType, typeParams);
+        boolean raw = mediaType.equals("audio/pcm") || mediaType.equals("application/octet-stream")
+                || mediaType.equals("audio/l16");
+        boolean wav = mediaType.equals("audio/wav") || mediaType.equals("audio/x-wav")
+                || mediaType.equals("audio/wave") || mediaType.equals("audio/vnd.wave");
+        if (!raw && !wav && !SPOOLED_TYPES.containsKey(mediaType)) {
+            sendError(exchange, 415, "Unsupported Content-Type: " + contentType);
+            return;
+        }
+        AudioFormat pcmFormat;
+        try {
+            pcmFormat = raw ? rawFormat(mediaType, typeParams) : null;
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Invalid rate or channels in Content-Type: " + contentType);
+            return;
+        }
+
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "Server is shutting down");
+            return;
+        }
+        active.incrementAndGet();
+        try {
+            ModelPool.Lease lease;
+            try {
+                lease = modelManager.acquireModel(modelName);
+            } catch (IOException e) {
+                sendError(exchange, 500, "Failed to load model: " + e.getMessage());
+                return;
+            }
+            serve(exchange, modelName, pcmFormat, mediaType, query, new VoskTranscriber(lease));
+        } finally {
+            active.decrementAndGet();
+            running.release();
+        }
+    }
+
+    private void serve(HttpExchange exchange, String modelName, AudioFormat pcmFormat, String mediaType,
+                       Map<String, String> query, VoskTranscriber transcriber) throws IOException {
+        try (transcriber) {
+            if ("true".equalsIgnoreCase(query.get("skipSilence"))) {
+                transcriber.setVoiceActivityDetector(new EnergyVoiceActivityDetector());
+            }
+
+            Map<String, String> metadata = new LinkedHashMap<>();
+            metadata.put("model", modelName);
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            Transcription transcription = onSegment -> {
+                if (pcmFormat != null) {
+                    transcribePcm(transcriber, exchange.getRequestBody(), pcmFormat, onSegment);
+                } else if (SPOOLED_TYPES.containsKey(mediaType)) {
+                    transcribeSpooled(transcriber, exchange.getRequestBody(), SPOOLED_TYPES.get(mediaType), onSegment);
+                } else {
+                    transcribeWav(transcriber, exchange.getRequestBody(), onSegment);
+                }
+            };
+            if (accept != null && accept.contains("text/event-stream")) {
+                respondWithEvents(exchange, metadata, transcription);
+            } else {
+                respondWithJson(exchange, metadata, transcription);
+            }
+        }
+    }
+
+    /**
+     * Transcribe the request body, handing each segment to the consumer.
+     */
+    @FunctionalInterface
+    private interface Transcription {
+        void run(Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException, UnsupportedAudioFileException;
+    }
+
+    private void respondWithJson(HttpExchange exchange, Map<String, String> metadata, Transcription transcription) throws IOException {
+        List<TranscriptSegment> segments = new ArrayList<>();
+        try {
+            transcription.run(segments::add);
+        } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+            sendError(exchange, 415, "Unsupported audio: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "Server is shutting down");
+            return;
+        } catch (IOException | RuntimeException e) {
+            sendError(exchange, 500, "Transcription failed: " + e.getMessage());
+            return;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256 + segments.size() * 256);
+        try (TranscriptSink sink = TranscriptSink.open("json", body, metadata)) {
+            sink.setAutoFlush(false);
+            for (TranscriptSegment segment : segments) {
+                sink.accept(segment);
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    private void respondWithEvents(HttpExchange exchange, Map<String, String> metadata, Transcription transcription) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // Chunked
+
+        try (TranscriptSink.EventStreamSink sink = TranscriptSink.openEventStream(exchange.getResponseBody(), metadata)) {
+            try {
+                transcription.run(segment -> {
+                    try {
+                        sink.accept(segment);
+                    } catch (IOException e) {
+                        // Client went away: stops the recognizer
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sink.error("Server is shutting down");
+            } catch (Exception e) {
+                sink.error("Transcription failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void transcribePcm(VoskTranscriber transcriber, InputStream body, AudioFormat format,
+                                      Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        if (format.matches(TARGET_FORMAT)) {
+            transcriber.transcribeStream(body, onSegment);
+            return;
+        }
+        AudioInputStream source = new AudioInputStream(body, format, AudioSystem.NOT_SPECIFIED);
+        try (AudioInputStream converted = AudioSystem.getAudioInputStream(TARGET_FORMAT, source)) {
+            transcriber.transcribeStream(converted, onSegment);
+        }
+    }
+
+    private static void transcribeWav(VoskTranscriber transcriber, InputStream body,
+                                      Consumer<TranscriptSegment> onSegment)
+            throws IOException, InterruptedException, UnsupportedAudioFileException {
+        // Buffered for the header parser's mark and reset
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(body))) {
+            if (source.getFormat().matches(TARGET_FORMAT)) {
+                transcriber.transcribeStream(source, onSegment);
+                return;
+            }
+            try (AudioInputStream converted = AudioSystem.getAudioInputStream(TARGET_FORMAT, source)) {
+                transcriber.transcribeStream(converted, onSegment);
+            }
+        }
+    }
+
+    private void transcribeSpooled(VoskTranscriber transcriber, InputStream body, String extension,
+                                   Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        File spooled = File.createTempFile("jvosk_upload_", "." + extension);
+        try {
+            try (InputStream limited = new LimitedInputStream(body, maxSpooledBytes)) {
+                Files.copy(limited, spooled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            transcriber.transcribeFile(spooled, onSegment);
+        } finally {
+            Files.deleteIfExists(spooled.toPath());
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (JsonGenerator json = JSON_FACTORY.createGenerator(body, JsonEncoding.UTF8)) {
+                json.writeStartObject();
+                json.writeStringField("status", "ok");
+                json.writeNumberField("active", getActiveCount());
+                json.writeNumberField("queued", getQueuedCount());
+                json.writeNumberField("maxConcurrent", maxConcurrent);
+                json.writeNumberField("maxQueued", maxQueued);
+                json.writeArrayFieldStart("loadedModels");
+                for (var path : ModelPool.getInstance().getLoadedModels()) {
+                    json.writeString(path.getFileName().toString());
+                }
+                json.writeEndArray();
+                json.writeArrayFieldStart("pools");
+                for (TaskScheduler.PoolMetrics pool : TaskScheduler.getInstance().getMetrics()) {
+                    json.writeStartObject();
+                    json.writeStringField("name", pool.getName());
+                    json.writeBooleanField("virtual", pool.isVirtual());
+                    json.writeNumberField("threads", pool.getThreads());
+                    if (pool.getMaxThreads() != Integer.MAX_VALUE) {
+                        json.writeNumberField("maxThreads", pool.getMaxThreads());
+                    }
+                    json.writeNumberField("active", pool.getActive());
+                    json.writeNumberField("queued", pool.getQueued());
+                    json.writeNumberField("completed", pool.getCompleted());
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                body.writeTo(out);
+            }
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(body, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    /**
+     * The raw PCM layout described by the content type: 16-bit signed, little-endian except
+     * for {@code audio/L16}, which RFC 2586 defines as network byte order.
+     */
+    private static AudioFormat rawFormat(String mediaType, Map<String, String> params) {
+        float rate = Float.parseFloat(params.getOrDefault("rate", String.valueOf(FfmpegPcmDecoder.SAMPLE_RATE)));
+        int channels = Integer.parseInt(params.getOrDefault("channels", "1"));
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, 16, channels, 2 * channels, rate,
+                mediaType.equals("audio/l16"));
+    }
+
+    /**
+     * The lower-case media type, with its parameters put into the map.
+     */
+    private static String parseContentType(String contentType, Map<String, String> params) {
+        if (contentType == null) {
+            return "application/octet-stream";
+        }
+        String[] parts = contentType.split(";");
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq > 0) {
+                params.put(parts[i].substring(0, eq).trim().toLowerCase(Locale.ROOT),
+                        parts[i].substring(eq + 1).trim().replace("\"", ""));
+            }
+        }
+        return parts[0].trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    /**
+     * Fails once more than the limit has been read, so an upload can't fill the disk.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(long n) throws IOException {
+            remaining -= n;
+            if (remaining < 0) {
+                throw new IOException("Upload is larger than the server accepts");
+            }
+        }
+    }
+
+    public static class Builder {
+        private final ModelManager modelManager;
+        private String host = "127.0.0.1";
+        private int port = 8080;
+        private String defaultModel;
+        private int maxConcurrent = Runtime.getRuntime().availableProcessors();
+        private int maxQueued = -1; // Twice maxConcurrent unless set
+        private long maxSpooledBytes = 1024L * 1024 * 1024;
+
+        public Builder(ModelManager modelManager) {
+            this.modelManager = modelManager;
+        }
+
+        /**
+         * Address to bind; the loopback interface by default.
+         */
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * Port to listen on, 8080 by default; 0 picks a free one.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Installed model used when a request doesn't name one.
+         */
+        public Builder defaultModel(String defaultModel) {
+            this.defaultModel = defaultModel;
+            return this;
+        }
+
+        /**
+         * Requests transcribed at once; the number of cores by default.
+         */
+        public Builder maxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            return this;
+        }
+
+        /**
+         * Requests waiting for a slot before further ones get 429; twice maxConcurrent by default.
+         */
+        public Builder maxQueued(int maxQueued) {
+            this.maxQueued = Math.max(0, maxQueued);
+            return this;
+        }
+
+        /**
+         * Largest compressed upload accepted, 1 GB by default. WAV and PCM are streamed and
+         * not limited.
+         */
+        public Builder maxSpooledBytes(long maxSpooledBytes) {
+            this.maxSpooledBytes = maxSpooledBytes;
+            return this;
+        }
+
+        /**
+         * Bind the server; call {@link TranscriptionServer#start()} to begin serving.
+         */
+        public TranscriptionServer build() throws IOException {
+            if (maxQueued < 0) {
+                maxQueued = 2 * maxConcurrent;
+            }
+            return new TranscriptionServer(this);
+        }
+    }
+}
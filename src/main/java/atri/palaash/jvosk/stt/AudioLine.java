@@ -0,0 +1,34 @@
+package atri.palaash.jvosk.stt;
+
+import java.io.IOException;
+
+/**
+ * A source of live 16kHz, mono, 16-bit little-endian PCM, such as a microphone.
+ * <p>
+ * {@link MicrophoneLine} captures from the sound card; {@link FileAudioLine} plays a file
+ * back at real-time pace and stands in for a microphone where there is none.
+ */
+public interface AudioLine extends AutoCloseable {
+
+    /**
+     * Start capturing.
+     */
+    void start() throws IOException;
+
+    /**
+     * Read captured audio, blocking until some is available.
+     * @return the number of bytes read, or -1 when the line has no more audio
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Stop capturing. A blocked {@link #read} returns.
+     */
+    @Override
+    void close();
+
+    /**
+     * Short description for the UI, e.g. the device name.
+     */
+    String getName();
+}
@@ -0,0 +1,104 @@
+package atri.palaash.jvosk.stt;
+
+/**
+ * Voice activity detection from frame energy and zero-crossing rate.
+ * <p>
+ * The detector follows the background level with a noise floor that drops immediately to
+ * quieter frames and rises only slowly, so a long stretch of speech does not become the new
+ * floor. A frame is speech when it is {@code thresholdDb} louder than the floor, or when it
+ * is at least half that loud and crosses zero as often as unvoiced consonants (s, f, sh) do,
+ * which are too quiet to pass on energy alone. After the last speech frame the detector keeps
+ * reporting speech for the hangover, so word endings and the pause the recognizer needs to
+ * close an utterance are not cut off.
+ */
+public class EnergyVoiceActivityDetector implements VoiceActivityDetector {
+
+    public static final double DEFAULT_THRESHOLD_DB = 12.0;
+    public static final int DEFAULT_HANGOVER_MILLIS = 400;
+
+    // Nothing below this is ever speech, whatever the floor (about -60 dBFS)
+    private static final double MIN_SPEECH_DB = 30.0;
+    // Fraction of samples crossing zero above which a quiet frame sounds like a fricative
+    private static final double FRICATIVE_ZCR = 0.3;
+    // Floor rise per frame towards louder frames; about 3s to catch up at 30ms frames. Pauses
+    // between words pull it straight back down, so speech itself barely moves it
+    private static final double FLOOR_RISE = 0.01;
+
+    private final double thresholdDb;
+    private final int hangoverFrames;
+
+    private double noiseFloorDb = Double.NaN;
+    private int hangoverLeft;
+
+    public EnergyVoiceActivityDetector() {
+        this(DEFAULT_THRESHOLD_DB, DEFAULT_HANGOVER_MILLIS);
+    }
+
+    /**
+     * @param thresholdDb how much louder than the background a frame must be to count as speech
+     * @param hangoverMillis how long after speech ends frames are still passed on
+     */
+    public EnergyVoiceActivityDetector(double thresholdDb, int hangoverMillis) {
+        if (thresholdDb <= 0 || hangoverMillis < 0) {
+            throw new IllegalArgumentException("Invalid detector settings: " + thresholdDb + " dB, " + hangoverMillis + " ms");
+        }
+        this.thresholdDb = thresholdDb;
+        this.hangoverFrames = (hangoverMillis + FRAME_MILLIS - 1) / FRAME_MILLIS;
+    }
+
+    @Override
+    public boolean isSpeech(byte[] pcm, int offset, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return hangoverLeft > 0;
+        }
+
+        double energy = 0;
+        int crossings = 0;
+        int previous = 0;
+        for (int i = 0; i < samples; i++) {
+            int index = offset + i * 2;
+            int sample = (short) ((pcm[index] & 0xFF) | (pcm[index + 1] << 8));
+            energy += (double) sample * sample;
+            if (i > 0 && (sample ^ previous) < 0) {
+                crossings++;
+            }
+            previous = sample;
+        }
+
+        double levelDb = 10 * Math.log10(energy / samples + 1);
+        double zeroCrossingRate = (double) crossings / samples;
+
+        if (Double.isNaN(noiseFloorDb) || levelDb < noiseFloorDb) {
+            noiseFloorDb = levelDb;
+        } else {
+            noiseFloorDb += (levelDb - noiseFloorDb) * FLOOR_RISE;
+        }
+
+        double aboveFloor = levelDb - noiseFloorDb;
+        boolean speech = levelDb >= MIN_SPEECH_DB
+                && (aboveFloor >= thresholdDb
+                    || (aboveFloor >= thresholdDb / 2 && zeroCrossingRate >= FRICATIVE_ZCR));
+
+        if (speech) {
+            hangoverLeft = hangoverFrames;
+            return true;
+        }
+        if (hangoverLeft > 0) {
+            hangoverLeft--;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String getSettings() {
+        return getClass().getName() + "(" + thresholdDb + " dB, " + hangoverFrames + " frames)";
+    }
+
+    @Override
+    public void reset() {
+        noiseFloorDb = Double.NaN;
+        hangoverLeft = 0;
+    }
+}
@@ -0,0 +1,110 @@
+package atri.palaash.jvosk.stt;
+
+import ws.schild.jave.process.ffmpeg.DefaultFFMPEGLocator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes any FFmpeg-supported audio file into a live stream of 16kHz, mono, 16-bit
+ * little-endian PCM.
+ * <p>
+ * The bundled JAVE2 ffmpeg binary writes to a pipe instead of a temp WAV, so the OS pipe
+ * buffer bounds how far decoding can run ahead of recognition and no intermediate file
+ * ever touches the disk.
+ */
+public class FfmpegPcmDecoder implements Closeable {
+
+    public static final int SAMPLE_RATE = 16000;
+
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+    private final File sourceFile;
+    private final Process process;
+    private final InputStream pcmStream;
+
+    private FfmpegPcmDecoder(File sourceFile, Process process) {
+        this.sourceFile = sourceFile;
+        this.process = process;
+        this.pcmStream = new BufferedInputStream(process.getInputStream(), PIPE_BUFFER_SIZE);
+    }
+
+    /**
+     * Start decoding the given file. Bytes become readable from {@link #getInputStream()}
+     * as soon as ffmpeg produces them.
+     */
+    public static FfmpegPcmDecoder open(File audioFile) throws IOException {
+        return open(audioFile, 0);
+    }
+
+    /**
+     * Start decoding the given file from a position in milliseconds.
+     */
+    public static FfmpegPcmDecoder open(File audioFile, long startMillis) throws IOException {
+        String ffmpeg = new DefaultFFMPEGLocator().getExecutablePath();
+
+        List<String> command = new ArrayList<>(List.of(ffmpeg, "-hide_banner", "-nostdin"));
+        if (startMillis > 0) {
+            // Before -i, so ffmpeg seeks in the input instead of decoding up to the position
+            command.add("-ss");
+            command.add(String.format(Locale.ROOT, "%.3f", startMillis / 1000.0));
+        }
+        command.addAll(List.of(
+                "-i", audioFile.getAbsolutePath(),
+                "-vn",                      // Ignore cover art / video streams
+                "-acodec", "pcm_s16le",     // 16-bit signed PCM little-endian
+                "-ac", "1",                 // Mono
+                "-ar", String.valueOf(SAMPLE_RATE),
+                "-f", "s16le",              // Raw samples, no container
+                "pipe:1"
+        ));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        // ffmpeg logs progress to stderr; an undrained pipe would eventually block it
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        return new FfmpegPcmDecoder(audioFile, builder.start());
+    }
+
+    /**
+     * Raw PCM output of the decoder. Reads block until ffmpeg has produced more samples.
+     */
+    public InputStream getInputStream() {
+        return pcmStream;
+    }
+
+    /**
+     * Wait for ffmpeg to exit after the stream has been drained and report decode failures.
+     */
+    public void awaitCompletion() throws IOException, InterruptedException {
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("Audio decoder did not terminate: " + sourceFile.getName());
+        }
+
+        int exitCode = process.exitValue();
+        if (exitCode != 0) {
+            throw new IOException(
+                "Audio conversion failed. The file may be corrupted or in an unsupported format.\n" +
+                "Error: ffmpeg exited with code " + exitCode
+            );
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            pcmStream.close();
+        } catch (IOException ignored) {}
+
+        if (process.isAlive()) {
+            process.destroy();
+        }
+    }
+}
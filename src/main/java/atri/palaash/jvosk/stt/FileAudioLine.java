@@ -0,0 +1,97 @@
+package atri.palaash.jvosk.stt;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a WAV file (or raw 16kHz mono PCM stream) as if it were being captured live.
+ * <p>
+ * With real-time pacing on, reads hand out audio no faster than a sound card would, which
+ * makes live mode reproducible without a microphone.
+ */
+public class FileAudioLine implements AudioLine {
+
+    private static final int BYTES_PER_SECOND = FfmpegPcmDecoder.SAMPLE_RATE * 2;
+
+    private final String name;
+    private final InputStream pcm;
+    private final boolean realTime;
+    private long startNanos;
+    private long bytesDelivered;
+    private volatile boolean closed;
+
+    /**
+     * @param realTime pace reads at the rate of the audio instead of as fast as the file can be read
+     */
+    public FileAudioLine(File wavFile, boolean realTime) throws IOException {
+        this(wavFile.getName(), openPcm(wavFile), realTime);
+    }
+
+    public FileAudioLine(String name, InputStream pcm, boolean realTime) {
+        this.name = name;
+        this.pcm = pcm;
+        this.realTime = realTime;
+    }
+
+    private static InputStream openPcm(File wavFile) throws IOException {
+        try {
+            AudioInputStream source = AudioSystem.getAudioInputStream(wavFile);
+            AudioFormat target = new AudioFormat(FfmpegPcmDecoder.SAMPLE_RATE, 16, 1, true, false);
+            return source.getFormat().matches(target) ? source : AudioSystem.getAudioInputStream(target, source);
+        } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+            throw new IOException("Unsupported audio file: " + wavFile.getName(), e);
+        }
+    }
+
+    @Override
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            return -1;
+        }
+
+        if (realTime) {
+            // Wait until the audio being handed out would have been recorded
+            long dueNanos = startNanos + TimeUnit.SECONDS.toNanos(bytesDelivered + length) / BYTES_PER_SECOND;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+
+        int read = pcm.readNBytes(buffer, offset, length & ~1);
+        if (read == 0) {
+            return -1;
+        }
+        bytesDelivered += read;
+        return read;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            pcm.close();
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,218 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TaskScheduler;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transcribes an {@link AudioLine} as it is captured.
+ * <p>
+ * A capture thread does nothing but read the line and copy into a {@link PcmRingBuffer}, so
+ * the line is drained on time no matter how long recognition or the UI take. A recognizer
+ * thread takes the audio out in {@link #FRAME_MILLIS} frames, reports the current partial
+ * hypothesis after each frame and a segment whenever the recognizer finalizes an utterance.
+ * Listener callbacks run on the recognizer thread.
+ */
+public class LiveTranscriber {
+
+    public static final int FRAME_MILLIS = 100;
+
+    private static final int BYTES_PER_SECOND = FfmpegPcmDecoder.SAMPLE_RATE * 2;
+    private static final int FRAME_BYTES = BYTES_PER_SECOND * FRAME_MILLIS / 1000;
+    // Capture reads are smaller than a frame to keep latency down
+    private static final int CAPTURE_CHUNK_BYTES = FRAME_BYTES / 5;
+    private static final int RING_SECONDS = 15;
+
+    /**
+     * Receives live results, on the recognizer thread.
+     */
+    public interface Listener {
+        /**
+         * The hypothesis for the utterance in progress changed. Replaces the previous partial.
+         */
+        void onPartial(String text);
+
+        /**
+         * An utterance is final. Replaces the current partial.
+         */
+        void onSegment(TranscriptSegment segment);
+
+        /**
+         * Capture or recognition failed; the session has stopped.
+         */
+        void onError(Exception e);
+
+        /**
+         * The session ended and the last segment, if any, has been delivered.
+         */
+        void onStopped();
+    }
+
+    private final Model model;
+    private final RecognizerConfig config;
+    private final PcmRingBuffer ring = new PcmRingBuffer(RING_SECONDS * BYTES_PER_SECOND);
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    private AudioLine line;
+    private Listener listener;
+    private Thread captureThread;
+    private Thread recognizerThread;
+    private volatile IOException captureFailure; // Set before captureFinished
+    private volatile boolean captureFinished;
+    private volatile boolean stopRequested;
+
+    public LiveTranscriber(Model model) {
+        this(model, RecognizerConfig.DEFAULT);
+    }
+
+    public LiveTranscriber(Model model, RecognizerConfig config) {
+        this.model = model;
+        this.config = config;
+    }
+
+    /**
+     * Start capturing from the line and transcribing. A transcriber can only be started once.
+     */
+    public synchronized void start(AudioLine line, Listener listener) throws IOException {
+        if (captureThread != null) {
+            throw new IllegalStateException("Live transcription already started");
+        }
+        this.line = line;
+        this.listener = listener;
+
+        line.start();
+
+        // Platform threads: capture needs its priority, and recognition sits in native code
+        TaskScheduler scheduler = TaskScheduler.getInstance();
+        captureThread = scheduler.newThread("LiveCapture", this::captureLoop);
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        recognizerThread = scheduler.newThread("LiveRecognizer", this::recognizeLoop);
+
+        recognizerThread.start();
+        captureThread.start();
+    }
+
+    /**
+     * Stop capturing. Audio already captured is still recognized; {@link Listener#onStopped()}
+     * is called when that is done.
+     */
+    public void stop() {
+        stopRequested = true;
+        if (line != null) {
+            line.close();
+        }
+        if (recognizerThread != null) {
+            LockSupport.unpark(recognizerThread);
+        }
+    }
+
+    public boolean isRunning() {
+        return recognizerThread != null && recognizerThread.isAlive();
+    }
+
+    /**
+     * Audio lost because the recognizer fell more than the ring buffer behind.
+     */
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    private void captureLoop() {
+        byte[] chunk = new byte[CAPTURE_CHUNK_BYTES];
+
+        try {
+            while (!stopRequested) {
+                int read = line.read(chunk, 0, chunk.length);
+                if (read < 0) {
+                    break;
+                }
+
+                int written = ring.write(chunk, 0, read);
+                if (written < read) {
+                    droppedBytes.addAndGet(read - written);
+                }
+                LockSupport.unpark(recognizerThread);
+            }
+        } catch (IOException e) {
+            // Reported once the audio captured before it has been recognized
+            if (!stopRequested) {
+                captureFailure = e;
+            }
+        } finally {
+            captureFinished = true;
+            LockSupport.unpark(recognizerThread);
+        }
+    }
+
+    private void recognizeLoop() {
+        byte[] frame = new byte[FRAME_BYTES];
+        int filled = 0;
+        Exception failure = null;
+        String lastPartial = "";
+
+        try (RecognizerPool.Lease lease = RecognizerPool.getInstance().acquire(model, config)) {
+            Recognizer recognizer = lease.getRecognizer();
+            RecognizerResultParser parser = new RecognizerResultParser();
+
+            while (true) {
+                filled += ring.read(frame, filled, frame.length - filled);
+
+                if (filled == frame.length) {
+                    if (recognizer.acceptWaveForm(frame, filled)) {
+                        emitSegment(parser.parse(recognizer.getResult()));
+                        lastPartial = "";
+                    } else {
+                        lastPartial = emitPartial(parser.parse(recognizer.getPartialResult()), lastPartial);
+                    }
+                    filled = 0;
+                } else if (captureFinished && ring.available() == 0) {
+                    break;
+                } else {
+                    // Woken by the capture thread when more audio arrives
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FRAME_MILLIS));
+                }
+            }
+
+            if (filled > 0) {
+                recognizer.acceptWaveForm(frame, filled);
+            }
+            emitSegment(parser.parse(recognizer.getFinalResult()));
+
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        } finally {
+            line.close();
+        }
+
+        if (failure == null) {
+            failure = captureFailure;
+        }
+        if (failure != null) {
+            listener.onError(failure);
+        }
+        listener.onStopped();
+    }
+
+    private void emitSegment(RecognizerResultParser.Result result) {
+        TranscriptSegment segment = result.toSegment(0);
+        if (segment != null) {
+            listener.onSegment(segment);
+        }
+    }
+
+    private String emitPartial(RecognizerResultParser.Result result, String lastPartial) {
+        CharSequence partial = result.getPartial();
+        if (lastPartial.contentEquals(partial)) {
+            return lastPartial;
+        }
+        String text = partial.toString();
+        listener.onPartial(text);
+        return text;
+    }
+}
@@ -0,0 +1,63 @@
+package atri.palaash.jvosk.stt;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+import java.io.IOException;
+
+/**
+ * Captures from the default recording device through a {@link TargetDataLine}.
+ */
+public class MicrophoneLine implements AudioLine {
+
+    private static final AudioFormat FORMAT = new AudioFormat(
+            FfmpegPcmDecoder.SAMPLE_RATE, 16, 1, true, false);
+
+    // Half a second of audio in the sound card buffer
+    private static final int LINE_BUFFER_BYTES = FfmpegPcmDecoder.SAMPLE_RATE;
+
+    private TargetDataLine line;
+
+    /**
+     * Whether a recording device supporting 16kHz mono capture is available.
+     */
+    public static boolean isSupported() {
+        return AudioSystem.isLineSupported(new DataLine.Info(TargetDataLine.class, FORMAT));
+    }
+
+    @Override
+    public void start() throws IOException {
+        try {
+            line = AudioSystem.getTargetDataLine(FORMAT);
+            line.open(FORMAT, LINE_BUFFER_BYTES);
+            line.start();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            throw new IOException("Microphone unavailable: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (line == null || !line.isOpen()) {
+            return -1;
+        }
+        int read = line.read(buffer, offset, length);
+        // A closed line returns what it had, then nothing
+        return read == 0 && !line.isOpen() ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+        if (line != null) {
+            line.stop();
+            line.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Microphone";
+    }
+}
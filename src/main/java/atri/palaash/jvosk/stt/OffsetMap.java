@@ -0,0 +1,118 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps positions in audio with silence removed back to the original recording.
+ * <p>
+ * The filtered audio is a sequence of runs copied from the source; each run is stored as the
+ * byte where it starts in the filtered and in the source stream. Within a run the two
+ * timelines advance together, so a lookup is a binary search for the run followed by an
+ * addition. Not thread-safe; runs are added while the filtered stream is read and looked up
+ * as its results come back on the same thread.
+ */
+final class OffsetMap {
+
+    private static final int BYTES_PER_MILLI = FfmpegPcmDecoder.SAMPLE_RATE * 2 / 1000;
+
+    private long[] filteredStarts = new long[64];
+    private long[] sourceStarts = new long[64];
+    private int runs;
+    private long filteredLength;
+
+    /**
+     * Record that the next {@code length} bytes of filtered audio were copied from
+     * {@code sourceByte} onward.
+     */
+    void keep(long sourceByte, int length) {
+        if (length <= 0) {
+            return;
+        }
+
+        boolean continuesLastRun = runs > 0
+                && sourceStarts[runs - 1] + (filteredLength - filteredStarts[runs - 1]) == sourceByte;
+        if (!continuesLastRun) {
+            if (runs == filteredStarts.length) {
+                filteredStarts = Arrays.copyOf(filteredStarts, runs * 2);
+                sourceStarts = Arrays.copyOf(sourceStarts, runs * 2);
+            }
+            filteredStarts[runs] = filteredLength;
+            sourceStarts[runs] = sourceByte;
+            runs++;
+        }
+        filteredLength += length;
+    }
+
+    /**
+     * Source time of a point in the filtered audio where something starts. A point exactly
+     * on a cut belongs to the run after it.
+     */
+    long toSourceMillis(long filteredMillis) {
+        return map(filteredMillis, false);
+    }
+
+    /**
+     * Source time of a point in the filtered audio where something ends. A point exactly on
+     * a cut belongs to the run before it, so a word ending there does not stretch over the
+     * silence that was removed.
+     */
+    long toSourceEndMillis(long filteredMillis) {
+        return map(filteredMillis, true);
+    }
+
+    /**
+     * The segment with its own and its words' times moved onto the source timeline.
+     */
+    TranscriptSegment toSource(TranscriptSegment segment) {
+        if (runs == 0) {
+            return segment;
+        }
+
+        List<Word> words = new ArrayList<>(segment.words.size());
+        for (Word word : segment.words) {
+            words.add(new Word(word.text, toSourceMillis(word.startTimeMs),
+                    toSourceEndMillis(word.endTimeMs), word.confidence));
+        }
+        return new TranscriptSegment(segment.text, toSourceMillis(segment.startTimeMs),
+                toSourceEndMillis(segment.endTimeMs), words, segment.confidence);
+    }
+
+    /**
+     * Number of separate runs of kept audio.
+     */
+    int getRunCount() {
+        return runs;
+    }
+
+    private long map(long filteredMillis, boolean end) {
+        if (runs == 0) {
+            return filteredMillis;
+        }
+
+        long filteredByte = filteredMillis * BYTES_PER_MILLI;
+        int run = findRun(filteredByte, end);
+        long sourceByte = sourceStarts[run] + (filteredByte - filteredStarts[run]);
+        return sourceByte / BYTES_PER_MILLI;
+    }
+
+    private int findRun(long filteredByte, boolean end) {
+        // Last run starting at or before the byte (strictly before, for ends)
+        int low = 0;
+        int high = runs - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            boolean startsBefore = end ? filteredStarts[mid] < filteredByte : filteredStarts[mid] <= filteredByte;
+            if (startsBefore) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,286 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TaskScheduler;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Transcribes a long PCM stream on several cores at once.
+ * <p>
+ * The stream is cut into windows of roughly {@link #WINDOW_SECONDS}, each ending at the
+ * quietest point near its nominal end. Neighbouring windows overlap by
+ * {@link #OVERLAP_SECONDS} on both sides of the cut so that a word straddling it is heard
+ * whole by one of them; every window gets its own {@link Recognizer} from the
+ * {@link RecognizerPool} on the shared {@link Model} and a word is kept only by the window
+ * whose side of the cut its midpoint falls on. Results are emitted on the calling thread in audio order.
+ */
+public class ParallelTranscriber {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BYTES_PER_SECOND = SAMPLE_RATE * 2;
+
+    static final int WINDOW_SECONDS = 30;
+    static final int OVERLAP_SECONDS = 1;
+    static final int SILENCE_SEARCH_SECONDS = 5;
+
+    // Energy is compared over 100ms frames when looking for a cut point
+    private static final int ENERGY_FRAME_BYTES = BYTES_PER_SECOND / 10;
+
+    private final Model model;
+    private final RecognizerConfig config;
+    private final int parallelism;
+
+    public ParallelTranscriber(Model model, int parallelism) {
+        this(model, RecognizerConfig.DEFAULT, parallelism);
+    }
+
+    /**
+     * @param config recognizer settings; word timings are needed to place words around the
+     *               cuts and are always turned on
+     */
+    public ParallelTranscriber(Model model, RecognizerConfig config, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (config.getSampleRate() != SAMPLE_RATE) {
+            throw new IllegalArgumentException("Parallel transcription needs " + SAMPLE_RATE + " Hz PCM: " + config);
+        }
+        this.model = model;
+        this.config = config.isWords() ? config : new RecognizerConfig.Builder()
+                .sampleRate(config.getSampleRate())
+                .words(true)
+                .partialWords(config.isPartialWords())
+                .maxAlternatives(config.getMaxAlternatives())
+                .grammar(config.getGrammar())
+                .build();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Transcribe raw 16kHz, mono, 16-bit little-endian PCM. {@code onSegment} is invoked on the
+     * calling thread, once per recognized utterance, in the order the utterances were spoken.
+     */
+    public void transcribe(InputStream pcmStream, Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        Windows windows = new Windows();
+
+        try {
+            int windowBytes = WINDOW_SECONDS * BYTES_PER_SECOND;
+            int overlapBytes = OVERLAP_SECONDS * BYTES_PER_SECOND;
+            int searchBytes = SILENCE_SEARCH_SECONDS * BYTES_PER_SECOND;
+
+            byte[] buffer = new byte[windowBytes + overlapBytes];
+            int buffered = 0;
+            long bufferStartByte = 0;
+            double keepFrom = Double.NEGATIVE_INFINITY;
+
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Transcription cancelled by user");
+                }
+
+                int read = pcmStream.readNBytes(buffer, buffered, buffer.length - buffered);
+                buffered += read;
+                boolean endOfStream = buffered < buffer.length;
+
+                if (buffered == 0) {
+                    break;
+                }
+
+                double windowStart = (double) bufferStartByte / BYTES_PER_SECOND;
+                if (endOfStream) {
+                    windows.submit(Arrays.copyOf(buffer, buffered), windowStart, keepFrom, Double.POSITIVE_INFINITY);
+                    break;
+                }
+
+                int cut = findQuietestFrame(buffer, windowBytes - searchBytes, windowBytes);
+                double cutSeconds = (double) (bufferStartByte + cut) / BYTES_PER_SECOND;
+                windows.submit(Arrays.copyOf(buffer, cut + overlapBytes), windowStart, keepFrom, cutSeconds);
+
+                // The next window re-hears the overlap before the cut
+                int nextStart = cut - overlapBytes;
+                System.arraycopy(buffer, nextStart, buffer, 0, buffered - nextStart);
+                buffered -= nextStart;
+                bufferStartByte += nextStart;
+                keepFrom = cutSeconds;
+
+                windows.emitCompleted(onSegment, false);
+            }
+
+            windows.emitCompleted(onSegment, true);
+
+        } finally {
+            windows.cancel();
+        }
+    }
+
+    /**
+     * The windows of one transcription. They are recognized on the shared
+     * {@link TaskScheduler#cpu()} pool, at most {@code parallelism} at a time, so several
+     * transcriptions running at once share the cores rather than each starting its own
+     * threads. A window that finishes starts the next waiting one, so no pool thread ever
+     * blocks waiting for a turn.
+     */
+    private final class Windows {
+
+        private final ExecutorService executor = TaskScheduler.getInstance().cpu();
+        // Bounds the number of windows held in memory, waiting or decoding
+        private final Semaphore inFlight = new Semaphore(parallelism * 2);
+        private final Deque<FutureTask<List<TranscriptSegment>>> pending = new ArrayDeque<>();
+        private final Queue<FutureTask<List<TranscriptSegment>>> waiting = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger decoding = new AtomicInteger();
+
+        void submit(byte[] window, double windowStart, double keepFrom, double keepUntil) throws InterruptedException {
+            inFlight.acquire();
+            FutureTask<List<TranscriptSegment>> task = new FutureTask<>(() -> {
+                try {
+                    return recognizeWindow(window, windowStart, keepFrom, keepUntil);
+                } finally {
+                    inFlight.release();
+                }
+            });
+            pending.add(task);
+            waiting.add(task);
+            startWaiting();
+        }
+
+        void emitCompleted(Consumer<TranscriptSegment> onSegment, boolean waitForAll)
+                throws IOException, InterruptedException {
+            while (!pending.isEmpty() && (waitForAll || pending.peekFirst().isDone())) {
+                List<TranscriptSegment> segments;
+                try {
+                    segments = pending.peekFirst().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException("Failed to transcribe audio window: " + cause.getMessage(), cause);
+                } catch (CancellationException e) {
+                    throw new InterruptedException("Transcription cancelled");
+                }
+                pending.removeFirst();
+
+                segments.forEach(onSegment);
+            }
+        }
+
+        void cancel() {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        private void startWaiting() {
+            // A finishing window releases its slot before looking here, so a window added
+            // while all slots were taken is always picked up by one of them
+            while (!waiting.isEmpty()) {
+                int current = decoding.get();
+                if (current >= parallelism) {
+                    return;
+                }
+                if (!decoding.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                FutureTask<List<TranscriptSegment>> task = waiting.poll();
+                if (task == null) {
+                    decoding.decrementAndGet();
+                    continue;
+                }
+                try {
+                    executor.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            decoding.decrementAndGet();
+                            startWaiting();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    task.cancel(false);
+                    decoding.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private List<TranscriptSegment> recognizeWindow(byte[] window, double windowStart,
+                                             double keepFrom, double keepUntil) throws IOException {
+        List<TranscriptSegment> segments = new ArrayList<>();
+
+        try (RecognizerPool.Lease lease = RecognizerPool.getInstance().acquire(model, config)) {
+            Recognizer recognizer = lease.getRecognizer();
+            RecognizerResultParser parser = new RecognizerResultParser();
+
+            byte[] chunk = new byte[4096];
+            for (int offset = 0; offset < window.length; offset += chunk.length) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return segments;
+                }
+
+                int length = Math.min(chunk.length, window.length - offset);
+                System.arraycopy(window, offset, chunk, 0, length);
+                if (recognizer.acceptWaveForm(chunk, length)) {
+                    addSegment(parser.parse(recognizer.getResult()), windowStart, keepFrom, keepUntil, segments);
+                }
+            }
+
+            addSegment(parser.parse(recognizer.getFinalResult()), windowStart, keepFrom, keepUntil, segments);
+        }
+
+        return segments;
+    }
+
+    private void addSegment(RecognizerResultParser.Result result, double windowStart, double keepFrom,
+                            double keepUntil, List<TranscriptSegment> segments) {
+        // Words in the overlap belong to whichever window owns their side of the cut
+        TranscriptSegment segment = result.toSegment(windowStart, keepFrom, keepUntil);
+        if (segment != null) {
+            segments.add(segment);
+        }
+    }
+
+    /**
+     * Return the byte offset (frame aligned) of the lowest-energy 100ms frame in
+     * {@code [from, to)}, which is where the window will be cut.
+     */
+    static int findQuietestFrame(byte[] pcm, int from, int to) {
+        int bestOffset = to;
+        long bestEnergy = Long.MAX_VALUE;
+
+        for (int frame = from; frame + ENERGY_FRAME_BYTES <= to; frame += ENERGY_FRAME_BYTES) {
+            long energy = 0;
+            for (int i = frame; i < frame + ENERGY_FRAME_BYTES; i += 2) {
+                int sample = (short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8));
+                energy += (long) sample * sample;
+            }
+            if (energy < bestEnergy) {
+                bestEnergy = energy;
+                // Cut in the middle of the quiet frame
+                bestOffset = frame + ENERGY_FRAME_BYTES / 2;
+            }
+        }
+
+        return bestOffset;
+    }
+}
@@ -0,0 +1,73 @@
+package atri.palaash.jvosk.stt;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer, single-consumer byte ring buffer between the capture thread
+ * and the recognizer thread.
+ * <p>
+ * Neither side ever blocks or takes a lock: the producer copies in what fits and publishes
+ * its new write position, the consumer copies out what is there and publishes its new read
+ * position. Positions grow without wrapping, so full and empty are never ambiguous.
+ */
+final class PcmRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+
+    /**
+     * @param minCapacity capacity in bytes, rounded up to a power of two
+     */
+    PcmRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Copy in as much of the data as fits. Producer thread only.
+     * @return the number of bytes written; less than {@code length} when the buffer is full
+     */
+    int write(byte[] source, int offset, int length) {
+        long write = writePosition.get();
+        int free = buffer.length - (int) (write - readPosition.get());
+        int count = Math.min(length, free);
+
+        int index = (int) (write & mask);
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(source, offset, buffer, index, first);
+        System.arraycopy(source, offset + first, buffer, 0, count - first);
+
+        // Release: the bytes are visible before the new position is
+        writePosition.lazySet(write + count);
+        return count;
+    }
+
+    /**
+     * Copy out up to {@code length} buffered bytes. Consumer thread only.
+     * @return the number of bytes read, 0 if the buffer is empty
+     */
+    int read(byte[] target, int offset, int length) {
+        long read = readPosition.get();
+        int available = (int) (writePosition.get() - read);
+        int count = Math.min(length, available);
+
+        int index = (int) (read & mask);
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(buffer, index, target, offset, first);
+        System.arraycopy(buffer, 0, target, offset + first, count - first);
+
+        readPosition.lazySet(read + count);
+        return count;
+    }
+
+    int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    int capacity() {
+        return buffer.length;
+    }
+}
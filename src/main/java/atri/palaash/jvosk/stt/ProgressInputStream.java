@@ -0,0 +1,115 @@
+package atri.palaash.jvosk.stt;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the 16kHz mono 16-bit PCM read through it and reports {@link TranscriptionProgress}.
+ * <p>
+ * Reports go out at most every {@link #REPORT_INTERVAL_MILLIS}, from the reading thread.
+ * Each one feeds the real-time factor measured since the previous report into an exponential
+ * moving average with a time constant of {@link #SMOOTHING_MILLIS}, so the ETA settles within
+ * seconds and then follows the actual rate instead of a fixed guess.
+ */
+final class ProgressInputStream extends FilterInputStream {
+
+    static final long REPORT_INTERVAL_MILLIS = 500;
+    static final long SMOOTHING_MILLIS = 10_000;
+
+    private static final long BYTES_PER_SECOND = FfmpegPcmDecoder.SAMPLE_RATE * 2L;
+
+    private final long startAudioMillis;
+    private final long totalAudioMillis;
+    private final TranscriptionProgress.Listener listener;
+    private final long startNanos = System.nanoTime();
+
+    private long bytesRead;
+    private long lastReportNanos = startNanos;
+    private long lastReportAudioMillis;  // Relative to the start
+    private double realTimeFactor = Double.NaN;
+
+    /**
+     * @param startAudioMillis position in the audio of the stream's first byte
+     * @param totalAudioMillis length of the audio, or -1 if unknown
+     */
+    ProgressInputStream(InputStream in, long startAudioMillis, long totalAudioMillis,
+                        TranscriptionProgress.Listener listener) {
+        super(in);
+        this.startAudioMillis = startAudioMillis;
+        this.totalAudioMillis = totalAudioMillis;
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            advance(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            advance(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    /**
+     * Send the final report once the recognizer has finished with the audio.
+     */
+    void finish() {
+        long now = System.nanoTime();
+        update(now);
+        listener.onProgress(snapshot(now, true));
+    }
+
+    private void advance(long bytes) {
+        bytesRead += bytes;
+        long now = System.nanoTime();
+        if (now - lastReportNanos >= REPORT_INTERVAL_MILLIS * 1_000_000) {
+            update(now);
+            listener.onProgress(snapshot(now, false));
+        }
+    }
+
+    private void update(long now) {
+        long audioMillis = audioMillis();
+        long audioDelta = audioMillis - lastReportAudioMillis;
+        long wallDelta = (now - lastReportNanos) / 1_000_000;
+        if (audioDelta <= 0 || wallDelta <= 0) {
+            return;
+        }
+
+        double recent = (double) wallDelta / audioDelta;
+        if (Double.isNaN(realTimeFactor)) {
+            realTimeFactor = recent;
+        } else {
+            // Weight by how long the interval was, so irregular reports average correctly
+            double weight = 1 - Math.exp(-(double) wallDelta / SMOOTHING_MILLIS);
+            realTimeFactor += (recent - realTimeFactor) * weight;
+        }
+        lastReportNanos = now;
+        lastReportAudioMillis = audioMillis;
+    }
+
+    private TranscriptionProgress snapshot(long now, boolean done) {
+        return new TranscriptionProgress(startAudioMillis + audioMillis(), startAudioMillis, totalAudioMillis,
+                (now - startNanos) / 1_000_000, realTimeFactor, done);
+    }
+
+    private long audioMillis() {
+        return bytesRead * 1000 / BYTES_PER_SECOND;
+    }
+}
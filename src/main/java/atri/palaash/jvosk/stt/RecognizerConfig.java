@@ -0,0 +1,125 @@
+package atri.palaash.jvosk.stt;
+
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Settings a {@link Recognizer} is created with. Two recognizers on the same model with equal
+ * configs are interchangeable, which is what lets {@link RecognizerPool} reuse them.
+ */
+public final class RecognizerConfig {
+
+    /**
+     * 16kHz with word timings, used for file transcription.
+     */
+    public static final RecognizerConfig DEFAULT = new Builder().build();
+
+    private final float sampleRate;
+    private final boolean words;
+    private final boolean partialWords;
+    private final int maxAlternatives;
+    private final String grammar;
+
+    private RecognizerConfig(Builder builder) {
+        this.sampleRate = builder.sampleRate;
+        this.words = builder.words;
+        this.partialWords = builder.partialWords;
+        this.maxAlternatives = builder.maxAlternatives;
+        this.grammar = builder.grammar;
+    }
+
+    // Getters
+    public float getSampleRate() { return sampleRate; }
+    public boolean isWords() { return words; }
+    public boolean isPartialWords() { return partialWords; }
+    public int getMaxAlternatives() { return maxAlternatives; }
+    public String getGrammar() { return grammar; }
+
+    /**
+     * Create a new native recognizer with this configuration.
+     */
+    Recognizer createRecognizer(Model model) throws IOException {
+        // The grammar can only be given at construction time
+        Recognizer recognizer = grammar != null
+                ? new Recognizer(model, sampleRate, grammar)
+                : new Recognizer(model, sampleRate);
+        recognizer.setWords(words);
+        recognizer.setPartialWords(partialWords);
+        if (maxAlternatives > 0) {
+            recognizer.setMaxAlternatives(maxAlternatives);
+        }
+        return recognizer;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RecognizerConfig that = (RecognizerConfig) o;
+        return Float.compare(sampleRate, that.sampleRate) == 0 &&
+               words == that.words &&
+               partialWords == that.partialWords &&
+               maxAlternatives == that.maxAlternatives &&
+               Objects.equals(grammar, that.grammar);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sampleRate, words, partialWords, maxAlternatives, grammar);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecognizerConfig[%.0f Hz, words=%s, partialWords=%s, alternatives=%d, grammar=%s]",
+                sampleRate, words, partialWords, maxAlternatives, grammar != null);
+    }
+
+    public static class Builder {
+        private float sampleRate = FfmpegPcmDecoder.SAMPLE_RATE;
+        private boolean words = true;
+        private boolean partialWords = false;
+        private int maxAlternatives = 0;
+        private String grammar = null;
+
+        public Builder sampleRate(float sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        public Builder words(boolean words) {
+            this.words = words;
+            return this;
+        }
+
+        public Builder partialWords(boolean partialWords) {
+            this.partialWords = partialWords;
+            return this;
+        }
+
+        public Builder maxAlternatives(int maxAlternatives) {
+            this.maxAlternatives = maxAlternatives;
+            return this;
+        }
+
+        /**
+         * Restrict recognition to a JSON list of phrases, e.g. {@code ["yes", "no", "[unk]"]}.
+         */
+        public Builder grammar(String grammar) {
+            this.grammar = grammar;
+            return this;
+        }
+
+        public RecognizerConfig build() {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+            }
+            if (maxAlternatives < 0) {
+                throw new IllegalArgumentException("Max alternatives must not be negative: " + maxAlternatives);
+            }
+            return new RecognizerConfig(this);
+        }
+    }
+}
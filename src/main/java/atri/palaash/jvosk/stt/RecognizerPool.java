@@ -0,0 +1,184 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.models.ModelPool;
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide pool of idle {@link Recognizer}s, keyed by model and {@link RecognizerConfig}.
+ * <p>
+ * Creating a recognizer builds native decoder state and tearing it down frees it again; for
+ * batches of short clips that costs more than the recognition itself. A released recognizer
+ * is {@link Recognizer#reset() reset} and kept for the next caller with the same model and
+ * config. Idle recognizers of a model are closed when {@link ModelPool} evicts that model,
+ * since they keep its native memory alive.
+ */
+public class RecognizerPool {
+
+    private static final RecognizerPool INSTANCE = new RecognizerPool(
+            Runtime.getRuntime().availableProcessors() * 2);
+
+    static {
+        ModelPool.getInstance().addEvictionListener(INSTANCE::closeIdle);
+    }
+
+    // Model does not override equals, so models are matched by identity
+    private final Map<Model, Map<RecognizerConfig, Deque<Recognizer>>> idle = new HashMap<>();
+    private final int maxIdlePerKey;
+    private long created;
+    private long reused;
+
+    RecognizerPool(int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    public static RecognizerPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Take an idle recognizer for the model and config, or create one.
+     * The returned lease must be closed to hand the recognizer back.
+     */
+    public Lease acquire(Model model, RecognizerConfig config) throws IOException {
+        synchronized (this) {
+            Map<RecognizerConfig, Deque<Recognizer>> byConfig = idle.computeIfAbsent(model, m -> new HashMap<>());
+            Recognizer recognizer = byConfig.computeIfAbsent(config, c -> new ArrayDeque<>()).pollFirst();
+            if (recognizer != null) {
+                reused++;
+                return new Lease(model, config, recognizer);
+            }
+            created++;
+        }
+
+        // Created outside the lock, construction can take a while on big models
+        return new Lease(model, config, config.createRecognizer(model));
+    }
+
+    private void release(Model model, RecognizerConfig config, Recognizer recognizer, boolean reusable) {
+        if (reusable) {
+            try {
+                // Drop whatever the last caller left buffered, e.g. after a cancel
+                recognizer.reset();
+            } catch (RuntimeException e) {
+                reusable = false;
+            }
+        }
+
+        if (reusable) {
+            synchronized (this) {
+                Map<RecognizerConfig, Deque<Recognizer>> byConfig = idle.get(model);
+                // A missing entry means the model was evicted while this recognizer was out
+                if (byConfig != null) {
+                    Deque<Recognizer> queue = byConfig.computeIfAbsent(config, c -> new ArrayDeque<>());
+                    if (queue.size() < maxIdlePerKey) {
+                        queue.addFirst(recognizer);
+                        return;
+                    }
+                }
+            }
+        }
+
+        recognizer.close();
+    }
+
+    /**
+     * Close all idle recognizers of a model and forget it. Recognizers currently leased are
+     * closed when they are released.
+     */
+    public void closeIdle(Model model) {
+        Map<RecognizerConfig, Deque<Recognizer>> byConfig;
+        synchronized (this) {
+            byConfig = idle.remove(model);
+        }
+
+        if (byConfig != null) {
+            for (Deque<Recognizer> queue : byConfig.values()) {
+                queue.forEach(Recognizer::close);
+            }
+        }
+    }
+
+    /**
+     * Close every idle recognizer.
+     */
+    public void clear() {
+        List<Model> models;
+        synchronized (this) {
+            models = new ArrayList<>(idle.keySet());
+        }
+        models.forEach(this::closeIdle);
+    }
+
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (Map<RecognizerConfig, Deque<Recognizer>> byConfig : idle.values()) {
+            for (Deque<Recognizer> queue : byConfig.values()) {
+                count += queue.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of recognizers created since startup, as opposed to {@link #getReusedCount() reused}.
+     */
+    public synchronized long getCreatedCount() {
+        return created;
+    }
+
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+
+    /**
+     * A recognizer on loan from the pool. Closing it returns the recognizer; closing twice is a no-op.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Model model;
+        private final RecognizerConfig config;
+        private final Recognizer recognizer;
+        private boolean reusable = true;
+        private boolean released;
+
+        private Lease(Model model, RecognizerConfig config, Recognizer recognizer) {
+            this.model = model;
+            this.config = config;
+            this.recognizer = recognizer;
+        }
+
+        public Recognizer getRecognizer() {
+            return recognizer;
+        }
+
+        public RecognizerConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * Close the recognizer on release instead of returning it to the pool.
+         */
+        public void discard() {
+            reusable = false;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(model, config, recognizer, reusable);
+        }
+    }
+}
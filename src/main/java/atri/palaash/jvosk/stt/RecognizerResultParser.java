@@ -0,0 +1,437 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming parser for Vosk result JSON ({@code getResult()}, {@code getFinalResult()} and
+ * {@code getPartialResult()}).
+ * <p>
+ * Results are read with the Jackson streaming API straight into one reusable {@link Result}:
+ * word timings and confidences go into growable primitive arrays, numbers are parsed from
+ * the parser's character buffer, and word strings come from an intern table keyed by their
+ * characters, so after warm-up parsing a result allocates next to nothing. Objects are only
+ * created when a result is converted into a {@link TranscriptSegment}.
+ * <p>
+ * Instances are not thread-safe; use one per recognizer loop.
+ */
+public final class RecognizerResultParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final WordTable wordTable = new WordTable();
+    private final Result result = new Result();
+
+    /**
+     * Parse a result into the parser's reusable {@link Result}, which stays valid until the
+     * next call.
+     */
+    public Result parse(String json) throws IOException {
+        result.clear();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return result;
+            }
+
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "text" -> copyText(parser, result.text);
+                    case "partial" -> copyText(parser, result.partial);
+                    case "result" -> readWords(parser, value, result.words);
+                    case "alternatives" -> readAlternatives(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void readAlternatives(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Alternative alternative = result.nextAlternative();
+
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "text" -> copyText(parser, alternative.text);
+                    case "confidence" -> alternative.confidence = readNumber(parser);
+                    case "result" -> readWords(parser, token, alternative.words);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void readWords(JsonParser parser, JsonToken value, Words words) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String word = "";
+            double start = 0;
+            double end = 0;
+            double confidence = 1.0;
+
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                parser.nextToken();
+                switch (field) {
+                    case "word" -> word = wordTable.intern(
+                            parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    case "start" -> start = readNumber(parser);
+                    case "end" -> end = readNumber(parser);
+                    case "conf" -> confidence = readNumber(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+
+            words.add(word, start, end, confidence);
+        }
+    }
+
+    private static void copyText(JsonParser parser, StringBuilder target) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            target.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * Read a numeric token from the parser's buffer without materializing it as a String.
+     * Vosk writes plain decimals; anything else is handed to Jackson.
+     */
+    private static double readNumber(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+            parser.skipChildren();
+            return 0;
+        }
+
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int end = offset + parser.getTextLength();
+
+        boolean negative = chars[offset] == '-';
+        int i = negative ? offset + 1 : offset;
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean inFraction = false;
+
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa > (Long.MAX_VALUE - 9) / 10) {
+                    return parser.getDoubleValue();
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (inFraction) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !inFraction) {
+                inFraction = true;
+            } else {
+                // Exponent or something unexpected
+                return parser.getDoubleValue();
+            }
+        }
+
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return parser.getDoubleValue(); // Already signed
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    /**
+     * Reusable view of one parsed result.
+     */
+    public static final class Result {
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder partial = new StringBuilder();
+        private final Words words = new Words();
+        private final List<Alternative> alternatives = new ArrayList<>();
+        private int alternativeCount;
+
+        private void clear() {
+            text.setLength(0);
+            partial.setLength(0);
+            words.clear();
+            alternativeCount = 0;
+        }
+
+        private Alternative nextAlternative() {
+            if (alternativeCount == alternatives.size()) {
+                alternatives.add(new Alternative());
+            }
+            Alternative alternative = alternatives.get(alternativeCount++);
+            alternative.clear();
+            return alternative;
+        }
+
+        public CharSequence getText() {
+            return text;
+        }
+
+        public CharSequence getPartial() {
+            return partial;
+        }
+
+        public boolean isEmpty() {
+            return text.length() == 0 && alternativeCount == 0;
+        }
+
+        public Words getWords() {
+            return words;
+        }
+
+        public int getAlternativeCount() {
+            return alternativeCount;
+        }
+
+        public Alternative getAlternative(int index) {
+            if (index >= alternativeCount) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return alternatives.get(index);
+        }
+
+        /**
+         * Convert to a segment.
+         * @param offsetSeconds position of the recognizer's first sample in the source audio
+         * @return the segment, or {@code null} if nothing was recognized
+         */
+        public TranscriptSegment toSegment(double offsetSeconds) {
+            return toSegment(offsetSeconds, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Convert to a segment, keeping only words whose midpoint lies in
+         * {@code [keepFrom, keepUntil)} (absolute seconds). Used to drop words that a
+         * neighbouring window owns.
+         */
+        public TranscriptSegment toSegment(double offsetSeconds, double keepFrom, double keepUntil) {
+            // With alternatives enabled the best hypothesis is the first alternative
+            CharSequence bestText = text;
+            Words bestWords = words;
+            if (text.length() == 0 && alternativeCount > 0) {
+                bestText = alternatives.get(0).text;
+                bestWords = alternatives.get(0).words;
+            }
+
+            if (bestText.length() == 0) {
+                return null;
+            }
+
+            if (bestWords.size() == 0) {
+                // Words were not requested; only the text is known
+                long offsetMs = Math.round(offsetSeconds * 1000);
+                return new TranscriptSegment(bestText.toString(), offsetMs, offsetMs);
+            }
+
+            List<Word> kept = new ArrayList<>(bestWords.size());
+            StringBuilder keptText = new StringBuilder();
+            double confidenceSum = 0;
+
+            for (int i = 0; i < bestWords.size(); i++) {
+                double start = offsetSeconds + bestWords.start(i);
+                double end = offsetSeconds + bestWords.end(i);
+                double midpoint = (start + end) / 2;
+                if (midpoint < keepFrom || midpoint >= keepUntil) {
+                    continue;
+                }
+
+                kept.add(new Word(bestWords.word(i), Math.round(start * 1000), Math.round(end * 1000),
+                        bestWords.confidence(i)));
+                confidenceSum += bestWords.confidence(i);
+
+                if (keptText.length() > 0) {
+                    keptText.append(' ');
+                }
+                keptText.append(bestWords.word(i));
+            }
+
+            if (kept.isEmpty()) {
+                return null;
+            }
+
+            return new TranscriptSegment(
+                    kept.size() == bestWords.size() ? bestText.toString() : keptText.toString(),
+                    kept.get(0).startTimeMs,
+                    kept.get(kept.size() - 1).endTimeMs,
+                    kept,
+                    confidenceSum / kept.size());
+        }
+    }
+
+    /**
+     * One entry of the {@code alternatives} array produced with {@code setMaxAlternatives}.
+     */
+    public static final class Alternative {
+        private final StringBuilder text = new StringBuilder();
+        private final Words words = new Words();
+        private double confidence;
+
+        private void clear() {
+            text.setLength(0);
+            words.clear();
+            confidence = 0;
+        }
+
+        public CharSequence getText() {
+            return text;
+        }
+
+        public Words getWords() {
+            return words;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+    }
+
+    /**
+     * Growable parallel arrays of word, start, end and confidence (times in seconds,
+     * relative to the recognizer).
+     */
+    public static final class Words {
+        private String[] words = new String[32];
+        private double[] starts = new double[32];
+        private double[] ends = new double[32];
+        private double[] confidences = new double[32];
+        private int size;
+
+        private void clear() {
+            Arrays.fill(words, 0, size, null);
+            size = 0;
+        }
+
+        private void add(String word, double start, double end, double confidence) {
+            if (size == words.length) {
+                int capacity = size * 2;
+                words = Arrays.copyOf(words, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                confidences = Arrays.copyOf(confidences, capacity);
+            }
+            words[size] = word;
+            starts[size] = start;
+            ends[size] = end;
+            confidences[size] = confidence;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String word(int index) {
+            return words[index];
+        }
+
+        public double start(int index) {
+            return starts[index];
+        }
+
+        public double end(int index) {
+            return ends[index];
+        }
+
+        public double confidence(int index) {
+            return confidences[index];
+        }
+    }
+
+    /**
+     * Open-addressing intern table mapping word characters to a shared String. A model's
+     * vocabulary is finite, so recurring words stop allocating after they are first seen.
+     */
+    private static final class WordTable {
+        private static final int MAX_ENTRIES = 1 << 16;
+
+        private String[] table = new String[1024];
+        private int size;
+
+        String intern(char[] chars, int offset, int length) {
+            int hash = 0;
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            String candidate;
+            while ((candidate = table[slot]) != null) {
+                if (matches(candidate, chars, offset, length)) {
+                    return candidate;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            String word = new String(chars, offset, length);
+            if (size < MAX_ENTRIES) {
+                table[slot] = word;
+                if (++size > table.length / 2) {
+                    rehash();
+                }
+            }
+            return word;
+        }
+
+        private void rehash() {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String word : old) {
+                if (word != null) {
+                    int slot = mix(word.hashCode()) & mask;
+                    while (table[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = word;
+                }
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(String word, char[] chars, int offset, int length) {
+            if (word.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (word.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TaskScheduler;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Transcribes a PCM stream with one recognizer, in order.
+ * <p>
+ * The stream is read on the calling thread, which may block on an ffmpeg pipe or an upload
+ * for as long as it likes. Only recognition runs on the shared {@link TaskScheduler#cpu()}
+ * pool: chunks are queued, at most {@link #MAX_QUEUED_CHUNKS} ahead of the recognizer, and
+ * fed to it in turns of {@link #CHUNKS_PER_TURN}, so a slow source never holds a pool
+ * thread. Results are emitted on the calling thread.
+ */
+class SequentialTranscriber {
+
+    private static final int MAX_QUEUED_CHUNKS = 16;
+    private static final int CHUNKS_PER_TURN = 8;
+
+    // Marks the end of a session's segments: finished, failed or cancelled
+    private static final TranscriptSegment END = new TranscriptSegment("", 0, 0);
+
+    private final Model model;
+    private final RecognizerConfig config;
+    private final int chunkBytes;
+
+    /**
+     * @param chunkBytes how much PCM is read and handed to the recognizer at a time
+     */
+    SequentialTranscriber(Model model, RecognizerConfig config, int chunkBytes) {
+        this.model = model;
+        this.config = config;
+        this.chunkBytes = Math.max(2, chunkBytes & ~1);
+    }
+
+    /**
+     * Transcribe raw 16-bit little-endian PCM until the stream ends. {@code onSegment} is
+     * invoked on the calling thread, once per recognized utterance.
+     */
+    void transcribe(InputStream pcmStream, Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        Session session = new Session(RecognizerPool.getInstance().acquire(model, config));
+        boolean finished = false;
+        try {
+            byte[] buffer = new byte[chunkBytes];
+            int buffered = 0;
+            int bytesRead;
+
+            while ((bytesRead = pcmStream.read(buffer, buffered, buffer.length - buffered)) >= 0) {
+                // Check for thread interruption (cancellation)
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Transcription cancelled by user");
+                }
+
+                // Reads can end mid-sample; hold an odd trailing byte back for the next one
+                buffered += bytesRead;
+                int whole = buffered & ~1;
+                if (whole > 0) {
+                    session.feed(Arrays.copyOf(buffer, whole));
+                }
+                if (whole < buffered) {
+                    buffer[0] = buffer[whole];
+                }
+                buffered -= whole;
+
+                session.deliver(onSegment, false);
+            }
+
+            session.finish();
+            session.deliver(onSegment, true);
+            finished = true;
+        } finally {
+            if (!finished) {
+                session.cancel();
+            }
+        }
+    }
+
+    /**
+     * One recognizer and the chunks waiting for it. Decoder turns are serialized by
+     * {@code scheduled}, so the recognizer is only ever used by one pool thread at a time.
+     */
+    private static final class Session {
+        private final RecognizerPool.Lease lease;
+        private final RecognizerResultParser parser = new RecognizerResultParser();
+        private final Executor decoders = TaskScheduler.getInstance().cpu();
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+        private final BlockingQueue<TranscriptSegment> segments = new LinkedBlockingQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean eof;
+        private volatile boolean cancelled;
+        private volatile boolean done; // Lease released and END queued
+        private volatile Throwable failure;
+
+        Session(RecognizerPool.Lease lease) {
+            this.lease = lease;
+        }
+
+        /**
+         * Queue a chunk, waiting while the recognizer is {@link #MAX_QUEUED_CHUNKS} behind.
+         */
+        void feed(byte[] chunk) throws InterruptedException {
+            while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (done) {
+                    return; // Failed; deliver() reports why
+                }
+            }
+            schedule();
+        }
+
+        void finish() {
+            eof = true;
+            schedule();
+        }
+
+        /**
+         * Stop early. The recognizer is handed back by the next decoder turn, never while
+         * one is using it.
+         */
+        void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        /**
+         * Pass on the segments recognized so far, or with {@code untilEnd} all of them once
+         * recognition is over.
+         */
+        void deliver(Consumer<TranscriptSegment> onSegment, boolean untilEnd) throws IOException, InterruptedException {
+            while (true) {
+                TranscriptSegment segment = untilEnd ? segments.take() : segments.poll();
+                if (segment == null) {
+                    return;
+                }
+                if (segment == END) {
+                    rethrowFailure();
+                    return;
+                }
+                onSegment.accept(segment);
+            }
+        }
+
+        private void rethrowFailure() throws IOException {
+            Throwable cause = failure;
+            if (cause == null) {
+                return;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to transcribe audio: " + cause.getMessage(), cause);
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    decoders.execute(this::decodeTurn);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; no turn is running, since this thread holds the flag
+                    if (!done) {
+                        failure = e;
+                        end();
+                    }
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Feed up to {@link #CHUNKS_PER_TURN} chunks to the recognizer, then give the thread
+         * to the next task.
+         */
+        private void decodeTurn() {
+            try {
+                if (done) {
+                    return;
+                }
+                if (cancelled) {
+                    end();
+                    return;
+                }
+                Recognizer recognizer = lease.getRecognizer();
+                for (int i = 0; i < CHUNKS_PER_TURN; i++) {
+                    byte[] chunk = chunks.poll();
+                    if (chunk == null) {
+                        break;
+                    }
+                    if (recognizer.acceptWaveForm(chunk, chunk.length)) {
+                        emit(recognizer.getResult());
+                    }
+                }
+                if (eof && chunks.isEmpty()) {
+                    emit(recognizer.getFinalResult());
+                    end();
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                failure = e;
+                end();
+            } finally {
+                scheduled.set(false);
+                if (!done && (cancelled || eof || !chunks.isEmpty())) {
+                    schedule();
+                }
+            }
+        }
+
+        private void emit(String json) throws IOException {
+            TranscriptSegment segment = parser.parse(json).toSegment(0);
+            if (segment != null) {
+                segments.add(segment);
+            }
+        }
+
+        private void end() {
+            done = true;
+            chunks.clear();
+            lease.close();
+            segments.add(END);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package atri.palaash.jvosk.stt;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes on only the speech in a 16kHz mono 16-bit PCM stream.
+ * <p>
+ * The source is read in {@link VoiceActivityDetector#FRAME_MILLIS} frames and each frame is
+ * classified by the detector. Speech frames are passed on together with up to
+ * {@code preRollMillis} of the non-speech just before them, so the recognizer hears the onset
+ * of the first word; the rest of every non-speech run is dropped without reaching the
+ * recognizer. The trailing pause after speech is the detector's hangover. Every kept run is
+ * recorded in an {@link OffsetMap} so results can be moved back onto the original timeline.
+ */
+final class SilenceFilterInputStream extends InputStream {
+
+    static final int DEFAULT_PRE_ROLL_MILLIS = 150;
+
+    private static final int FRAME_BYTES = FfmpegPcmDecoder.SAMPLE_RATE * 2 * VoiceActivityDetector.FRAME_MILLIS / 1000;
+
+    private final InputStream source;
+    private final VoiceActivityDetector detector;
+    private final OffsetMap offsetMap = new OffsetMap();
+
+    // Non-speech frames held back in case speech follows
+    private final byte[] preRoll;
+    private final int preRollFrames;
+    private int preRollHead;
+    private int preRollCount;
+
+    // Kept audio waiting to be read: the pre-roll followed by the speech frame
+    private final byte[] pending;
+    private int pendingPosition;
+    private int pendingLength;
+
+    private final byte[] frame = new byte[FRAME_BYTES];
+    private long sourceBytes;
+    private long keptBytes;
+    private boolean endOfSource;
+
+    SilenceFilterInputStream(InputStream source, VoiceActivityDetector detector) {
+        this(source, detector, DEFAULT_PRE_ROLL_MILLIS);
+    }
+
+    SilenceFilterInputStream(InputStream source, VoiceActivityDetector detector, int preRollMillis) {
+        this.source = source;
+        this.detector = detector;
+        this.preRollFrames = Math.max(0, preRollMillis) / VoiceActivityDetector.FRAME_MILLIS;
+        this.preRoll = new byte[preRollFrames * FRAME_BYTES];
+        this.pending = new byte[(preRollFrames + 1) * FRAME_BYTES];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (pendingPosition == pendingLength && !fill()) {
+            return -1;
+        }
+
+        int count = Math.min(length, pendingLength - pendingPosition);
+        System.arraycopy(pending, pendingPosition, buffer, offset, count);
+        pendingPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return pendingLength - pendingPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Where each run of passed-on audio came from in the source.
+     */
+    OffsetMap getOffsetMap() {
+        return offsetMap;
+    }
+
+    /**
+     * Bytes read from the source so far.
+     */
+    long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    /**
+     * Bytes passed on so far.
+     */
+    long getKeptBytes() {
+        return keptBytes;
+    }
+
+    /**
+     * Read frames until one is speech and queue it with its pre-roll.
+     * @return false at the end of the source; held-back non-speech is dropped
+     */
+    private boolean fill() throws IOException {
+        while (!endOfSource) {
+            int read = source.readNBytes(frame, 0, FRAME_BYTES);
+            if (read == 0) {
+                endOfSource = true;
+                break;
+            }
+            long frameStart = sourceBytes;
+            sourceBytes += read;
+            endOfSource = read < FRAME_BYTES;
+
+            if (detector.isSpeech(frame, 0, read)) {
+                queueSpeech(frame, read, frameStart);
+                return true;
+            }
+            holdBack(frame);
+        }
+        return false;
+    }
+
+    private void queueSpeech(byte[] speech, int length, long frameStart) {
+        int position = 0;
+        for (int i = 0; i < preRollCount; i++) {
+            int index = (preRollHead + i) % preRollFrames;
+            System.arraycopy(preRoll, index * FRAME_BYTES, pending, position, FRAME_BYTES);
+            position += FRAME_BYTES;
+        }
+        System.arraycopy(speech, 0, pending, position, length);
+
+        pendingPosition = 0;
+        pendingLength = position + length;
+        offsetMap.keep(frameStart - position, pendingLength);
+        keptBytes += pendingLength;
+        preRollCount = 0;
+        preRollHead = 0;
+    }
+
+    private void holdBack(byte[] silence) {
+        if (preRollFrames == 0) {
+            return;
+        }
+        // A full pre-roll overwrites its oldest frame, which is dropped for good
+        int index = (preRollHead + preRollCount) % preRollFrames;
+        System.arraycopy(silence, 0, preRoll, index * FRAME_BYTES, FRAME_BYTES);
+        if (preRollCount < preRollFrames) {
+            preRollCount++;
+        } else {
+            preRollHead = (preRollHead + 1) % preRollFrames;
+        }
+    }
+}
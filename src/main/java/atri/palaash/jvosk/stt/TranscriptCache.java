@@ -0,0 +1,291 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TranscriptArchive;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of finished transcripts, so a file that was transcribed before with the same
+ * model and settings is not transcribed again.
+ * <p>
+ * Entries are keyed by a hash of the audio content, the model name and the recognizer
+ * settings. Small files are hashed whole; larger ones by their length and
+ * {@link #HASH_SAMPLES} evenly spaced samples, so keying a multi-hour recording reads a few
+ * megabytes, not all of it. Each entry is one file holding the segments as a
+ * {@link TranscriptArchive}. A hit touches the file's modification time, and once the
+ * cache grows past its size limit the least recently used entries are deleted.
+ * <p>
+ * Transcriptions still in progress keep a {@link TranscriptCheckpoint} under the same key in
+ * the {@code checkpoints} subfolder, which is not counted towards the size limit.
+ * <p>
+ * The cache lives in {@code ~/.jvosk/cache}; its size defaults to 256 MB and can be set with
+ * {@code -Djvosk.cache.maxMb}.
+ */
+public class TranscriptCache {
+
+    static final int HASH_SAMPLES = 64;
+    static final int HASH_SAMPLE_BYTES = 64 * 1024;
+
+    private static final long DEFAULT_MAX_MB = 256;
+    private static final String SUFFIX = ".jvtc";
+    private static final String CHECKPOINT_DIR = "checkpoints";
+    private static final String CHECKPOINT_SUFFIX = ".jvcp";
+    private static final byte FORMAT_VERSION = 2; // Part of the key, so entries of older formats age out
+
+    private static final TranscriptCache INSTANCE = new TranscriptCache(
+            Paths.get(System.getProperty("user.home"), ".jvosk", "cache"),
+            Long.getLong("jvosk.cache.maxMb", DEFAULT_MAX_MB) * 1024 * 1024);
+
+    private final Path directory;
+    private final long maxBytes;
+    private long sizeBytes = -1; // Unknown until the directory is first scanned
+
+    public TranscriptCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public static TranscriptCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Cache key for a transcript of the audio file made with the named model and settings.
+     */
+    public String keyFor(File audioFile, String modelName, String settings) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(hashContent(audioFile.toPath()));
+        digest.update(("\n" + FORMAT_VERSION + "\n" + modelName + "\n" + settings).getBytes(StandardCharsets.UTF_8));
+        // 160 bits is plenty for a file name and keeps it short
+        return HexFormat.of().formatHex(digest.digest(), 0, 20);
+    }
+
+    /**
+     * The cached segments, or null if there are none (or the entry was unreadable).
+     */
+    public List<TranscriptSegment> get(String key) {
+        Path entry = entryPath(key);
+        try {
+            byte[] data = Files.readAllBytes(entry);
+            List<TranscriptSegment> segments = TranscriptArchive.Reader.of(data).readAll();
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return segments;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Discarding unreadable cache entry " + entry.getFileName() + ": " + e.getMessage());
+            remove(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Store the segments under the key, evicting old entries if the cache is over its limit.
+     */
+    public void put(String key, List<TranscriptSegment> segments) throws IOException {
+        byte[] data = TranscriptArchive.toBytes(segments);
+        if (data.length > maxBytes) {
+            return;
+        }
+
+        Files.createDirectories(directory);
+        Path entry = entryPath(key);
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temp, data);
+            long replaced = Files.exists(entry) ? Files.size(entry) : 0;
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            added(data.length - replaced);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Delete every entry and checkpoint.
+     */
+    public synchronized void clear() throws IOException {
+        for (Path entry : listEntries()) {
+            Files.deleteIfExists(entry);
+        }
+        sizeBytes = 0;
+
+        Path checkpoints = directory.resolve(CHECKPOINT_DIR);
+        if (Files.isDirectory(checkpoints)) {
+            try (Stream<Path> files = Files.list(checkpoints)) {
+                for (Path checkpoint : files.toList()) {
+                    try {
+                        Files.deleteIfExists(checkpoint);
+                    } catch (IOException ignored) {} // Still open on Windows by a running transcription
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the checkpoint of an unfinished transcription with this key, creating it if
+     * there is none.
+     */
+    TranscriptCheckpoint openCheckpoint(String key) throws IOException {
+        return TranscriptCheckpoint.open(directory.resolve(CHECKPOINT_DIR).resolve(key + CHECKPOINT_SUFFIX));
+    }
+
+    /**
+     * Total size of the cached entries in bytes.
+     */
+    public synchronized long getSizeBytes() throws IOException {
+        if (sizeBytes < 0) {
+            sizeBytes = 0;
+            for (Path entry : listEntries()) {
+                sizeBytes += sizeOf(entry);
+            }
+        }
+        return sizeBytes;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private synchronized void added(long bytes) throws IOException {
+        if (sizeBytes < 0) {
+            getSizeBytes(); // The scan already counts the new entry
+        } else {
+            sizeBytes += bytes;
+        }
+        if (sizeBytes <= maxBytes) {
+            return;
+        }
+
+        // Least recently used first
+        List<Path> entries = listEntries();
+        Map<Path, Long> lastUsed = new HashMap<>();
+        for (Path entry : entries) {
+            try {
+                lastUsed.put(entry, Files.getLastModifiedTime(entry).toMillis());
+            } catch (IOException e) {
+                lastUsed.put(entry, 0L);
+            }
+        }
+        entries.sort(Comparator.comparingLong(lastUsed::get));
+
+        for (Path entry : entries) {
+            if (sizeBytes <= maxBytes) {
+                break;
+            }
+            long entrySize = sizeOf(entry);
+            if (Files.deleteIfExists(entry)) {
+                sizeBytes -= entrySize;
+            }
+        }
+    }
+
+    private void remove(Path entry) {
+        try {
+            long entrySize = sizeOf(entry);
+            if (Files.deleteIfExists(entry)) {
+                synchronized (this) {
+                    if (sizeBytes >= 0) {
+                        sizeBytes -= entrySize;
+                    }
+                }
+            }
+        } catch (IOException ignored) {}
+    }
+
+    private List<Path> listEntries() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return new ArrayList<>(files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList());
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static long sizeOf(Path entry) {
+        try {
+            return Files.size(entry);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Hash of the file's length and content; files larger than the samples together are
+     * hashed by the samples only.
+     */
+    static byte[] hashContent(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+
+            ByteBuffer buffer = ByteBuffer.allocate(HASH_SAMPLE_BYTES);
+            long sampledBytes = (long) HASH_SAMPLES * HASH_SAMPLE_BYTES;
+
+            if (size <= sampledBytes) {
+                for (long position = 0; position < size; position += HASH_SAMPLE_BYTES) {
+                    readSample(channel, position, buffer);
+                    digest.update(buffer);
+                }
+            } else {
+                // First and last sample included, the rest spread evenly in between
+                long step = (size - HASH_SAMPLE_BYTES) / (HASH_SAMPLES - 1);
+                for (int i = 0; i < HASH_SAMPLES; i++) {
+                    readSample(channel, i * step, buffer);
+                    digest.update(buffer);
+                }
+            }
+        }
+        return digest.digest();
+    }
+
+    private static void readSample(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TranscriptArchive;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Segments of an unfinished transcription, written as they are recognized so an
+ * interrupted run can resume where it stopped instead of starting over.
+ * <p>
+ * The file is a header followed by one record per segment: its length, a CRC32 and the
+ * segment as a one-segment {@link TranscriptArchive}, the format finished transcripts are
+ * cached in. Every record is written to the OS as soon as the segment arrives and synced to
+ * disk at least every {@link #SYNC_INTERVAL_MILLIS}, so a killed JVM loses nothing and a
+ * power cut at most the last half minute. A record cut short by the crash fails its length
+ * or CRC check and is dropped, together with anything after it, when the file is reopened.
+ * <p>
+ * Resuming starts at the end of the last segment: recognizer results end at a pause, so
+ * no word straddles that point. If a record can't be written, the file is deleted and the
+ * run carries on without a checkpoint, rather than leaving one with a gap in it.
+ */
+final class TranscriptCheckpoint implements Closeable {
+
+    static final long SYNC_INTERVAL_MILLIS = 30_000;
+
+    private static final int MAGIC = 0x4A564350; // "JVCP"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final List<TranscriptSegment> segments;
+    private long resumeMillis;
+    private long lastSyncNanos = System.nanoTime();
+    private boolean abandoned;
+
+    private TranscriptCheckpoint(Path file, FileChannel channel, List<TranscriptSegment> segments, long resumeMillis) {
+        this.file = file;
+        this.channel = channel;
+        this.segments = segments;
+        this.resumeMillis = resumeMillis;
+    }
+
+    /**
+     * Open the checkpoint file, reading the segments it already holds, or create it.
+     */
+    static TranscriptCheckpoint open(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Another transcription of the same file and settings already owns it
+            if (channel.tryLock() == null) {
+                throw new IOException("checkpoint " + file.getFileName() + " is in use");
+            }
+
+            List<TranscriptSegment> segments = new ArrayList<>();
+            long validEnd = read(channel, segments);
+            if (validEnd < 0) {
+                // New, or not a checkpoint we can read: start over
+                segments.clear();
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, channel.size());
+                }
+                validEnd = HEADER_BYTES;
+            } else if (validEnd < channel.size()) {
+                channel.truncate(validEnd); // Torn record from a crash
+            }
+            channel.position(validEnd);
+
+            long resumeMillis = 0;
+            for (TranscriptSegment segment : segments) {
+                resumeMillis = Math.max(resumeMillis, segment.endTimeMs);
+            }
+            return new TranscriptCheckpoint(file, channel, segments, resumeMillis);
+        } catch (OverlappingFileLockException e) {
+            channel.close();
+            throw new IOException("checkpoint " + file.getFileName() + " is in use");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Segments recovered from an earlier run, in order.
+     */
+    List<TranscriptSegment> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Position in the audio to continue from.
+     */
+    long getResumeMillis() {
+        return resumeMillis;
+    }
+
+    /**
+     * Record a segment that has been recognized. After a failure the checkpoint is deleted
+     * and later segments are ignored.
+     * @throws IOException if the record could not be written; the checkpoint is gone
+     */
+    void append(TranscriptSegment segment) throws IOException {
+        if (abandoned) {
+            return;
+        }
+        try {
+            byte[] payload = TranscriptArchive.toBytes(List.of(segment));
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            ByteBuffer record = ByteBuffer.allocate(8 + payload.length)
+                    .putInt(payload.length)
+                    .putInt((int) crc.getValue())
+                    .put(payload)
+                    .flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            segments.add(segment);
+            resumeMillis = Math.max(resumeMillis, segment.endTimeMs);
+
+            long now = System.nanoTime();
+            if (now - lastSyncNanos >= SYNC_INTERVAL_MILLIS * 1_000_000) {
+                channel.force(false);
+                lastSyncNanos = now;
+            }
+        } catch (IOException e) {
+            abandon(e);
+            throw e;
+        }
+    }
+
+    private void abandon(IOException cause) {
+        abandoned = true;
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Close and remove the checkpoint once the transcript is complete.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    /**
+     * Read the valid records into the list.
+     * @return where the last valid record ends, or -1 if the header is missing or wrong
+     */
+    private static long read(FileChannel channel, List<TranscriptSegment> segments) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            return -1;
+        }
+        ByteBuffer header = readFully(channel, 0, HEADER_BYTES);
+        if (header == null || header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+            return -1;
+        }
+
+        long position = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (position + 8 <= size) {
+            ByteBuffer prefix = readFully(channel, position, 8);
+            int length = prefix.getInt();
+            int checksum = prefix.getInt();
+            if (length < 0 || length > MAX_RECORD_BYTES || position + 8 + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = readFully(channel, position + 8, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                List<TranscriptSegment> record = TranscriptArchive.Reader.of(payload.array()).readAll();
+                if (record.size() != 1) {
+                    break;
+                }
+                segments.add(record.get(0));
+            } catch (IOException | RuntimeException e) {
+                break;
+            }
+            position += 8 + length;
+        }
+        return position;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,157 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One file in a {@link TranscriptionQueue}: its state, progress and, once it has run, its
+ * transcript or error.
+ * <p>
+ * Jobs are updated by the queue's worker threads and read from anywhere; every accessor is
+ * safe to call concurrently.
+ */
+public final class TranscriptionJob {
+
+    public enum State {
+        QUEUED("Queued"),
+        RUNNING("Running"),
+        DONE("Done"),
+        FAILED("Failed"),
+        CANCELLED("Cancelled");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final int id;
+    private final File audioFile;
+    private final List<TranscriptSegment> segments = new ArrayList<>();
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    private volatile TranscriptionProgress progress;
+    private volatile String error;
+    private volatile File exportedFile;
+    private volatile Future<?> future;
+    private volatile boolean cancelRequested;
+
+    TranscriptionJob(int id, File audioFile) {
+        this.id = id;
+        this.audioFile = audioFile;
+    }
+
+    /**
+     * Stop the job, or keep it from starting if it is still queued.
+     */
+    public void cancel() {
+        cancelRequested = true;
+        Future<?> running = future;
+        if (running != null) {
+            running.cancel(true);
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public File getAudioFile() {
+        return audioFile;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Latest progress report, or null before the first.
+     */
+    public TranscriptionProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Why the job failed, or null.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Where the transcript was exported automatically, or null.
+     */
+    public File getExportedFile() {
+        return exportedFile;
+    }
+
+    /**
+     * Segments recognized so far; the complete transcript once the job is done.
+     */
+    public List<TranscriptSegment> getSegments() {
+        synchronized (segments) {
+            return new ArrayList<>(segments);
+        }
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+        if (cancelRequested) {
+            future.cancel(true);
+        }
+    }
+
+    void setState(State state) {
+        this.state.set(state);
+    }
+
+    /**
+     * Move from one state to another, unless another thread changed the state first.
+     * @return whether this call made the change
+     */
+    boolean compareAndSetState(State expected, State state) {
+        return this.state.compareAndSet(expected, state);
+    }
+
+    void setProgress(TranscriptionProgress progress) {
+        this.progress = progress;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    void setExportedFile(File exportedFile) {
+        this.exportedFile = exportedFile;
+    }
+
+    void addSegment(TranscriptSegment segment) {
+        synchronized (segments) {
+            segments.add(segment);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return audioFile.getName() + " (" + state.get() + ")";
+    }
+}
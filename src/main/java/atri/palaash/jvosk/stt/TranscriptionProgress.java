@@ -0,0 +1,139 @@
+package atri.palaash.jvosk.stt;
+
+/**
+ * How far a transcription has got, measured in audio rather than text.
+ * <p>
+ * The real-time factor is wall-clock time spent per second of audio: 0.25 means an hour of
+ * audio takes fifteen minutes. The current value is a moving average over the last few
+ * seconds, so it follows changes in machine load; the ETA is the audio left at that rate.
+ */
+public final class TranscriptionProgress {
+
+    /**
+     * Receives progress reports on the thread reading the audio, a few times per second.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onProgress(TranscriptionProgress progress);
+    }
+
+    private final long audioMillis;
+    private final long startAudioMillis;
+    private final long totalAudioMillis;
+    private final long elapsedMillis;
+    private final double realTimeFactor;
+    private final boolean done;
+
+    TranscriptionProgress(long audioMillis, long startAudioMillis, long totalAudioMillis, long elapsedMillis,
+                          double realTimeFactor, boolean done) {
+        this.audioMillis = audioMillis;
+        this.startAudioMillis = startAudioMillis;
+        this.totalAudioMillis = totalAudioMillis;
+        this.elapsedMillis = elapsedMillis;
+        this.realTimeFactor = realTimeFactor;
+        this.done = done;
+    }
+
+    /**
+     * Audio consumed so far.
+     */
+    public long getAudioMillis() {
+        return audioMillis;
+    }
+
+    /**
+     * Where in the audio this run started; after the start when resumed from a checkpoint.
+     */
+    public long getStartAudioMillis() {
+        return startAudioMillis;
+    }
+
+    /**
+     * Length of the audio, or -1 if it is not known up front.
+     */
+    public long getTotalAudioMillis() {
+        return totalAudioMillis;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Fraction of the audio consumed, between 0 and 1, or -1 if the length is not known.
+     */
+    public double getFraction() {
+        if (done) {
+            return 1.0;
+        }
+        if (totalAudioMillis <= 0) {
+            return -1;
+        }
+        return Math.min(1.0, (double) audioMillis / totalAudioMillis);
+    }
+
+    /**
+     * Recent processing time per second of audio, or NaN before there is a measurement.
+     */
+    public double getRealTimeFactor() {
+        return realTimeFactor;
+    }
+
+    /**
+     * Processing time per second of audio since the start, or NaN before any audio.
+     */
+    public double getAverageRealTimeFactor() {
+        long processed = audioMillis - startAudioMillis;
+        return processed > 0 ? (double) elapsedMillis / processed : Double.NaN;
+    }
+
+    /**
+     * Estimated time left, or -1 if the length of the audio or the rate is not known yet.
+     */
+    public long getEtaMillis() {
+        if (done) {
+            return 0;
+        }
+        if (totalAudioMillis <= 0 || Double.isNaN(realTimeFactor)) {
+            return -1;
+        }
+        return Math.round(Math.max(0, totalAudioMillis - audioMillis) * realTimeFactor);
+    }
+
+    /**
+     * Whether all audio has been consumed; this is the last report.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Format a duration as m:ss or h:mm:ss.
+     */
+    public static String formatDuration(long millis) {
+        long totalSeconds = Math.max(0, millis) / 1000;
+        long hours = totalSeconds / 3600;
+        long minutes = (totalSeconds % 3600) / 60;
+        long seconds = totalSeconds % 60;
+        return hours > 0
+                ? String.format("%d:%02d:%02d", hours, minutes, seconds)
+                : String.format("%d:%02d", minutes, seconds);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(formatDuration(audioMillis));
+        if (totalAudioMillis > 0) {
+            text.append(" / ").append(formatDuration(totalAudioMillis))
+                .append(String.format(" (%.0f%%)", getFraction() * 100));
+        }
+        if (!Double.isNaN(realTimeFactor)) {
+            text.append(String.format(", %.2fx real time", realTimeFactor));
+        }
+        long eta = getEtaMillis();
+        if (eta >= 0 && !done) {
+            text.append(", ").append(formatDuration(eta)).append(" left");
+        }
+        return text.toString();
+    }
+}
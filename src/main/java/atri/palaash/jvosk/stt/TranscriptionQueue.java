@@ -0,0 +1,255 @@
+package atri.palaash.jvosk.stt;
+
+import atri.palaash.jvosk.models.ModelPool;
+import atri.palaash.jvosk.util.TaskScheduler;
+import atri.palaash.jvosk.util.TranscriptExporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs queued transcription jobs a configurable number at a time.
+ * <p>
+ * Every job leases its model from the {@link ModelPool}, so concurrent jobs on the same
+ * model share one copy of it and each gets its own recognizer. Finished transcripts can be
+ * exported automatically next to the audio or into a chosen folder. Listeners hear about
+ * every state change and progress report, on the worker thread that caused it.
+ */
+public class TranscriptionQueue {
+
+    /**
+     * Told when a job changes state or reports progress.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void jobChanged(TranscriptionJob job);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Set<TranscriptionJob> unfinished = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Consumer<VoskTranscriber> transcriberSetup = transcriber -> {};
+    private volatile String exportFormat;
+    private volatile File exportDirectory;
+
+    public TranscriptionQueue(int concurrency) {
+        this.executor = TaskScheduler.getInstance().newPool("TranscriptionQueue", concurrency);
+        // Idle workers exit, so an empty queue holds no threads
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a file for transcription with the model at the given path.
+     */
+    public TranscriptionJob submit(File audioFile, Path modelPath) {
+        TranscriptionJob job = new TranscriptionJob(nextId.getAndIncrement(), audioFile);
+        unfinished.add(job);
+
+        FutureTask<Void> task = new FutureTask<>(() -> run(job, modelPath), null) {
+            @Override
+            protected void done() {
+                // Cancelled before a worker picked it up; run() will never see it
+                if (isCancelled()) {
+                    cancelQueued(job);
+                }
+            }
+        };
+        job.setFuture(task);
+        fire(job);
+        executor.execute(task);
+        return job;
+    }
+
+    /**
+     * Number of jobs transcribed at the same time. Lowering it lets running jobs finish.
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        int workers = Math.max(1, concurrency);
+        if (workers > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(workers);
+            executor.setCorePoolSize(workers);
+        } else {
+            executor.setCorePoolSize(workers);
+            executor.setMaximumPoolSize(workers);
+        }
+    }
+
+    public int getConcurrency() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Applied to each job's transcriber before it starts, e.g. to turn on silence skipping.
+     */
+    public void setTranscriberSetup(Consumer<VoskTranscriber> transcriberSetup) {
+        this.transcriberSetup = transcriberSetup != null ? transcriberSetup : transcriber -> {};
+    }
+
+    /**
+     * Format finished transcripts are exported in (txt, md, srt, vtt or json), or null to
+     * not export them.
+     */
+    public void setExportFormat(String exportFormat) {
+        this.exportFormat = exportFormat;
+    }
+
+    public String getExportFormat() {
+        return exportFormat;
+    }
+
+    /**
+     * Folder exports are written to, or null for the folder of each audio file.
+     */
+    public void setExportDirectory(File exportDirectory) {
+        this.exportDirectory = exportDirectory;
+    }
+
+    public File getExportDirectory() {
+        return exportDirectory;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Jobs queued or running.
+     */
+    public int getUnfinishedCount() {
+        return unfinished.size();
+    }
+
+    public void cancelAll() {
+        for (TranscriptionJob job : unfinished) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Cancel everything and stop the workers.
+     */
+    public void shutdownNow() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Where a transcript of the audio file is exported to in the given format.
+     * @param directory export folder, or null for the audio file's folder
+     */
+    public static File exportFileFor(File audioFile, File directory, String format) {
+        String name = audioFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        File folder = directory != null ? directory : audioFile.getAbsoluteFile().getParentFile();
+        return new File(folder, baseName + "_transcript." + format);
+    }
+
+    private void run(TranscriptionJob job, Path modelPath) {
+        if (job.isCancelRequested()) {
+            cancelQueued(job);
+            return;
+        }
+        // The job can be cancelled while this worker picks it up; whichever is first decides
+        if (!job.compareAndSetState(TranscriptionJob.State.QUEUED, TranscriptionJob.State.RUNNING)) {
+            return;
+        }
+        fire(job);
+
+        TranscriptionJob.State outcome;
+        try (VoskTranscriber transcriber = new VoskTranscriber(acquireModel(modelPath))) {
+            transcriberSetup.accept(transcriber);
+            transcriber.setProgressListener(progress -> {
+                job.setProgress(progress);
+                fire(job);
+            });
+
+            transcriber.transcribeFile(job.getAudioFile(), job::addSegment);
+
+            if (job.isCancelRequested() || Thread.currentThread().isInterrupted()) {
+                outcome = TranscriptionJob.State.CANCELLED;
+            } else {
+                export(job, modelPath);
+                outcome = TranscriptionJob.State.DONE;
+            }
+        } catch (InterruptedException | InterruptedIOException e) {
+            outcome = TranscriptionJob.State.CANCELLED;
+        } catch (IOException | RuntimeException e) {
+            if (job.isCancelRequested()) {
+                outcome = TranscriptionJob.State.CANCELLED;
+            } else {
+                job.setError(e.getMessage());
+                outcome = TranscriptionJob.State.FAILED;
+                System.err.println("Transcription of " + job.getAudioFile().getName() + " failed: " + e.getMessage());
+            }
+        }
+
+        finish(job, outcome);
+    }
+
+    private static ModelPool.Lease acquireModel(Path modelPath) throws IOException {
+        try {
+            return ModelPool.getInstance().acquire(modelPath);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IOException("Failed to load model " + modelPath.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void export(TranscriptionJob job, Path modelPath) {
+        String format = exportFormat;
+        if (format == null) {
+            return;
+        }
+
+        File target = exportFileFor(job.getAudioFile(), exportDirectory, format);
+        try {
+            TranscriptExporter.export(job.getSegments(), format, target,
+                    TranscriptExporter.metadata(modelPath.getFileName().toString(), job.getAudioFile()));
+            job.setExportedFile(target);
+        } catch (IOException e) {
+            // The transcript itself is fine and stays available in the app
+            job.setError("Export failed: " + e.getMessage());
+            System.err.println("Failed to export " + target + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cancel a job that hasn't started, unless a worker started it first.
+     */
+    private void cancelQueued(TranscriptionJob job) {
+        if (job.compareAndSetState(TranscriptionJob.State.QUEUED, TranscriptionJob.State.CANCELLED)) {
+            unfinished.remove(job);
+            fire(job);
+        }
+    }
+
+    private void finish(TranscriptionJob job, TranscriptionJob.State state) {
+        job.setState(state);
+        unfinished.remove(job);
+        fire(job);
+    }
+
+    private void fire(TranscriptionJob job) {
+        for (Listener listener : listeners) {
+            listener.jobChanged(job);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package atri.palaash.jvosk.stt;
+
+/**
+ * Decides, frame by frame, whether 16kHz mono 16-bit little-endian PCM contains speech.
+ * <p>
+ * Detectors are handed consecutive frames of {@link #FRAME_MILLIS} (the last frame of a
+ * stream may be shorter) and may keep state between them, such as a noise floor or a
+ * hangover count. Instances are used by one stream at a time.
+ *
+ * @see EnergyVoiceActivityDetector
+ */
+public interface VoiceActivityDetector {
+
+    int FRAME_MILLIS = 30;
+
+    /**
+     * Classify the next frame.
+     * @return true if the frame should be heard by the recognizer
+     */
+    boolean isSpeech(byte[] pcm, int offset, int length);
+
+    /**
+     * Forget all state before a new stream.
+     */
+    void reset();
+
+    /**
+     * Everything that decides which frames count as speech, so cached transcripts made with
+     * other settings are not reused. Detectors without settings can keep the class name.
+     */
+    default String getSettings() {
+        return getClass().getName();
+    }
+}
@@ -1,7 +1,10 @@
 package atri.palaash.jvosk.stt;
 
+import atri.palaash.jvosk.models.ModelPool;
+import atri.palaash.jvosk.util.AudioInfo;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
 import org.vosk.Model;
-import org.vosk.Recognizer;
 import ws.schild.jave.Encoder;
 import ws.schild.jave.EncoderException;
 import ws.schild.jave.MultimediaObject;
@@ -11,56 +14,100 @@ import ws.schild.jave.encode.EncodingAttributes;
 import javax.sound.sampled.*;
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
-public class VoskTranscriber {
+public class VoskTranscriber implements AutoCloseable {
 
     private Model model;
     private String currentModelPath;
-    private boolean ownsModel; // Track whether we should close the model
+    private ModelPool.Lease lease; // Set when the model comes from the shared pool
+    private boolean streamingDecode = true;
+    private int parallelism = 1;
+    private int bufferSize = 4096;
+    private RecognizerConfig recognizerConfig = RecognizerConfig.DEFAULT;
+    private VoiceActivityDetector voiceActivityDetector; // null: every byte is recognized
+    private TranscriptionProgress.Listener progressListener;
+    private TranscriptCache transcriptCache; // null: always transcribe
 
     public VoskTranscriber(String modelPath) {
-        this.currentModelPath = modelPath;
-        this.ownsModel = true;
         loadModel(modelPath);
     }
     
     public VoskTranscriber(Model model) {
         this.model = model;
-        this.currentModelPath = null;
-        this.ownsModel = false; // Caller owns the model
+        this.currentModelPath = null; // Caller owns the model
+    }
+    
+    /**
+     * Use a pooled model; the lease is released when the transcriber switches model or is closed.
+     */
+    public VoskTranscriber(ModelPool.Lease lease) {
+        useLease(lease);
     }
     
     private void loadModel(String modelPath) {
         try {
-            this.model = new Model(modelPath);
-            this.currentModelPath = modelPath;
-            this.ownsModel = true;
+            useLease(ModelPool.getInstance().acquire(Paths.get(modelPath)));
         } catch (IOException e) {
             throw new RuntimeException("Failed to load Vosk model: " + modelPath, e);
         }
     }
     
+    private void useLease(ModelPool.Lease newLease) {
+        this.lease = newLease;
+        this.model = newLease.getModel();
+        this.currentModelPath = newLease.getModelPath().toString();
+    }
+    
+    private void releaseLease() {
+        if (lease != null) {
+            lease.close();
+            lease = null;
+        }
+    }
+    
     /**
      * Switch to a different model.
      */
     public void switchModel(Model newModel) {
-        if (this.model != null && this.ownsModel) {
-            this.model.close();
-        }
+        releaseLease();
         this.model = newModel;
-        this.currentModelPath = null;
-        this.ownsModel = false; // Caller owns the new model
+        this.currentModelPath = null; // Caller owns the new model
+    }
+    
+    /**
+     * Switch to a different pooled model.
+     */
+    public void switchModel(ModelPool.Lease newLease) {
+        ModelPool.Lease previous = lease;
+        useLease(newLease);
+        if (previous != null) {
+            previous.close();
+        }
     }
     
     /**
      * Switch to a different model by path.
      */
     public void switchModel(String modelPath) {
-        if (this.model != null && this.ownsModel) {
-            this.model.close();
-        }
+        // Acquire the new model before releasing the old one so a failed load keeps it
+        ModelPool.Lease previous = lease;
         loadModel(modelPath);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+    
+    /**
+     * Release the pooled model, if any. A model passed in directly is left to its owner.
+     */
+    @Override
+    public void close() {
+        releaseLease();
     }
     
     public String getCurrentModelPath() {
@@ -70,27 +117,230 @@ public class VoskTranscriber {
     public Model getModel() {
         return model;
     }
+    
+    /**
+     * Whether compressed formats are decoded straight into the recognizer through a pipe
+     * (default) or converted to a temporary WAV file first.
+     */
+    public boolean isStreamingDecode() {
+        return streamingDecode;
+    }
+    
+    public void setStreamingDecode(boolean streamingDecode) {
+        this.streamingDecode = streamingDecode;
+    }
+    
+    /**
+     * Size in bytes of the PCM chunks handed to the recognizer per call.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+    
+    public void setBufferSize(int bufferSize) {
+        // Keep whole 16-bit samples
+        this.bufferSize = Math.max(2, bufferSize & ~1);
+    }
+    
+    /**
+     * Number of recognizers working on one file at once. Values above 1 split the audio
+     * into overlapping windows, see {@link ParallelTranscriber}.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+    
+    /**
+     * Settings for the recognizers, which are taken from the shared {@link RecognizerPool}.
+     * The sample rate must match the PCM handed to {@link #transcribeStream}.
+     */
+    public RecognizerConfig getRecognizerConfig() {
+        return recognizerConfig;
+    }
+    
+    public void setRecognizerConfig(RecognizerConfig recognizerConfig) {
+        this.recognizerConfig = recognizerConfig;
+    }
+    
+    /**
+     * Detector used to skip non-speech before it reaches the recognizer, or null (default)
+     * to recognize all audio. Timestamps always refer to the original audio.
+     */
+    public VoiceActivityDetector getVoiceActivityDetector() {
+        return voiceActivityDetector;
+    }
+    
+    public void setVoiceActivityDetector(VoiceActivityDetector voiceActivityDetector) {
+        this.voiceActivityDetector = voiceActivityDetector;
+    }
+    
+    /**
+     * Listener told how much of the audio has been consumed, the real-time factor and the
+     * ETA while a transcription runs, or null for none. Reports arrive on the transcribing
+     * thread. The audio is read a little ahead of recognition, up to a few windows with
+     * parallelism above 1, so progress leads slightly until the end.
+     */
+    public TranscriptionProgress.Listener getProgressListener() {
+        return progressListener;
+    }
+    
+    public void setProgressListener(TranscriptionProgress.Listener progressListener) {
+        this.progressListener = progressListener;
+    }
+    
+    /**
+     * Cache finished transcripts are stored in and looked up from, or null (default) for
+     * none. Only used when the model came from the {@link ModelPool}, since its path names
+     * the model in the cache key. While a file is transcribed its segments are also
+     * checkpointed there, so a cancelled or crashed run resumes where it stopped.
+     */
+    public TranscriptCache getTranscriptCache() {
+        return transcriptCache;
+    }
+    
+    public void setTranscriptCache(TranscriptCache transcriptCache) {
+        this.transcriptCache = transcriptCache;
+    }
+
+
+    public void transcribeFile(File audioFile, Consumer<TranscriptSegment> onSegment) throws InterruptedException {
+        TranscriptCache cache = currentModelPath != null ? transcriptCache : null;
+        if (cache == null) {
+            transcribeAudio(audioFile, 0, onSegment);
+            return;
+        }
 
+        String key;
+        try {
+            key = cache.keyFor(audioFile, Paths.get(currentModelPath).getFileName().toString(), cacheSettings());
+        } catch (IOException e) {
+            // Unreadable files fail below with the usual message
+            transcribeAudio(audioFile, 0, onSegment);
+            return;
+        }
 
-    public void transcribeFile(File audioFile, Consumer<String> onText) throws InterruptedException {
+        List<TranscriptSegment> cached = cache.get(key);
+        if (cached != null) {
+            System.out.println("Loaded transcript of " + audioFile.getName() + " from cache");
+            cached.forEach(onSegment);
+            return;
+        }
+
+        TranscriptCheckpoint checkpoint = openCheckpoint(cache, key);
+        long startMillis = 0;
+        List<TranscriptSegment> segments = new ArrayList<>();
+        if (checkpoint != null && !checkpoint.getSegments().isEmpty()) {
+            startMillis = checkpoint.getResumeMillis();
+            System.out.println("Resuming " + audioFile.getName() + " at " + TranscriptionProgress.formatDuration(startMillis)
+                    + " (" + checkpoint.getSegments().size() + " segments from the last run)");
+            segments.addAll(checkpoint.getSegments());
+            segments.forEach(onSegment);
+        }
+
+        boolean complete = false;
+        try {
+            transcribeAudio(audioFile, startMillis, segment -> {
+                segments.add(segment);
+                appendToCheckpoint(checkpoint, segment);
+                onSegment.accept(segment);
+            });
+            // A cancelled run may have stopped early; only complete transcripts are cached
+            complete = !Thread.currentThread().isInterrupted();
+        } finally {
+            closeCheckpoint(checkpoint, complete);
+        }
+
+        if (complete) {
+            try {
+                cache.put(key, segments);
+            } catch (IOException e) {
+                System.err.println("Failed to cache transcript: " + e.getMessage());
+            }
+        }
+    }
+    
+    private static TranscriptCheckpoint openCheckpoint(TranscriptCache cache, String key) {
+        try {
+            return cache.openCheckpoint(key);
+        } catch (IOException e) {
+            System.err.println("Transcribing without a checkpoint: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private static void appendToCheckpoint(TranscriptCheckpoint checkpoint, TranscriptSegment segment) {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.append(segment);
+        } catch (IOException e) {
+            // Losing the checkpoint only costs the ability to resume; it has deleted itself
+            System.err.println("Failed to write checkpoint, continuing without one: " + e.getMessage());
+        }
+    }
+    
+    private static void closeCheckpoint(TranscriptCheckpoint checkpoint, boolean complete) {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            if (complete) {
+                checkpoint.delete();
+            } else {
+                checkpoint.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to close checkpoint: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Everything besides the audio and model that changes the transcript. Windowed
+     * recognition restarts the recognizer at each window, so it is keyed apart from a
+     * sequential run; how many windows run at once does not change the result.
+     */
+    private String cacheSettings() {
+        VoiceActivityDetector vad = voiceActivityDetector;
+        String mode = parallelism > 1
+                ? "windows " + ParallelTranscriber.WINDOW_SECONDS + "/" + ParallelTranscriber.OVERLAP_SECONDS
+                        + "/" + ParallelTranscriber.SILENCE_SEARCH_SECONDS
+                : "sequential";
+        return recognizerConfig.getSampleRate() + "|" + recognizerConfig.isWords() + "|"
+                + recognizerConfig.isPartialWords() + "|" + recognizerConfig.getMaxAlternatives() + "|"
+                + recognizerConfig.getGrammar() + "|" + (vad != null ? vad.getSettings() : "none") + "|" + mode;
+    }
+
+    /**
+     * @param startMillis position to start from; timestamps still refer to the whole file
+     */
+    private void transcribeAudio(File audioFile, long startMillis, Consumer<TranscriptSegment> onSegment) throws InterruptedException {
         File tempWav = null;
         
         try {
             String fileName = audioFile.getName().toLowerCase();
-            File fileToTranscribe = audioFile;
             
-            // Convert non-WAV files using JAVE2
-            if (needsConversion(fileName)) {
+            if (!needsConversion(fileName)) {
+                transcribeWav(audioFile, startMillis, onSegment);
+            } else if (streamingDecode) {
+                // Decode and recognize concurrently, no temp file
+                transcribeDecoded(audioFile, startMillis, onSegment);
+            } else {
+                // Convert non-WAV files using JAVE2
                 tempWav = convertToWavWithJave(audioFile);
-                fileToTranscribe = tempWav;
+                transcribeWav(tempWav, startMillis, onSegment);
             }
             
-            // Transcribe WAV file
-            transcribeWav(fileToTranscribe, onText);
-            
         } catch (InterruptedException e) {
             // Re-throw interruption to allow proper cancellation handling
             throw e;
+        } catch (UncheckedIOException e) {
+            // Thrown by the segment consumer, e.g. a full disk while writing the transcript
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Failed to read audio file: " + e.getMessage(), e);
         } finally {
@@ -103,7 +353,15 @@ public class VoskTranscriber {
         }
     }
     
-    private boolean needsConversion(String fileName) {
+    /**
+     * Whether the file name has one of the audio extensions jvosk can transcribe.
+     */
+    public static boolean isSupportedAudioFile(String fileName) {
+        String lower = fileName.toLowerCase();
+        return lower.endsWith(".wav") || needsConversion(lower);
+    }
+    
+    private static boolean needsConversion(String fileName) {
         return fileName.endsWith(".mp3") || 
                fileName.endsWith(".m4a") || 
                fileName.endsWith(".flac") || 
@@ -113,6 +371,23 @@ public class VoskTranscriber {
                fileName.endsWith(".opus");
     }
     
+    private void transcribeDecoded(File audioFile, long startMillis, Consumer<TranscriptSegment> onSegment) throws Exception {
+        // Check for cancellation before spawning the decoder
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Conversion cancelled by user");
+        }
+        
+        System.out.println("Decoding " + audioFile.getName() + " as a stream...");
+        
+        // The decoded stream has no header; ask ffmpeg for the length only when it is reported
+        long totalAudioMillis = progressListener != null ? AudioInfo.from(audioFile).getDurationMillis() : -1;
+        
+        try (FfmpegPcmDecoder decoder = FfmpegPcmDecoder.open(audioFile, startMillis)) {
+            transcribeStream(decoder.getInputStream(), startMillis, totalAudioMillis, onSegment);
+            decoder.awaitCompletion();
+        }
+    }
+    
     private File convertToWavWithJave(File audioFile) throws IOException, InterruptedException {
         try {
             // Check for cancellation before starting conversion
@@ -161,7 +436,7 @@ public class VoskTranscriber {
         }
     }
     
-    private void transcribeWav(File wavFile, Consumer<String> onText) throws Exception {
+    private void transcribeWav(File wavFile, long startMillis, Consumer<TranscriptSegment> onSegment) throws Exception {
         AudioInputStream ais = null;
         AudioInputStream convertedStream = null;
         
@@ -169,6 +444,19 @@ public class VoskTranscriber {
             ais = AudioSystem.getAudioInputStream(wavFile);
             AudioFormat sourceFormat = ais.getFormat();
             
+            if (startMillis > 0) {
+                // Skip whole frames of the source before any conversion
+                long skipBytes = (long) (startMillis * sourceFormat.getFrameRate() / 1000) * sourceFormat.getFrameSize();
+                long skipped = 0;
+                while (skipped < skipBytes) {
+                    long n = ais.skip(skipBytes - skipped);
+                    if (n <= 0) {
+                        break;
+                    }
+                    skipped += n;
+                }
+            }
+            
             AudioFormat targetFormat = new AudioFormat(
                     AudioFormat.Encoding.PCM_SIGNED,
                     16000,
@@ -186,29 +474,10 @@ public class VoskTranscriber {
                 convertedStream = ais;
             }
 
-            try (Recognizer recognizer = new Recognizer(model, 16000)) {
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-
-                while ((bytesRead = convertedStream.read(buffer)) >= 0) {
-                // Check for thread interruption (cancellation)
-                if (Thread.currentThread().isInterrupted()) {
-                    throw new InterruptedException("Transcription cancelled by user");
-                }
-                
-                    if (recognizer.acceptWaveForm(buffer, bytesRead)) {
-                        String result = extractText(recognizer.getResult());
-                        if (!result.isEmpty()) {
-                            onText.accept(result);
-                        }
-                    }
-                }
-
-                String finalResult = extractText(recognizer.getFinalResult());
-                if (!finalResult.isEmpty()) {
-                    onText.accept(finalResult);
-                }
-            }
+            long frames = ais.getFrameLength();
+            long totalAudioMillis = frames > 0 && sourceFormat.getFrameRate() > 0
+                    ? (long) (frames * 1000 / sourceFormat.getFrameRate()) : -1;
+            transcribeStream(convertedStream, startMillis, totalAudioMillis, onSegment);
 
         } finally {
             if (convertedStream != null && convertedStream != ais) {
@@ -220,12 +489,80 @@ public class VoskTranscriber {
         }
     }
 
-    private String extractText(String json) {
-        int idx = json.indexOf("\"text\"");
-        if (idx == -1) return "";
-        int start = json.indexOf('"', idx + 6);
-        int end = json.indexOf('"', start + 1);
-        if (start == -1 || end == -1) return "";
-        return json.substring(start + 1, end);
+    /**
+     * Transcribe raw 16kHz, mono, 16-bit little-endian PCM read from the given stream
+     * until it is exhausted.
+     */
+    public void transcribeStream(InputStream pcmStream, Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        transcribeStream(pcmStream, -1, onSegment);
+    }
+    
+    /**
+     * Transcribe raw 16kHz, mono, 16-bit little-endian PCM of a known length, which lets
+     * the progress listener report a fraction and an ETA.
+     * @param totalAudioMillis length of the audio in the stream, or -1 if unknown
+     */
+    public void transcribeStream(InputStream pcmStream, long totalAudioMillis, Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        transcribeStream(pcmStream, 0, totalAudioMillis, onSegment);
+    }
+    
+    /**
+     * @param startMillis position in the audio of the stream's first byte, added to every timestamp
+     */
+    private void transcribeStream(InputStream pcmStream, long startMillis, long totalAudioMillis,
+                                  Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        Consumer<TranscriptSegment> shifted = startMillis > 0
+                ? segment -> onSegment.accept(shift(segment, startMillis)) : onSegment;
+        if (progressListener == null) {
+            transcribeSpeech(pcmStream, shifted);
+            return;
+        }
+        
+        ProgressInputStream counted = new ProgressInputStream(pcmStream, startMillis, totalAudioMillis, progressListener);
+        transcribeSpeech(counted, shifted);
+        counted.finish();
+    }
+    
+    private static TranscriptSegment shift(TranscriptSegment segment, long millis) {
+        List<Word> words = new ArrayList<>(segment.words.size());
+        for (Word word : segment.words) {
+            words.add(new Word(word.text, word.startTimeMs + millis,
+                    word.endTimeMs + millis, word.confidence));
+        }
+        return new TranscriptSegment(segment.text, segment.startTimeMs + millis,
+                segment.endTimeMs + millis, words, segment.confidence);
+    }
+    
+    private void transcribeSpeech(InputStream pcmStream, Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        if (voiceActivityDetector == null) {
+            recognize(pcmStream, UnaryOperator.identity(), onSegment);
+            return;
+        }
+        
+        voiceActivityDetector.reset();
+        SilenceFilterInputStream speech = new SilenceFilterInputStream(pcmStream, voiceActivityDetector);
+        OffsetMap offsetMap = speech.getOffsetMap();
+        recognize(speech, offsetMap::toSource, onSegment);
+        
+        long sourceBytes = speech.getSourceBytes();
+        if (sourceBytes > 0) {
+            System.out.printf("Skipped %.0f%% of the audio as silence (%d speech runs)%n",
+                    100.0 * (sourceBytes - speech.getKeptBytes()) / sourceBytes, offsetMap.getRunCount());
+        }
+    }
+    
+    /**
+     * Recognize the stream. {@code toSource} is applied on the thread that reads the stream,
+     * since it may depend on what has been read so far.
+     */
+    private void recognize(InputStream pcmStream, UnaryOperator<TranscriptSegment> toSource,
+                           Consumer<TranscriptSegment> onSegment) throws IOException, InterruptedException {
+        Consumer<TranscriptSegment> mapped = segment -> onSegment.accept(toSource.apply(segment));
+        if (parallelism > 1) {
+            new ParallelTranscriber(model, recognizerConfig, parallelism).transcribe(pcmStream, mapped);
+        } else {
+            // Reads stay on this thread; only recognition goes to the CPU pool
+            new SequentialTranscriber(model, recognizerConfig, bufferSize).transcribe(pcmStream, mapped);
+        }
     }
 }
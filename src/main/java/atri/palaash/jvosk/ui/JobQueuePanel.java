@@ -0,0 +1,213 @@
+package atri.palaash.jvosk.ui;
+
+import atri.palaash.jvosk.stt.TranscriptionJob;
+import atri.palaash.jvosk.stt.TranscriptionProgress;
+import atri.palaash.jvosk.stt.TranscriptionQueue;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Table of the jobs in a {@link TranscriptionQueue} with their status and progress, and
+ * buttons to cancel them and open their transcripts.
+ */
+public class JobQueuePanel extends JPanel {
+
+    private static final String[] COLUMNS = {"File", "Status", "Progress", "Speed", "Time Left", "Output"};
+    private static final int PROGRESS_COLUMN = 2;
+
+    private final TranscriptionQueue queue;
+    private final JobTableModel tableModel = new JobTableModel();
+    private final JTable table = new JTable(tableModel);
+    private final JButton openButton = new JButton("Open Transcript");
+    private final JButton cancelButton = new JButton("Cancel");
+    private final JButton cancelAllButton = new JButton("Cancel All");
+    private final JButton clearButton = new JButton("Clear Finished");
+    private Runnable onChange = () -> {};
+    // Ids are handed out in submission order, so only a job with a higher id can be new
+    private int lastAddedId;
+
+    /**
+     * @param onOpen called on the EDT with a finished job whose transcript should be shown
+     */
+    public JobQueuePanel(TranscriptionQueue queue, Consumer<TranscriptionJob> onOpen) {
+        super(new BorderLayout(4, 4));
+        this.queue = queue;
+
+        table.setFillsViewportHeight(true);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        table.getColumnModel().getColumn(0).setPreferredWidth(220);
+        table.getColumnModel().getColumn(PROGRESS_COLUMN).setPreferredWidth(140);
+        table.getColumnModel().getColumn(5).setPreferredWidth(220);
+        table.getColumnModel().getColumn(PROGRESS_COLUMN).setCellRenderer(new ProgressRenderer());
+        table.getSelectionModel().addListSelectionListener(e -> updateButtons());
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    openSelected(onOpen);
+                }
+            }
+        });
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        openButton.addActionListener(e -> openSelected(onOpen));
+        cancelButton.addActionListener(e -> selectedJobs().forEach(TranscriptionJob::cancel));
+        cancelAllButton.addActionListener(e -> queue.cancelAll());
+        clearButton.addActionListener(e -> clearFinished());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 2));
+        buttonPanel.add(openButton);
+        buttonPanel.add(cancelButton);
+        buttonPanel.add(cancelAllButton);
+        buttonPanel.add(clearButton);
+        add(buttonPanel, BorderLayout.SOUTH);
+
+        queue.addListener(job -> SwingUtilities.invokeLater(() -> jobChanged(job)));
+        updateButtons();
+    }
+
+    /**
+     * Called on the EDT whenever the jobs or their states change.
+     */
+    public void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    public int getJobCount() {
+        return tableModel.jobs.size();
+    }
+
+    private void jobChanged(TranscriptionJob job) {
+        int row = tableModel.jobs.indexOf(job);
+        if (row < 0) {
+            if (job.getId() <= lastAddedId) {
+                return; // A late report for a job cleared from the table
+            }
+            lastAddedId = job.getId();
+            tableModel.jobs.add(job);
+            row = tableModel.jobs.size() - 1;
+            tableModel.fireTableRowsInserted(row, row);
+        } else {
+            tableModel.fireTableRowsUpdated(row, row);
+        }
+        updateButtons();
+        onChange.run();
+    }
+
+    private void clearFinished() {
+        tableModel.jobs.removeIf(job -> job.getState().isFinished());
+        tableModel.fireTableDataChanged();
+        updateButtons();
+        onChange.run();
+    }
+
+    private void openSelected(Consumer<TranscriptionJob> onOpen) {
+        for (TranscriptionJob job : selectedJobs()) {
+            if (job.getState() == TranscriptionJob.State.DONE) {
+                onOpen.accept(job);
+            }
+        }
+    }
+
+    private List<TranscriptionJob> selectedJobs() {
+        List<TranscriptionJob> selected = new ArrayList<>();
+        for (int row : table.getSelectedRows()) {
+            selected.add(tableModel.jobs.get(table.convertRowIndexToModel(row)));
+        }
+        return selected;
+    }
+
+    private void updateButtons() {
+        List<TranscriptionJob> selected = selectedJobs();
+        openButton.setEnabled(selected.stream().anyMatch(job -> job.getState() == TranscriptionJob.State.DONE));
+        cancelButton.setEnabled(selected.stream().anyMatch(job -> !job.getState().isFinished()));
+        cancelAllButton.setEnabled(queue.getUnfinishedCount() > 0);
+        clearButton.setEnabled(tableModel.jobs.stream().anyMatch(job -> job.getState().isFinished()));
+    }
+
+    private static class JobTableModel extends AbstractTableModel {
+
+        private final List<TranscriptionJob> jobs = new ArrayList<>();
+
+        @Override
+        public int getRowCount() {
+            return jobs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            TranscriptionJob job = jobs.get(row);
+            TranscriptionProgress progress = job.getProgress();
+
+            switch (column) {
+                case 0:
+                    return job.getAudioFile().getName();
+                case 1:
+                    return job.getError() != null ? job.getState() + ": " + job.getError() : job.getState().toString();
+                case 2:
+                    return job;
+                case 3:
+                    return progress != null && !Double.isNaN(progress.getRealTimeFactor())
+                            ? String.format("%.2fx real time", progress.getRealTimeFactor()) : "";
+                case 4:
+                    if (job.getState() != TranscriptionJob.State.RUNNING || progress == null || progress.getEtaMillis() < 0) {
+                        return "";
+                    }
+                    return TranscriptionProgress.formatDuration(progress.getEtaMillis());
+                default:
+                    File exported = job.getExportedFile();
+                    return exported != null ? exported.getPath() : "";
+            }
+        }
+    }
+
+    /**
+     * Draws the progress column as a progress bar.
+     */
+    private static class ProgressRenderer extends JProgressBar implements TableCellRenderer {
+
+        ProgressRenderer() {
+            super(0, 100);
+            setStringPainted(true);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            TranscriptionJob job = (TranscriptionJob) value;
+            TranscriptionProgress progress = job.getProgress();
+            double fraction = progress != null ? progress.getFraction() : -1;
+
+            if (job.getState() == TranscriptionJob.State.DONE) {
+                setValue(100);
+                setString("100%");
+            } else if (fraction >= 0) {
+                setValue((int) (fraction * 100));
+                setString(Math.round(fraction * 100) + "%");
+            } else {
+                setValue(0);
+                setString(progress != null ? TranscriptionProgress.formatDuration(progress.getAudioMillis()) : "");
+            }
+            return this;
+        }
+    }
+}
@@ -1,15 +1,31 @@
 package atri.palaash.jvosk.ui;
 
 import atri.palaash.jvosk.models.ModelManager;
+import atri.palaash.jvosk.models.ModelPool;
+import atri.palaash.jvosk.models.ModelWarmup;
 import atri.palaash.jvosk.models.VoskModel;
+import atri.palaash.jvosk.stt.AudioLine;
+import atri.palaash.jvosk.stt.EnergyVoiceActivityDetector;
+import atri.palaash.jvosk.stt.LiveTranscriber;
+import atri.palaash.jvosk.stt.MicrophoneLine;
+import atri.palaash.jvosk.stt.TranscriptCache;
+import atri.palaash.jvosk.stt.TranscriptionJob;
+import atri.palaash.jvosk.stt.TranscriptionProgress;
+import atri.palaash.jvosk.stt.TranscriptionQueue;
 import atri.palaash.jvosk.stt.VoskTranscriber;
 import atri.palaash.jvosk.util.AppPreferences;
 import atri.palaash.jvosk.util.AudioInfo;
+import atri.palaash.jvosk.util.TaskScheduler;
+import atri.palaash.jvosk.util.TranscriptArchive;
 import atri.palaash.jvosk.util.TranscriptExporter;
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import com.formdev.flatlaf.FlatClientProperties;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
@@ -17,33 +33,58 @@ import java.awt.datatransfer.DataFlavor;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 public class MainFrame extends JFrame {
 
+    // Shorter runs are dominated by startup and don't say much about the real-time factor
+    private static final long MIN_AUDIO_FOR_RTF_MS = 30_000;
+
     private final JTextArea transcriptArea;
     private final JLabel statusLabel;
     private final JProgressBar progressBar;
     private final JLabel statsLabel;
     private final JLabel audioInfoLabel;
     private final JPanel dropPanel;
+    private final JTabbedPane tabs;
+    private final TranscriptionQueue jobQueue;
+    private final JobQueuePanel jobQueuePanel;
     
     private VoskTranscriber transcriber;
     private ModelManager modelManager;
-    private SwingWorker<Void, String> currentWorker;
+    private SwingWorker<Void, TranscriptSegment> currentWorker;
+    private final TranscriptModel transcript = new TranscriptModel();
     private File currentAudioFile;
+    private long currentAudioDurationMs; // 0 when unknown or live
+    private TranscriptionProgress lastProgress;
     private long transcriptionStartTime;
     private boolean hasUnsavedChanges = false;
     private boolean modelReady = false;
-    private Thread modelLoadingThread;
+    private Future<?> modelLoading;
+    private int modelLoadGeneration; // Guarded by this; bumped by each load, so older ones know they lost
+    private LiveTranscriber liveTranscriber;
+    private int partialStart = -1; // Offset of the live partial line in the transcript, -1 if none
     
     // UI Components for actions
     private JButton copyButton;
     private JButton saveButton;
     private JButton clearButton;
     private JButton browseButton;
+    private JButton liveButton;
+    private JMenuItem liveMenuItem;
     private JCheckBoxMenuItem timestampMenuItem;
     private JCheckBoxMenuItem darkModeMenuItem;
+    private JCheckBoxMenuItem parallelMenuItem;
+    private JCheckBoxMenuItem skipSilenceMenuItem;
+    private JCheckBoxMenuItem cacheMenuItem;
 
     public MainFrame() {
         this(null);
@@ -60,6 +101,15 @@ public class MainFrame extends JFrame {
         }
 
         // Don't initialize transcriber yet - will be done async
+        
+        jobQueue = new TranscriptionQueue(AppPreferences.getQueueConcurrency());
+        jobQueue.setTranscriberSetup(t -> {
+            t.setVoiceActivityDetector(AppPreferences.isSkipSilence() ? new EnergyVoiceActivityDetector() : null);
+            t.setTranscriptCache(AppPreferences.isUseTranscriptCache() ? TranscriptCache.getInstance() : null);
+        });
+        jobQueue.setExportFormat(AppPreferences.getAutoExportFormat());
+        String exportDir = AppPreferences.getAutoExportDir();
+        jobQueue.setExportDirectory(exportDir != null ? new File(exportDir) : null);
 
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         addWindowListener(new java.awt.event.WindowAdapter() {
@@ -93,15 +143,19 @@ public class MainFrame extends JFrame {
         transcriptArea.setLineWrap(true);
         transcriptArea.setWrapStyleWord(true);
         transcriptArea.setFont(new Font("Monospaced", Font.PLAIN, AppPreferences.getFontSize()));
-        transcriptArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
-            public void insertUpdate(javax.swing.event.DocumentEvent e) { updateStats(); hasUnsavedChanges = true; }
-            public void removeUpdate(javax.swing.event.DocumentEvent e) { updateStats(); hasUnsavedChanges = true; }
-            public void changedUpdate(javax.swing.event.DocumentEvent e) { updateStats(); }
-        });
 
         JScrollPane scrollPane = new JScrollPane(transcriptArea);
-        scrollPane.setBorder(BorderFactory.createTitledBorder("Transcript"));
-        centerPanel.add(scrollPane, BorderLayout.CENTER);
+        
+        // Transcript, the job queue, and one tab per opened job transcript
+        jobQueuePanel = new JobQueuePanel(jobQueue, this::openJobTranscript);
+        jobQueuePanel.setOnChange(this::updateQueueTabTitle);
+        tabs = new JTabbedPane();
+        tabs.setTabLayoutPolicy(JTabbedPane.SCROLL_TAB_LAYOUT);
+        tabs.putClientProperty(FlatClientProperties.TABBED_PANE_TAB_CLOSE_CALLBACK,
+                (BiConsumer<JTabbedPane, Integer>) JTabbedPane::removeTabAt);
+        tabs.addTab("Transcript", scrollPane);
+        tabs.addTab("Queue", jobQueuePanel);
+        centerPanel.add(tabs, BorderLayout.CENTER);
 
         content.add(centerPanel, BorderLayout.CENTER);
 
@@ -173,20 +227,29 @@ public class MainFrame extends JFrame {
         progressBar.setIndeterminate(true);
         progressBar.setString("Initializing model in background...");
         
-        modelLoadingThread = new Thread(() -> {
+        int generation = nextModelLoad();
+        modelLoading = TaskScheduler.getInstance().io().submit(() -> {
             try {
                 String modelPath = AppPreferences.getSelectedModel();
                 try {
-                    this.transcriber = new VoskTranscriber(modelPath);
+                    if (!installModel(generation, warmUpModel(modelPath))) {
+                        return; // Another model was picked while this one was loading
+                    }
+                } catch (InterruptedIOException e) {
+                    return; // Another model was picked while this one was loading
                 } catch (Exception e) {
+                    if (!isCurrentModelLoad(generation)) {
+                        return;
+                    }
                     // Try default model location
                     File modelDir = new File("models/vosk-model-small-en-us-0.15");
                     if (modelDir.exists()) {
-                        this.transcriber = new VoskTranscriber(modelDir.getAbsolutePath());
+                        if (!installModel(generation, warmUpModel(modelDir.getAbsolutePath()))) {
+                            return;
+                        }
                         AppPreferences.setSelectedModel(modelDir.getAbsolutePath());
                     } else {
                         // No model found
-                        this.transcriber = null;
                         SwingUtilities.invokeLater(() -> {
                             setStatus("No speech model found");
                             progressBar.setVisible(false);
@@ -204,11 +267,14 @@ public class MainFrame extends JFrame {
                 // Model loaded successfully
                 SwingUtilities.invokeLater(() -> {
                     modelReady = true;
-                    setStatus("Ready");
+                    showModelReady();
                     progressBar.setVisible(false);
                     updateButtonStates();
                 });
             } catch (Exception e) {
+                if (!isCurrentModelLoad(generation)) {
+                    return;
+                }
                 SwingUtilities.invokeLater(() -> {
                     setStatus("Error loading model");
                     progressBar.setVisible(false);
@@ -219,9 +285,76 @@ public class MainFrame extends JFrame {
                 });
                 e.printStackTrace();
             }
-        }, "ModelLoadingThread");
-        modelLoadingThread.setDaemon(true);
-        modelLoadingThread.start();
+        });
+    }
+    
+    /**
+     * Start a new model load, making any load still in progress stale.
+     */
+    private synchronized int nextModelLoad() {
+        return ++modelLoadGeneration;
+    }
+
+    private synchronized boolean isCurrentModelLoad(int generation) {
+        return generation == modelLoadGeneration;
+    }
+
+    /**
+     * Use a freshly loaded model, unless a newer load was started meanwhile: cancelling a load
+     * does not stop Vosk once it is constructing the model, so a stale lease is released here.
+     */
+    private synchronized boolean installModel(int generation, ModelPool.Lease lease) {
+        if (generation != modelLoadGeneration) {
+            lease.close();
+            return false;
+        }
+        if (transcriber != null) {
+            transcriber.switchModel(lease); // An older load finished just before this one started
+        } else {
+            transcriber = new VoskTranscriber(lease);
+        }
+        return true;
+    }
+
+    /**
+     * Load a model through {@link ModelWarmup}, showing which file is being read in the
+     * progress bar until the files are in the page cache and Vosk starts constructing it.
+     */
+    private ModelPool.Lease warmUpModel(String modelPath) throws IOException {
+        long[] shownBytes = {-1};
+        return ModelWarmup.acquire(Paths.get(modelPath), (file, fileRead, fileBytes, totalRead, totalBytes) -> {
+            String name = file.getFileName().toString();
+            SwingUtilities.invokeLater(() -> {
+                // Reports from the reading threads can arrive out of order
+                if (totalRead <= shownBytes[0]) {
+                    return;
+                }
+                shownBytes[0] = totalRead;
+                if (totalRead >= totalBytes) {
+                    progressBar.setIndeterminate(true);
+                    progressBar.setString("Initializing model...");
+                } else {
+                    progressBar.setIndeterminate(false);
+                    progressBar.setValue((int) (totalRead * 100 / totalBytes));
+                    progressBar.setString(String.format("Reading %s (%d%%), %d of %d MB",
+                            name, fileRead * 100 / Math.max(1, fileBytes), totalRead >> 20, totalBytes >> 20));
+                }
+            });
+        });
+    }
+    
+    /**
+     * Report the load metrics of the model just loaded, if it was loaded cold.
+     */
+    private void showModelReady() {
+        String modelPath = transcriber != null ? transcriber.getCurrentModelPath() : null;
+        ModelWarmup.Metrics metrics = modelPath != null ? ModelWarmup.getMetrics(Paths.get(modelPath)) : null;
+        if (metrics != null) {
+            setStatus(String.format("Ready (model loaded in %.1f s)", metrics.getTotalMillis() / 1000.0));
+            statusLabel.setToolTipText("Loaded " + metrics);
+        } else {
+            setStatus("Ready");
+        }
     }
 
     private JMenuBar createMenuBar() {
@@ -236,6 +369,10 @@ public class MainFrame extends JFrame {
         openItem.addActionListener(e -> browseForFile());
         fileMenu.add(openItem);
         
+        JMenuItem openTranscriptItem = new JMenuItem("Open Transcript Archive...");
+        openTranscriptItem.addActionListener(e -> openTranscriptArchive());
+        fileMenu.add(openTranscriptItem);
+        
         JMenu recentMenu = new JMenu("Recent Files");
         updateRecentFilesMenu(recentMenu);
         fileMenu.add(recentMenu);
@@ -254,12 +391,18 @@ public class MainFrame extends JFrame {
         exportVTT.addActionListener(e -> exportAs("vtt"));
         JMenuItem exportJSON = new JMenuItem("JSON");
         exportJSON.addActionListener(e -> exportAs("json"));
+        JMenuItem exportJSONL = new JMenuItem("JSON Lines");
+        exportJSONL.addActionListener(e -> exportAs("jsonl"));
         JMenuItem exportMD = new JMenuItem("Markdown");
         exportMD.addActionListener(e -> exportAs("md"));
+        JMenuItem exportArchive = new JMenuItem("Transcript Archive");
+        exportArchive.addActionListener(e -> exportAs(TranscriptArchive.EXTENSION));
         exportMenu.add(exportSRT);
         exportMenu.add(exportVTT);
         exportMenu.add(exportJSON);
+        exportMenu.add(exportJSONL);
         exportMenu.add(exportMD);
+        exportMenu.add(exportArchive);
         fileMenu.add(exportMenu);
         
         fileMenu.addSeparator();
@@ -315,6 +458,46 @@ public class MainFrame extends JFrame {
         
         menuBar.add(viewMenu);
         
+        // Transcription Menu
+        JMenu transcriptionMenu = new JMenu("Transcription");
+        transcriptionMenu.setMnemonic(KeyEvent.VK_T);
+        
+        parallelMenuItem = new JCheckBoxMenuItem("Use All CPU Cores");
+        parallelMenuItem.setToolTipText("Split long files into chunks and transcribe them in parallel");
+        parallelMenuItem.setSelected(AppPreferences.isParallelTranscription());
+        parallelMenuItem.addActionListener(e -> toggleParallelTranscription());
+        transcriptionMenu.add(parallelMenuItem);
+        
+        skipSilenceMenuItem = new JCheckBoxMenuItem("Skip Silence");
+        skipSilenceMenuItem.setToolTipText("Don't run the recognizer on silence and background noise; timestamps are unaffected");
+        skipSilenceMenuItem.setSelected(AppPreferences.isSkipSilence());
+        skipSilenceMenuItem.addActionListener(e -> toggleSkipSilence());
+        transcriptionMenu.add(skipSilenceMenuItem);
+        
+        cacheMenuItem = new JCheckBoxMenuItem("Reuse Previous Transcripts");
+        cacheMenuItem.setToolTipText("Load transcripts of files already transcribed with the same model from the cache");
+        cacheMenuItem.setSelected(AppPreferences.isUseTranscriptCache());
+        cacheMenuItem.addActionListener(e -> AppPreferences.setUseTranscriptCache(cacheMenuItem.isSelected()));
+        transcriptionMenu.add(cacheMenuItem);
+        
+        JMenuItem clearCacheItem = new JMenuItem("Clear Transcript Cache");
+        clearCacheItem.addActionListener(e -> clearTranscriptCache());
+        transcriptionMenu.add(clearCacheItem);
+        
+        transcriptionMenu.addSeparator();
+        
+        transcriptionMenu.add(createConcurrencyMenu());
+        transcriptionMenu.add(createAutoExportMenu());
+        
+        transcriptionMenu.addSeparator();
+        
+        liveMenuItem = new JMenuItem("Start Live Transcription");
+        liveMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_L, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        liveMenuItem.addActionListener(e -> toggleLiveTranscription());
+        transcriptionMenu.add(liveMenuItem);
+        
+        menuBar.add(transcriptionMenu);
+        
         // Models Menu
         JMenu modelsMenu = new JMenu("Models");
         modelsMenu.setMnemonic(KeyEvent.VK_M);
@@ -333,18 +516,93 @@ public class MainFrame extends JFrame {
         return menuBar;
     }
 
+    private JMenu createConcurrencyMenu() {
+        JMenu menu = new JMenu("Concurrent Jobs");
+        menu.setToolTipText("Number of queued files transcribed at the same time");
+        ButtonGroup group = new ButtonGroup();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int selected = AppPreferences.getQueueConcurrency();
+        
+        for (int n = 1; n <= cores; n++) {
+            if (n > 4 && n % 4 != 0 && n != cores && n != selected) {
+                continue;
+            }
+            int concurrency = n;
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(String.valueOf(n));
+            item.setSelected(n == selected);
+            item.addActionListener(e -> {
+                AppPreferences.setQueueConcurrency(concurrency);
+                jobQueue.setConcurrency(concurrency);
+                setStatus(String.format("Up to %d queued file%s at a time", concurrency, concurrency == 1 ? "" : "s"));
+            });
+            group.add(item);
+            menu.add(item);
+        }
+        return menu;
+    }
+    
+    private JMenu createAutoExportMenu() {
+        JMenu menu = new JMenu("Auto-Export Queued Transcripts");
+        ButtonGroup group = new ButtonGroup();
+        String selected = AppPreferences.getAutoExportFormat();
+        String[][] formats = {
+            {null, "Off"}, {"txt", "Text"}, {"md", "Markdown"}, {"srt", "Subtitle (SRT)"}, {"vtt", "WebVTT"}, {"json", "JSON"}, {"jsonl", "JSON Lines"},
+            {TranscriptArchive.EXTENSION, "Transcript Archive"}
+        };
+        
+        for (String[] format : formats) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(format[1]);
+            item.setSelected(Objects.equals(format[0], selected));
+            item.addActionListener(e -> {
+                AppPreferences.setAutoExportFormat(format[0]);
+                jobQueue.setExportFormat(format[0]);
+                setStatus(format[0] == null ? "Queued transcripts won't be exported" : "Queued transcripts will be exported as " + format[1]);
+            });
+            group.add(item);
+            menu.add(item);
+        }
+        
+        menu.addSeparator();
+        JMenuItem folderItem = new JMenuItem("Export Folder...");
+        folderItem.addActionListener(e -> chooseAutoExportFolder());
+        menu.add(folderItem);
+        return menu;
+    }
+    
+    private void chooseAutoExportFolder() {
+        File current = jobQueue.getExportDirectory();
+        JFileChooser chooser = new JFileChooser(current != null ? current.getPath() : AppPreferences.getLastSaveDir());
+        chooser.setDialogTitle("Export Folder (Cancel to use each audio file's folder)");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        
+        if (chooser.showDialog(this, "Use Folder") == JFileChooser.APPROVE_OPTION) {
+            File folder = chooser.getSelectedFile();
+            AppPreferences.setAutoExportDir(folder.getAbsolutePath());
+            jobQueue.setExportDirectory(folder);
+            setStatus("Queued transcripts will be exported to " + folder.getPath());
+        } else {
+            AppPreferences.setAutoExportDir(null);
+            jobQueue.setExportDirectory(null);
+            setStatus("Queued transcripts will be exported next to their audio files");
+        }
+    }
+
     private JPanel createDropPanel() {
         JPanel panel = new JPanel(new BorderLayout(8, 8));
         panel.setBorder(BorderFactory.createTitledBorder("Select or drag & drop audio file"));
         panel.setPreferredSize(new Dimension(200, 100));
         
-        JLabel dropLabel = new JLabel("<html><center>Drag & drop an audio file<br><small>WAV, MP3, M4A, FLAC, OGG, AAC, WMA, OPUS</small></center></html>", SwingConstants.CENTER);
+        JLabel dropLabel = new JLabel("<html><center>Drag & drop an audio file, or several to queue them<br><small>WAV, MP3, M4A, FLAC, OGG, AAC, WMA, OPUS</small></center></html>", SwingConstants.CENTER);
         panel.add(dropLabel, BorderLayout.CENTER);
         
         browseButton = new JButton("Browse Files...");
         browseButton.addActionListener(e -> browseForFile());
+        liveButton = new JButton("Start Live");
+        liveButton.setToolTipText("Transcribe from the microphone (Cmd/Ctrl+L)");
+        liveButton.addActionListener(e -> toggleLiveTranscription());
         JPanel buttonPanel = new JPanel();
         buttonPanel.add(browseButton);
+        buttonPanel.add(liveButton);
         panel.add(buttonPanel, BorderLayout.SOUTH);
 
         panel.setTransferHandler(new TransferHandler() {
@@ -362,11 +620,9 @@ public class MainFrame extends JFrame {
             public boolean importData(TransferSupport support) {
                 panel.setBackground(null);
                 try {
-                    List<File> files = (List<File>) support.getTransferable()
+                    List<File> dropped = (List<File>) support.getTransferable()
                             .getTransferData(DataFlavor.javaFileListFlavor);
-                    if (!files.isEmpty()) {
-                        startTranscription(files.get(0));
-                    }
+                    openFiles(dropped);
                     return true;
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -402,17 +658,107 @@ public class MainFrame extends JFrame {
 
     private void browseForFile() {
         JFileChooser fileChooser = new JFileChooser(AppPreferences.getLastOpenDir());
-        fileChooser.setDialogTitle("Select Audio File");
+        fileChooser.setDialogTitle("Select Audio Files");
+        fileChooser.setMultiSelectionEnabled(true);
         fileChooser.setFileFilter(new FileNameExtensionFilter(
             "Audio Files (*.wav, *.mp3, *.m4a, *.flac, *.ogg, *.aac, *.wma, *.opus)",
             "wav", "mp3", "m4a", "flac", "ogg", "aac", "wma", "opus"));
         
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            File selected = fileChooser.getSelectedFile();
-            AppPreferences.setLastOpenDir(selected.getParent());
-            startTranscription(selected);
+            File[] selected = fileChooser.getSelectedFiles();
+            AppPreferences.setLastOpenDir(selected[0].getParent());
+            openFiles(List.of(selected));
+        }
+    }
+    
+    /**
+     * Transcribe a single file in the transcript tab, or queue several (or one while
+     * another transcription is running). Folders contribute the audio files in them.
+     */
+    private void openFiles(List<File> selection) {
+        List<File> files = new ArrayList<>();
+        for (File file : selection) {
+            File[] children = file.isDirectory() ? file.listFiles() : new File[] {file};
+            if (children == null) {
+                continue;
+            }
+            for (File child : children) {
+                if (child.isFile() && VoskTranscriber.isSupportedAudioFile(child.getName())) {
+                    files.add(child);
+                }
+            }
+        }
+        Collections.sort(files);
+        
+        if (files.isEmpty()) {
+            setStatus("No supported audio files selected");
+        } else if (files.size() == 1 && currentWorker == null && liveTranscriber == null) {
+            startTranscription(files.get(0));
+        } else {
+            enqueueFiles(files);
+        }
+    }
+    
+    private void enqueueFiles(List<File> files) {
+        if (!modelReady || transcriber == null || transcriber.getCurrentModelPath() == null) {
+            JOptionPane.showMessageDialog(this,
+                    "Model is still loading. Please wait...",
+                    "Model Loading",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
+        
+        for (File file : files) {
+            jobQueue.submit(file, Paths.get(transcriber.getCurrentModelPath()));
+            AppPreferences.addRecentFile(file.getAbsolutePath());
+        }
+        updateRecentFilesMenu(null);
+        tabs.setSelectedComponent(jobQueuePanel);
+        setStatus(String.format("Queued %d file%s", files.size(), files.size() == 1 ? "" : "s"));
+    }
+    
+    private void updateQueueTabTitle() {
+        int unfinished = jobQueue.getUnfinishedCount();
+        int index = tabs.indexOfComponent(jobQueuePanel);
+        tabs.setTitleAt(index, unfinished > 0
+                ? String.format("Queue (%d left)", unfinished)
+                : jobQueuePanel.getJobCount() > 0 ? String.format("Queue (%d)", jobQueuePanel.getJobCount()) : "Queue");
+    }
+    
+    /**
+     * Show a finished job's transcript in its own closable tab.
+     */
+    private void openJobTranscript(TranscriptionJob job) {
+        for (int i = 0; i < tabs.getTabCount(); i++) {
+            if (tabs.getComponentAt(i) instanceof JComponent tab && tab.getClientProperty(TranscriptionJob.class) == job) {
+                tabs.setSelectedIndex(i);
+                return;
+            }
+        }
+        
+        boolean showTimestamps = AppPreferences.isShowTimestamps();
+        StringBuilder text = new StringBuilder();
+        for (TranscriptSegment segment : job.getSegments()) {
+            if (showTimestamps) {
+                text.append('[').append(formatTimestamp(segment.startTimeMs)).append("] ");
+            }
+            text.append(segment.text).append('\n');
+        }
+        
+        JTextArea area = new JTextArea(text.toString());
+        area.setEditable(false);
+        area.setLineWrap(true);
+        area.setWrapStyleWord(true);
+        area.setFont(transcriptArea.getFont());
+        area.setCaretPosition(0);
+        
+        JScrollPane tab = new JScrollPane(area);
+        tab.putClientProperty(TranscriptionJob.class, job);
+        tab.putClientProperty(FlatClientProperties.TABBED_PANE_TAB_CLOSABLE, true);
+        tabs.addTab(job.getAudioFile().getName(), tab);
+        tabs.setToolTipTextAt(tabs.getTabCount() - 1, job.getAudioFile().getPath());
+        tabs.setSelectedComponent(tab);
     }
 
     private void startTranscription(File audioFile) {
@@ -424,11 +770,9 @@ public class MainFrame extends JFrame {
             return;
         }
         
-        if (currentWorker != null && !currentWorker.isDone()) {
-            JOptionPane.showMessageDialog(this,
-                "A transcription is already in progress. Please wait or cancel it first.",
-                "Busy",
-                JOptionPane.WARNING_MESSAGE);
+        if ((currentWorker != null && !currentWorker.isDone()) || liveTranscriber != null) {
+            // Busy: run it through the queue instead
+            enqueueFiles(List.of(audioFile));
             return;
         }
         
@@ -437,10 +781,14 @@ public class MainFrame extends JFrame {
         updateRecentFilesMenu(null);
         
         transcriptArea.setText("");
+        transcript.clear();
         hasUnsavedChanges = false;
+        tabs.setSelectedIndex(0);
         
         // Display audio info
         AudioInfo info = AudioInfo.from(audioFile);
+        currentAudioDurationMs = info.getDurationMillis();
+        updateStats();
         audioInfoLabel.setText(String.format("%s | Duration: %s | Est. time: ~%ds",
             info.toString(),
             info.getFormattedDuration(),
@@ -452,39 +800,37 @@ public class MainFrame extends JFrame {
         progressBar.setString("Converting audio...");
         
         transcriptionStartTime = System.currentTimeMillis();
+        transcriber.setParallelism(AppPreferences.isParallelTranscription()
+                ? Runtime.getRuntime().availableProcessors() : 1);
+        transcriber.setVoiceActivityDetector(AppPreferences.isSkipSilence()
+                ? new EnergyVoiceActivityDetector() : null);
+        transcriber.setTranscriptCache(AppPreferences.isUseTranscriptCache()
+                ? TranscriptCache.getInstance() : null);
+        lastProgress = null;
+        transcriber.setProgressListener(progress -> SwingUtilities.invokeLater(() -> showProgress(progress)));
         updateButtonStates();
 
         currentWorker = new SwingWorker<>() {
             @Override
             protected Void doInBackground() throws Exception {
-                transcriber.transcribeFile(audioFile, partial -> {
+                transcriber.transcribeFile(audioFile, segment -> {
                     // Check if cancellation was requested
                     if (isCancelled() || Thread.currentThread().isInterrupted()) {
                         return; // Stop processing
                     }
                     
-                    SwingUtilities.invokeLater(() -> {
-                        progressBar.setIndeterminate(false);
-                        progressBar.setString("Transcribing...");
-                    });
-                    
-                    String text = partial;
-                    if (AppPreferences.isShowTimestamps()) {
-                        long elapsed = System.currentTimeMillis() - transcriptionStartTime;
-                        text = String.format("[%s] %s", formatTimestamp(elapsed), partial);
-                    }
-                    publish(text);
+                    publish(segment);
                 });
                 return null;
             }
 
             @Override
-            protected void process(List<String> chunks) {
-                for (String chunk : chunks) {
-                    transcriptArea.append(chunk + "\n");
+            protected void process(List<TranscriptSegment> chunks) {
+                boolean showTimestamps = AppPreferences.isShowTimestamps();
+                for (TranscriptSegment segment : chunks) {
+                    appendSegment(segment, showTimestamps);
                 }
-                int progress = Math.min(90, transcriptArea.getText().length() / 10);
-                progressBar.setValue(progress);
+                updateStats();
             }
 
             @Override
@@ -499,7 +845,15 @@ public class MainFrame extends JFrame {
                         progressBar.setValue(100);
                         progressBar.setString("Complete");
                         long elapsed = System.currentTimeMillis() - transcriptionStartTime;
-                        setStatus(String.format("Done in %d seconds", elapsed / 1000));
+                        if (lastProgress != null
+                                && lastProgress.getAudioMillis() - lastProgress.getStartAudioMillis() >= MIN_AUDIO_FOR_RTF_MS) {
+                            // Remembered for the next file's time estimate
+                            double rtf = lastProgress.getAverageRealTimeFactor();
+                            AppPreferences.setRealTimeFactor(rtf);
+                            setStatus(String.format("Done in %d seconds (%.2fx real time)", elapsed / 1000, rtf));
+                        } else {
+                            setStatus(String.format("Done in %d seconds", elapsed / 1000));
+                        }
                     } catch (java.util.concurrent.CancellationException e) {
                         setStatus("Cancelled by user");
                     } catch (Exception e) {
@@ -511,7 +865,9 @@ public class MainFrame extends JFrame {
                             setStatus("Cancelled by user");
                         } else {
                             setStatus("Error: " + errorMsg);
+                            transcript.clear();
                             transcriptArea.setText("Transcription failed:\n" + errorMsg);
+                            updateStats();
                             e.printStackTrace();
                         }
                     }
@@ -522,11 +878,165 @@ public class MainFrame extends JFrame {
             }
         };
 
-        currentWorker.execute();
+        // Not SwingWorker's own pool: the worker reads the decoder's output and waits on
+        // recognition, which runs on the CPU pool
+        TaskScheduler.getInstance().io().execute(currentWorker);
+    }
+
+    /**
+     * Show how much of the audio has been transcribed, the speed and the time left.
+     */
+    private void showProgress(TranscriptionProgress progress) {
+        if (currentWorker == null) {
+            return; // Late report from a finished or cancelled run
+        }
+        lastProgress = progress;
+        
+        double fraction = progress.getFraction();
+        StringBuilder text = new StringBuilder();
+        if (fraction >= 0) {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue((int) (fraction * 100));
+            text.append(Math.round(fraction * 100)).append('%');
+        } else {
+            text.append(TranscriptionProgress.formatDuration(progress.getAudioMillis())).append(" transcribed");
+        }
+        if (!Double.isNaN(progress.getRealTimeFactor())) {
+            text.append(String.format(" | %.2fx real time", progress.getRealTimeFactor()));
+        }
+        long eta = progress.getEtaMillis();
+        if (eta >= 0 && !progress.isDone()) {
+            text.append(" | ").append(TranscriptionProgress.formatDuration(eta)).append(" left");
+        }
+        progressBar.setString(text.toString());
+    }
+
+    private void toggleLiveTranscription() {
+        if (liveTranscriber != null) {
+            setStatus("Stopping live transcription...");
+            liveTranscriber.stop();
+            return;
+        }
+        
+        if (!modelReady || transcriber == null) {
+            JOptionPane.showMessageDialog(this,
+                    "Model is still loading. Please wait...",
+                    "Model Loading",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        if (!MicrophoneLine.isSupported()) {
+            JOptionPane.showMessageDialog(this,
+                    "No microphone supporting 16 kHz mono recording was found.",
+                    "Microphone Unavailable",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        startLiveTranscription(new MicrophoneLine());
+    }
+    
+    private void startLiveTranscription(AudioLine line) {
+        transcriptArea.setText("");
+        transcript.clear();
+        partialStart = -1;
+        currentAudioFile = null;
+        currentAudioDurationMs = 0;
+        hasUnsavedChanges = false;
+        updateStats();
+        audioInfoLabel.setText("Live: " + line.getName() + " | 16 kHz mono");
+        
+        LiveTranscriber live = new LiveTranscriber(transcriber.getModel());
+        try {
+            live.start(line, new LiveTranscriber.Listener() {
+                @Override
+                public void onPartial(String text) {
+                    SwingUtilities.invokeLater(() -> showPartial(text));
+                }
+                
+                @Override
+                public void onSegment(TranscriptSegment segment) {
+                    SwingUtilities.invokeLater(() -> commitLiveSegment(segment));
+                }
+                
+                @Override
+                public void onError(Exception e) {
+                    SwingUtilities.invokeLater(() -> setStatus("Live transcription failed: " + e.getMessage()));
+                    e.printStackTrace();
+                }
+                
+                @Override
+                public void onStopped() {
+                    SwingUtilities.invokeLater(() -> {
+                        showPartial("");
+                        liveTranscriber = null;
+                        long dropped = live.getDroppedBytes();
+                        if (!statusLabel.getText().startsWith("Live transcription failed")) {
+                            setStatus(dropped > 0
+                                    ? String.format("Live transcription stopped (%.1f s of audio dropped)", dropped / 32000.0)
+                                    : "Live transcription stopped");
+                        }
+                        updateButtonStates();
+                    });
+                }
+            });
+        } catch (IOException e) {
+            line.close();
+            JOptionPane.showMessageDialog(this,
+                    "Could not start live transcription:\n" + e.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        liveTranscriber = live;
+        setStatus("Listening...");
+        updateButtonStates();
+    }
+    
+    /**
+     * Replace the live partial line at the end of the transcript.
+     */
+    private void showPartial(String text) {
+        Document document = transcriptArea.getDocument();
+        try {
+            if (partialStart >= 0) {
+                document.remove(partialStart, document.getLength() - partialStart);
+            }
+            if (text.isEmpty()) {
+                partialStart = -1;
+            } else {
+                partialStart = document.getLength();
+                document.insertString(partialStart, text, null);
+            }
+        } catch (BadLocationException e) {
+            partialStart = -1;
+        }
+    }
+    
+    private void commitLiveSegment(TranscriptSegment segment) {
+        showPartial("");
+        appendSegment(segment, AppPreferences.isShowTimestamps());
+        updateStats();
+        updateButtonStates();
+    }
+    
+    /**
+     * Add a recognized segment to the transcript model and the text area.
+     */
+    private void appendSegment(TranscriptSegment segment, boolean showTimestamps) {
+        // Timestamps are positions in the audio, not processing time
+        String line = showTimestamps
+                ? String.format("[%s] %s", formatTimestamp(segment.startTimeMs), segment.text)
+                : segment.text;
+        transcript.append(segment, line);
+        transcriptArea.append(line + "\n");
+        hasUnsavedChanges = true;
     }
 
     private void copyToClipboard() {
-        String text = transcriptArea.getText();
+        String text = transcript.getText();
         if (text.isEmpty()) {
             JOptionPane.showMessageDialog(this,
                 "No text to copy",
@@ -543,7 +1053,7 @@ public class MainFrame extends JFrame {
     }
 
     private void saveTranscript() {
-        String text = transcriptArea.getText();
+        String text = transcript.getText();
         if (text.isEmpty()) {
             JOptionPane.showMessageDialog(this,
                 "No transcript to save",
@@ -576,7 +1086,7 @@ public class MainFrame extends JFrame {
     }
 
     private void exportAs(String format) {
-        String text = transcriptArea.getText();
+        String text = transcript.getText();
         if (text.isEmpty()) {
             JOptionPane.showMessageDialog(this,
                 "No transcript to export",
@@ -585,13 +1095,23 @@ public class MainFrame extends JFrame {
             return;
         }
         
+        if (!format.equals("md") && transcript.getSegments().isEmpty()) {
+            JOptionPane.showMessageDialog(this,
+                "Timed exports (SRT/VTT/JSON) need a transcript produced in this session.",
+                "Info",
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
         String filterDesc = "";
         String ext = "";
         switch (format) {
             case "srt": filterDesc = "SubRip Subtitle (*.srt)"; ext = "srt"; break;
             case "vtt": filterDesc = "WebVTT (*.vtt)"; ext = "vtt"; break;
             case "json": filterDesc = "JSON (*.json)"; ext = "json"; break;
+            case "jsonl": filterDesc = "JSON Lines (*.jsonl)"; ext = "jsonl"; break;
             case "md": filterDesc = "Markdown (*.md)"; ext = "md"; break;
+            case TranscriptArchive.EXTENSION: filterDesc = "Transcript Archive (*.jvt)"; ext = TranscriptArchive.EXTENSION; break;
         }
         
         JFileChooser fileChooser = new JFileChooser(AppPreferences.getLastSaveDir());
@@ -608,12 +1128,9 @@ public class MainFrame extends JFrame {
                 if (format.equals("md")) {
                     TranscriptExporter.exportAsMarkdown(text, file);
                 } else {
-                    // For formats requiring segments, create simple segments from lines
-                    JOptionPane.showMessageDialog(this,
-                        "Timed exports (SRT/VTT/JSON) require timestamp data.\nSaving as plain text in this format.",
-                        "Info",
-                        JOptionPane.INFORMATION_MESSAGE);
-                    TranscriptExporter.exportAsText(text, file);
+                    String modelPath = transcriber != null ? transcriber.getCurrentModelPath() : null;
+                    TranscriptExporter.export(transcript.getSegments(), format, file, TranscriptExporter.metadata(
+                            modelPath != null ? Paths.get(modelPath).getFileName().toString() : null, currentAudioFile));
                 }
                 setStatus("Exported: " + file.getName());
             } catch (Exception e) {
@@ -625,8 +1142,82 @@ public class MainFrame extends JFrame {
         }
     }
 
+    /**
+     * Show a transcript saved as a {@link TranscriptArchive} in the transcript tab, from
+     * where it can be exported to the other formats.
+     */
+    private void openTranscriptArchive() {
+        if ((currentWorker != null && !currentWorker.isDone()) || liveTranscriber != null) {
+            JOptionPane.showMessageDialog(this,
+                "Wait for the current transcription to finish first.",
+                "Info",
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (!transcript.isEmpty() && hasUnsavedChanges) {
+            int result = JOptionPane.showConfirmDialog(this,
+                "You have unsaved changes. Replace the transcript anyway?",
+                "Confirm Open",
+                JOptionPane.YES_NO_OPTION);
+            if (result != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+        
+        JFileChooser fileChooser = new JFileChooser(AppPreferences.getLastOpenDir());
+        fileChooser.setDialogTitle("Open Transcript Archive");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Transcript Archive (*.jvt)", TranscriptArchive.EXTENSION));
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        AppPreferences.setLastOpenDir(file.getParent());
+        
+        long start = System.currentTimeMillis();
+        List<TranscriptSegment> segments;
+        String audioName;
+        long endTimeMs;
+        try {
+            TranscriptArchive.Reader reader = TranscriptArchive.Reader.open(file);
+            segments = reader.readAll();
+            audioName = reader.getMetadata().get("audio");
+            endTimeMs = reader.getEndTimeMs();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Failed to open transcript:\n" + e.getMessage(),
+                "Open Error",
+                JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        // One setText rather than an append per segment keeps long transcripts instant
+        boolean showTimestamps = AppPreferences.isShowTimestamps();
+        transcript.clear();
+        StringBuilder text = new StringBuilder();
+        for (TranscriptSegment segment : segments) {
+            String line = showTimestamps
+                    ? "[" + formatTimestamp(segment.startTimeMs) + "] " + segment.text
+                    : segment.text;
+            transcript.append(segment, line);
+            text.append(line).append('\n');
+        }
+        transcriptArea.setText(text.toString());
+        transcriptArea.setCaretPosition(0);
+        partialStart = -1;
+        
+        currentAudioFile = null;
+        currentAudioDurationMs = endTimeMs;
+        audioInfoLabel.setText(audioName != null ? audioName : file.getName());
+        hasUnsavedChanges = false;
+        updateStats();
+        updateButtonStates();
+        tabs.setSelectedIndex(0);
+        setStatus(String.format("Opened %s: %d segments in %d ms",
+                file.getName(), segments.size(), System.currentTimeMillis() - start));
+    }
+
     private void clearTranscript() {
-        if (!transcriptArea.getText().isEmpty() && hasUnsavedChanges) {
+        if (!transcript.isEmpty() && hasUnsavedChanges) {
             int result = JOptionPane.showConfirmDialog(this,
                 "You have unsaved changes. Clear anyway?",
                 "Confirm Clear",
@@ -638,9 +1229,13 @@ public class MainFrame extends JFrame {
         }
         
         transcriptArea.setText("");
-        audioInfoLabel.setText("No file selected");
+        transcript.clear();
+        partialStart = -1;
+        audioInfoLabel.setText(liveTranscriber != null ? audioInfoLabel.getText() : "No file selected");
         currentAudioFile = null;
+        currentAudioDurationMs = 0;
         hasUnsavedChanges = false;
+        updateStats();
         setStatus("Ready");
         updateButtonStates();
     }
@@ -670,6 +1265,34 @@ public class MainFrame extends JFrame {
         setStatus(show ? "Timestamps enabled for next transcription" : "Timestamps disabled");
     }
 
+    private void toggleParallelTranscription() {
+        boolean parallel = parallelMenuItem.isSelected();
+        AppPreferences.setParallelTranscription(parallel);
+        setStatus(parallel
+                ? String.format("Parallel transcription enabled (%d cores)", Runtime.getRuntime().availableProcessors())
+                : "Parallel transcription disabled");
+    }
+
+    private void toggleSkipSilence() {
+        boolean skip = skipSilenceMenuItem.isSelected();
+        AppPreferences.setSkipSilence(skip);
+        setStatus(skip ? "Silence will be skipped in the next transcription" : "All audio will be transcribed");
+    }
+
+    private void clearTranscriptCache() {
+        TranscriptCache cache = TranscriptCache.getInstance();
+        try {
+            long size = cache.getSizeBytes();
+            cache.clear();
+            setStatus(String.format("Cleared transcript cache (%.1f MB)", size / (1024.0 * 1024.0)));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Failed to clear the transcript cache:\n" + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     private void changeFontSize(int delta) {
         int currentSize = AppPreferences.getFontSize();
         int newSize = Math.max(8, Math.min(32, currentSize + delta));
@@ -678,26 +1301,19 @@ public class MainFrame extends JFrame {
     }
 
     private void updateStats() {
-        String text = transcriptArea.getText();
-        int chars = text.length();
-        int words = text.trim().isEmpty() ? 0 : text.trim().split("\\s+").length;
+        long words = transcript.getWordCount();
+        String stats = String.format("Words: %d | Characters: %d", words, transcript.getCharacterCount());
         
-        String stats = String.format("Words: %d | Characters: %d", words, chars);
-        
-        if (currentAudioFile != null) {
-            AudioInfo info = AudioInfo.from(currentAudioFile);
-            long duration = info.getDurationSeconds();
-            if (duration > 0 && words > 0) {
-                double wpm = (words / (duration / 60.0));
-                stats += String.format(" | WPM: %.1f", wpm);
-            }
+        if (currentAudioDurationMs > 0 && words > 0) {
+            double wpm = words / (currentAudioDurationMs / 60000.0);
+            stats += String.format(" | WPM: %.1f", wpm);
         }
         
         statsLabel.setText(stats);
     }
 
     private void updateButtonStates() {
-        boolean hasText = !transcriptArea.getText().isEmpty();
+        boolean hasText = !transcript.isEmpty();
         
         copyButton.setEnabled(hasText);
         saveButton.setEnabled(hasText);
@@ -705,7 +1321,18 @@ public class MainFrame extends JFrame {
         
         // Disable browse button while model is loading or transcribing
         if (browseButton != null) {
-            browseButton.setEnabled(modelReady && currentWorker == null);
+            browseButton.setEnabled(modelReady && currentWorker == null && liveTranscriber == null);
+        }
+        
+        boolean live = liveTranscriber != null;
+        boolean canToggleLive = live || (modelReady && currentWorker == null);
+        if (liveButton != null) {
+            liveButton.setText(live ? "Stop Live" : "Start Live");
+            liveButton.setEnabled(canToggleLive);
+        }
+        if (liveMenuItem != null) {
+            liveMenuItem.setText(live ? "Stop Live Transcription" : "Start Live Transcription");
+            liveMenuItem.setEnabled(canToggleLive);
         }
     }
 
@@ -759,6 +1386,21 @@ public class MainFrame extends JFrame {
             }
         }
         
+        int unfinished = jobQueue.getUnfinishedCount();
+        if (unfinished > 0) {
+            int result = JOptionPane.showConfirmDialog(this,
+                String.format("%d queued transcription%s not finished yet. Exit anyway?", unfinished, unfinished == 1 ? " is" : "s are"),
+                "Confirm Exit",
+                JOptionPane.YES_NO_OPTION);
+            
+            if (result != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+        jobQueue.shutdownNow();
+        // Lets cancelled downloads record how far they got
+        TaskScheduler.getInstance().shutdown(1, TimeUnit.SECONDS);
+        
         dispose();
         System.exit(0);
     }
@@ -833,9 +1475,9 @@ public class MainFrame extends JFrame {
         
         // If transcriber is null (still loading or not yet created), load asynchronously
         if (transcriber == null) {
-            // Cancel any existing loading thread
-            if (modelLoadingThread != null && modelLoadingThread.isAlive()) {
-                modelLoadingThread.interrupt();
+            // Cancel any load still in progress
+            if (modelLoading != null) {
+                modelLoading.cancel(true);
             }
             
             setStatus("Loading model: " + model.getName());
@@ -845,14 +1487,17 @@ public class MainFrame extends JFrame {
             modelReady = false;
             updateButtonStates();
             
-            modelLoadingThread = new Thread(() -> {
+            int generation = nextModelLoad();
+            modelLoading = TaskScheduler.getInstance().io().submit(() -> {
                 try {
-                    this.transcriber = new VoskTranscriber(modelPath);
+                    if (!installModel(generation, warmUpModel(modelPath))) {
+                        return; // Superseded by a later pick
+                    }
                     AppPreferences.setSelectedModel(modelPath);
                     
                     SwingUtilities.invokeLater(() -> {
                         modelReady = true;
-                        setStatus("Ready");
+                        showModelReady();
                         progressBar.setVisible(false);
                         updateButtonStates();
                         
@@ -862,6 +1507,9 @@ public class MainFrame extends JFrame {
                                 JOptionPane.INFORMATION_MESSAGE);
                     });
                 } catch (Exception e) {
+                    if (!isCurrentModelLoad(generation)) {
+                        return;
+                    }
                     SwingUtilities.invokeLater(() -> {
                         setStatus("Error loading model");
                         progressBar.setVisible(false);
@@ -872,9 +1520,7 @@ public class MainFrame extends JFrame {
                     });
                     e.printStackTrace();
                 }
-            }, "ModelLoadingThread");
-            modelLoadingThread.setDaemon(true);
-            modelLoadingThread.start();
+            });
         } else {
             // Transcriber exists, switch model synchronously (fast operation)
             try {
@@ -883,8 +1529,7 @@ public class MainFrame extends JFrame {
                 progressBar.setIndeterminate(true);
                 progressBar.setString("Switching model...");
                 
-                org.vosk.Model voskModel = modelManager.loadModel(model.getName());
-                transcriber.switchModel(voskModel);
+                transcriber.switchModel(modelManager.acquireModel(model.getName()));
                 AppPreferences.setSelectedModel(modelPath);
                 
                 setStatus("Ready");
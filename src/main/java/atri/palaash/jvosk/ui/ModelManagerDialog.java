@@ -4,6 +4,7 @@ import atri.palaash.jvosk.models.DownloadManager;
 import atri.palaash.jvosk.models.ModelManager;
 import atri.palaash.jvosk.models.VoskModel;
 import atri.palaash.jvosk.util.NetworkUtils;
+import atri.palaash.jvosk.util.TaskScheduler;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -11,7 +12,9 @@ import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
 import java.io.IOException;
+import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -160,36 +163,69 @@ public class ModelManagerDialog extends JDialog {
     }
     
     private void loadModels(boolean forceRefresh) {
-        // Check internet connectivity first
-        if (!NetworkUtils.isInternetAvailable()) {
-            statusLabel.setText("No internet connection - offline mode");
-            loadModelsOffline();
-            return;
+        // Show the last known list straight away, then refresh it in the background
+        List<VoskModel> cached = modelManager.getCachedAvailableModels();
+        boolean showingCached = !cached.isEmpty();
+        
+        if (showingCached) {
+            showModels(cached);
+            statusLabel.setText(String.format("Found %d models (%d installed) - updating...",
+                    cached.size(),
+                    cached.stream().filter(VoskModel::isInstalled).count()));
+        } else {
+            statusLabel.setText("Loading models...");
+            setButtonsEnabled(false);
         }
         
-        statusLabel.setText("Loading models...");
-        setButtonsEnabled(false);
-        
         CompletableFuture.runAsync(() -> {
             try {
-                List<VoskModel> models = modelManager.getAvailableModels();
+                List<VoskModel> models = modelManager.getAvailableModels(forceRefresh);
                 
                 SwingUtilities.invokeLater(() -> {
-                    tableModel.setModels(models);
+                    showModels(models);
                     statusLabel.setText(String.format("Found %d models (%d installed)", 
                             models.size(), 
                             models.stream().filter(VoskModel::isInstalled).count()));
-                    setButtonsEnabled(true);
+                    if (!showingCached) {
+                        setButtonsEnabled(true);
+                    }
                 });
                 
             } catch (IOException e) {
+                boolean online = !NetworkUtils.isUnreachable(e);
+                
                 SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("Failed to load models");
-                    loadModelsOffline();
-                    setButtonsEnabled(true);
+                    if (showingCached) {
+                        String fetched = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT)
+                                .format(new Date(modelManager.getRegistrySnapshotTime()));
+                        statusLabel.setText((online ? "Failed to refresh models" : "Offline")
+                                + " - showing model list from " + fetched);
+                    } else {
+                        loadModelsOffline();
+                        setButtonsEnabled(true);
+                    }
                 });
             }
-        });
+        }, TaskScheduler.getInstance().io());
+    }
+    
+    /**
+     * Replace the table contents, keeping the selected model selected.
+     */
+    private void showModels(List<VoskModel> models) {
+        int selectedRow = modelTable.getSelectedRow();
+        String selectedName = selectedRow >= 0 ? tableModel.getModel(selectedRow).getName() : null;
+        
+        tableModel.setModels(models);
+        
+        if (selectedName != null) {
+            for (int row = 0; row < models.size(); row++) {
+                if (models.get(row).getName().equals(selectedName)) {
+                    modelTable.setRowSelectionInterval(row, row);
+                    break;
+                }
+            }
+        }
     }
     
     /**
@@ -256,7 +292,7 @@ public class ModelManagerDialog extends JDialog {
                             JOptionPane.ERROR_MESSAGE);
                 });
             }
-        });
+        }, TaskScheduler.getInstance().io());
     }
     
     private void downloadSelectedModel() {
@@ -292,7 +328,8 @@ public class ModelManagerDialog extends JDialog {
         downloadProgress.setVisible(true);
         downloadProgress.setValue(0);
         cancelDownloadButton.setVisible(true);
-        statusLabel.setText("Downloading " + model.getName() + "...");
+        statusLabel.setText((modelManager.hasPartialDownload(model.getName()) ? "Resuming download of " : "Downloading ")
+                + model.getName() + "...");
         
         // Create the CompletableFuture first, then start the async task
         CompletableFuture<Void> downloadTask = new CompletableFuture<>();
@@ -335,7 +372,9 @@ public class ModelManagerDialog extends JDialog {
                     
                     // Check if it was user cancellation
                     if (e.getMessage() != null && e.getMessage().contains("cancelled")) {
-                        statusLabel.setText("Download cancelled");
+                        statusLabel.setText(modelManager.hasPartialDownload(model.getName())
+                                ? "Download cancelled - it will resume from where it stopped"
+                                : "Download cancelled");
                     } else {
                         statusLabel.setText("Download failed");
                         JOptionPane.showMessageDialog(this,
@@ -347,7 +386,7 @@ public class ModelManagerDialog extends JDialog {
                     setButtonsEnabled(true);
                 });
             }
-        });
+        }, TaskScheduler.getInstance().io());
     }
     
     private void deleteSelectedModel() {
@@ -395,7 +434,7 @@ public class ModelManagerDialog extends JDialog {
         if (DownloadManager.getInstance().hasActiveDownload()) {
             int result = JOptionPane.showConfirmDialog(this,
                     "A download is in progress. Cancel it and close?\n" +
-                    "(Cancelling will remove the incomplete file)",
+                    "(The download can be resumed later)",
                     "Download In Progress",
                     JOptionPane.YES_NO_OPTION,
                     JOptionPane.WARNING_MESSAGE);
@@ -0,0 +1,98 @@
+package atri.palaash.jvosk.ui;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The transcript shown in {@link MainFrame}, kept as the list of recognized segments and the
+ * line each was displayed as.
+ * <p>
+ * Appending is constant time: word and character counts are updated from the new line only,
+ * so nothing ever re-reads the whole transcript while a transcription is running. The full
+ * text is only assembled when it is asked for (copy, save, export).
+ * <p>
+ * The text area in {@link MainFrame} stays the view. Appending to its document touches only
+ * the last lines, whereas a {@code JList} of wrapped, variable-height rows re-measures every
+ * row whenever the list or its width changes, and would lose free text selection.
+ */
+public class TranscriptModel {
+
+    private final List<TranscriptSegment> segments = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+    private long characterCount;
+    private long wordCount;
+
+    /**
+     * Add a segment and the line it is displayed as, without the trailing newline.
+     */
+    public void append(TranscriptSegment segment, String line) {
+        segments.add(segment);
+        lines.add(line);
+        characterCount += line.length() + 1;
+        wordCount += countWords(line);
+    }
+
+    public void clear() {
+        segments.clear();
+        lines.clear();
+        characterCount = 0;
+        wordCount = 0;
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    public List<TranscriptSegment> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Characters in the displayed text, including line breaks.
+     */
+    public long getCharacterCount() {
+        return characterCount;
+    }
+
+    public long getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Where in the audio the last segment ends, or 0 if there is none.
+     */
+    public long getEndTimeMs() {
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).endTimeMs;
+    }
+
+    /**
+     * The displayed text, one line per segment.
+     */
+    public String getText() {
+        StringBuilder text = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, characterCount));
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+    static int countWords(CharSequence text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean whitespace = Character.isWhitespace(text.charAt(i));
+            if (!whitespace && !inWord) {
+                words++;
+            }
+            inWord = !whitespace;
+        }
+        return words;
+    }
+}
@@ -16,6 +16,13 @@ public class AppPreferences {
     private static final String RECENT_FILES = "recentFiles";
     private static final String SELECTED_MODEL = "selectedModel";
     private static final String FONT_SIZE = "fontSize";
+    private static final String PARALLEL_TRANSCRIPTION = "parallelTranscription";
+    private static final String SKIP_SILENCE = "skipSilence";
+    private static final String TRANSCRIPT_CACHE = "transcriptCache";
+    private static final String REAL_TIME_FACTOR = "realTimeFactor";
+    private static final String QUEUE_CONCURRENCY = "queueConcurrency";
+    private static final String AUTO_EXPORT_FORMAT = "autoExportFormat";
+    private static final String AUTO_EXPORT_DIR = "autoExportDir";
     private static final int MAX_RECENT_FILES = 10;
     
     public static String getLastSaveDir() {
@@ -66,6 +73,76 @@ public class AppPreferences {
         prefs.putInt(FONT_SIZE, size);
     }
     
+    public static boolean isParallelTranscription() {
+        return prefs.getBoolean(PARALLEL_TRANSCRIPTION, false);
+    }
+    
+    public static void setParallelTranscription(boolean parallel) {
+        prefs.putBoolean(PARALLEL_TRANSCRIPTION, parallel);
+    }
+    
+    public static boolean isSkipSilence() {
+        return prefs.getBoolean(SKIP_SILENCE, false);
+    }
+    
+    public static void setSkipSilence(boolean skip) {
+        prefs.putBoolean(SKIP_SILENCE, skip);
+    }
+    
+    public static boolean isUseTranscriptCache() {
+        return prefs.getBoolean(TRANSCRIPT_CACHE, true);
+    }
+    
+    public static void setUseTranscriptCache(boolean use) {
+        prefs.putBoolean(TRANSCRIPT_CACHE, use);
+    }
+    
+    /**
+     * Processing time per second of audio measured by the last completed transcription.
+     */
+    public static double getRealTimeFactor() {
+        return prefs.getDouble(REAL_TIME_FACTOR, 0.3);
+    }
+    
+    public static void setRealTimeFactor(double realTimeFactor) {
+        prefs.putDouble(REAL_TIME_FACTOR, realTimeFactor);
+    }
+    
+    /**
+     * Number of queued files transcribed at once; half the cores by default.
+     */
+    public static int getQueueConcurrency() {
+        return prefs.getInt(QUEUE_CONCURRENCY, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+    
+    public static void setQueueConcurrency(int concurrency) {
+        prefs.putInt(QUEUE_CONCURRENCY, concurrency);
+    }
+    
+    /**
+     * Format queued transcripts are exported in when they finish, or null for none.
+     */
+    public static String getAutoExportFormat() {
+        String format = prefs.get(AUTO_EXPORT_FORMAT, "");
+        return format.isEmpty() ? null : format;
+    }
+    
+    public static void setAutoExportFormat(String format) {
+        prefs.put(AUTO_EXPORT_FORMAT, format != null ? format : "");
+    }
+    
+    /**
+     * Folder for automatic exports, or null for the folder of each audio file.
+     */
+    public static String getAutoExportDir() {
+        String dir = prefs.get(AUTO_EXPORT_DIR, "");
+        return dir.isEmpty() ? null : dir;
+    }
+    
+    public static void setAutoExportDir(String dir) {
+        prefs.put(AUTO_EXPORT_DIR, dir != null ? dir : "");
+    }
+    
     public static List<String> getRecentFiles() {
         String recent = prefs.get(RECENT_FILES, "");
         List<String> files = new ArrayList<>();
@@ -9,14 +9,14 @@ import java.io.File;
 
 public class AudioInfo {
     
-    private final long durationSeconds;
+    private final long durationMillis;
     private final String format;
     private final int sampleRate;
     private final int channels;
     private final long fileSizeBytes;
     
-    private AudioInfo(long durationSeconds, String format, int sampleRate, int channels, long fileSizeBytes) {
-        this.durationSeconds = durationSeconds;
+    private AudioInfo(long durationMillis, String format, int sampleRate, int channels, long fileSizeBytes) {
+        this.durationMillis = durationMillis;
         this.format = format;
         this.sampleRate = sampleRate;
         this.channels = channels;
@@ -29,7 +29,7 @@ public class AudioInfo {
             MultimediaObject obj = new MultimediaObject(audioFile);
             MultimediaInfo info = obj.getInfo();
             
-            long duration = info.getDuration() / 1000; // Convert ms to seconds
+            long duration = Math.max(0, info.getDuration());
             String format = audioFile.getName().substring(audioFile.getName().lastIndexOf('.') + 1).toUpperCase();
             int sampleRate = info.getAudio() != null ? info.getAudio().getSamplingRate() : 0;
             int channels = info.getAudio() != null ? info.getAudio().getChannels() : 0;
@@ -42,7 +42,7 @@ public class AudioInfo {
                 AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(audioFile);
                 long frames = fileFormat.getFrameLength();
                 float frameRate = fileFormat.getFormat().getFrameRate();
-                long duration = frames > 0 && frameRate > 0 ? (long) (frames / frameRate) : 0;
+                long duration = frames > 0 && frameRate > 0 ? (long) (frames * 1000 / frameRate) : 0;
                 
                 String format = fileFormat.getType().toString();
                 int sampleRate = (int) fileFormat.getFormat().getSampleRate();
@@ -56,7 +56,11 @@ public class AudioInfo {
     }
     
     public long getDurationSeconds() {
-        return durationSeconds;
+        return durationMillis / 1000;
+    }
+    
+    public long getDurationMillis() {
+        return durationMillis;
     }
     
     public String getFormat() {
@@ -76,6 +80,7 @@ public class AudioInfo {
     }
     
     public String getFormattedDuration() {
+        long durationSeconds = getDurationSeconds();
         long hours = durationSeconds / 3600;
         long minutes = (durationSeconds % 3600) / 60;
         long seconds = durationSeconds % 60;
@@ -97,9 +102,16 @@ public class AudioInfo {
         }
     }
     
+    /**
+     * Expected transcription time at the real-time factor measured by the last completed
+     * transcription (0.3 before the first).
+     */
     public long getEstimatedTranscriptionSeconds() {
-        // Rough estimate: transcription takes ~0.3x real-time for Vosk
-        return (long) (durationSeconds * 0.3);
+        return getEstimatedTranscriptionSeconds(AppPreferences.getRealTimeFactor());
+    }
+    
+    public long getEstimatedTranscriptionSeconds(double realTimeFactor) {
+        return Math.round(getDurationSeconds() * realTimeFactor);
     }
     
     @Override
@@ -1,45 +1,82 @@
 package atri.palaash.jvosk.util;
 
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.net.UnknownHostException;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utilities for checking network connectivity.
+ * Requests made elsewhere report their outcome here, so a probe is only sent
+ * when nothing has talked to the network recently.
  */
 public class NetworkUtils {
     
     private static final long CACHE_TIME = 5000; // 5 seconds
+    private static final long OBSERVED_CACHE_TIME = 60000; // 1 minute
     private static final AtomicLong lastCheckTime = new AtomicLong(0);
+    private static volatile long cacheTime = CACHE_TIME;
     private static volatile boolean lastCheckResult = false;
     
     /**
      * Check if internet connectivity is available.
-     * Uses cached result for up to 5 seconds to avoid excessive checks.
+     * Uses the outcome of a recent request (or probe) when there is one.
      */
     public static synchronized boolean isInternetAvailable() {
         long now = System.currentTimeMillis();
         
         // Use cached result if recent
-        if (now - lastCheckTime.get() < CACHE_TIME) {
+        if (now - lastCheckTime.get() < cacheTime) {
             return lastCheckResult;
         }
         
         lastCheckTime.set(now);
+        cacheTime = CACHE_TIME;
         lastCheckResult = performConnectivityCheck();
         
         return lastCheckResult;
     }
     
+    /**
+     * Record whether a real request just reached the network.
+     * Synchronized with {@link #isInternetAvailable()}, so the result, its time and how long
+     * it counts are always updated together.
+     * @param reachable true if a response was received, false if the host could not be reached
+     */
+    public static synchronized void recordConnectivity(boolean reachable) {
+        lastCheckResult = reachable;
+        cacheTime = OBSERVED_CACHE_TIME;
+        lastCheckTime.set(System.currentTimeMillis());
+    }
+    
+    /**
+     * Whether a failed request never reached a server, as opposed to failing after it got a
+     * reply (TLS or parse errors, for instance).
+     */
+    public static boolean isUnreachable(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof UnknownHostException || t instanceof ConnectException
+                    || t instanceof NoRouteToHostException || t instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private static boolean performConnectivityCheck() {
         try {
-            // Try to connect to Vosk models page with short timeout
+            // HEAD the Vosk models page with short timeout; any response means we are online
             URL url = new URL("https://alphacephei.com/vosk/models");
-            URLConnection connection = url.openConnection();
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("HEAD");
             connection.setConnectTimeout(3000);
             connection.setReadTimeout(3000);
-            connection.getInputStream().close();
+            connection.getResponseCode();
+            connection.disconnect();
             return true;
         } catch (IOException e) {
             return false;
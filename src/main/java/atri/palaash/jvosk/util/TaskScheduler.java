@@ -0,0 +1,526 @@
+package atri.palaash.jvosk.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the threads background work runs on, so there is one place to size, observe and
+ * shut them down.
+ * <ul>
+ *   <li>{@link #io()} for work that mostly waits: the model registry, downloads, reading
+ *   files, sockets, child processes. One thread per task; virtual threads on a JDK that has
+ *   them, otherwise a cached pool of daemon threads.</li>
+ *   <li>{@link #cpu()} for recognition, bounded to the number of cores (or
+ *   {@code -Djvosk.cpuThreads}) so concurrent transcriptions share the CPU instead of
+ *   oversubscribing it. Tasks on it must not wait for other tasks on it.</li>
+ *   <li>{@link #newPool} for work that needs its own limit, like a queue with a user-set
+ *   concurrency.</li>
+ * </ul>
+ * Blocking work never runs on the common {@code ForkJoinPool}, where it would hold up
+ * everything else using it. Virtual threads can be turned off with
+ * {@code -Djvosk.virtualThreads=false}.
+ */
+public class TaskScheduler {
+
+    private static TaskScheduler instance;
+
+    private final ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+    private final TrackedExecutor io;
+    private final TrackedPool cpu;
+    private final List<TrackedExecutorService> pools = new CopyOnWriteArrayList<>();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+
+    private TaskScheduler() {
+        ExecutorService ioDelegate;
+        if (virtualThreadFactory != null) {
+            ioDelegate = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), virtualThreadFactory);
+        } else {
+            ioDelegate = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), daemonFactory("IoWorker"));
+        }
+        this.io = new TrackedExecutor("io", ioDelegate, virtualThreadFactory != null);
+        pools.add(io);
+
+        int cpuThreads = Math.max(1, Integer.getInteger("jvosk.cpuThreads", Runtime.getRuntime().availableProcessors()));
+        this.cpu = new TrackedPool("cpu", cpuThreads, daemonFactory("CpuWorker"));
+        // Idle workers exit, so the GUI holds no recognition threads between transcriptions
+        cpu.allowCoreThreadTimeOut(true);
+        pools.add(cpu);
+    }
+
+    public static synchronized TaskScheduler getInstance() {
+        if (instance == null) {
+            instance = new TaskScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Executor for blocking I/O: every task gets its own thread.
+     */
+    public ExecutorService io() {
+        return io;
+    }
+
+    /**
+     * Executor for CPU-bound recognition, one thread per core.
+     */
+    public ExecutorService cpu() {
+        return cpu;
+    }
+
+    /**
+     * True if {@link #io()} and {@link #startIoThread} use virtual threads.
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * A pool of up to {@code threads} daemon threads named {@code name-n}, reported in
+     * {@link #getMetrics()} and stopped by {@link #shutdown} unless its owner shuts it down
+     * first.
+     */
+    public ThreadPoolExecutor newPool(String name, int threads) {
+        TrackedPool pool = new TrackedPool(name, Math.max(1, threads), daemonFactory(name));
+        pools.add(pool);
+        if (shutdown) {
+            pool.shutdownNow();
+        }
+        return pool;
+    }
+
+    /**
+     * An unstarted daemon platform thread for a long-running loop that needs a thread of its
+     * own, e.g. to set its priority. It is interrupted by {@link #shutdown}.
+     */
+    public Thread newThread(String name, Runnable task) {
+        Thread thread = new Thread(tracked(task), name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Start a thread for a loop that spends its time blocked on I/O, such as reading a
+     * socket. Virtual where available, so many of them are cheap.
+     */
+    public Thread startIoThread(String name, Runnable task) {
+        return startIoThread(name, 0, task);
+    }
+
+    /**
+     * Like {@link #startIoThread(String, Runnable)}, with the stack size to use when it has to
+     * fall back to a platform thread (0 for the JVM default). Virtual thread stacks grow as
+     * needed, so they ignore it.
+     */
+    public Thread startIoThread(String name, long stackSize, Runnable task) {
+        Thread thread;
+        if (virtualThreadFactory != null) {
+            thread = virtualThreadFactory.newThread(tracked(task));
+            thread.setName(name);
+        } else {
+            thread = new Thread(null, tracked(task), name, stackSize);
+            thread.setDaemon(true);
+        }
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * A group of tasks run on the given executor that finish together, see {@link Scope}.
+     */
+    public Scope openScope(ExecutorService executor) {
+        return new Scope(executor);
+    }
+
+    /**
+     * How busy each pool is, the shared ones first.
+     */
+    public List<PoolMetrics> getMetrics() {
+        List<PoolMetrics> metrics = new ArrayList<>();
+        for (TrackedExecutorService pool : pools) {
+            metrics.add(pool.metrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Stop accepting work, give running tasks the timeout to finish, then interrupt them
+     * and the threads from {@link #newThread}. Pools are stopped in reverse order of
+     * creation, so a server's handlers go before the shared pools they use.
+     * @return true if everything stopped in time
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        shutdown = true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<TrackedExecutorService> reversed = new ArrayList<>(pools);
+        Collections.reverse(reversed);
+
+        boolean stopped = true;
+        try {
+            for (TrackedExecutorService pool : reversed) {
+                pool.shutdown();
+                stopped &= pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = false;
+        }
+        for (TrackedExecutorService pool : reversed) {
+            pool.shutdownNow();
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return stopped && threads.isEmpty();
+    }
+
+    private Runnable tracked(Runnable task) {
+        return () -> {
+            threads.add(Thread.currentThread());
+            try {
+                task.run();
+            } finally {
+                threads.remove(Thread.currentThread());
+            }
+        };
+    }
+
+    private static ThreadFactory daemonFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * {@code Thread.ofVirtual().name("IoWorker-", 1).factory()} where the JDK has it (21+),
+     * looked up reflectively so the app still builds and runs on 17.
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        if (!Boolean.parseBoolean(System.getProperty("jvosk.virtualThreads", "true"))) {
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "IoWorker-", 1L);
+            Method factory = builderType.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Older JDK, or a preview build without --enable-preview
+            return null;
+        }
+    }
+
+    /**
+     * A snapshot of one pool.
+     */
+    public static final class PoolMetrics {
+
+        private final String name;
+        private final boolean virtual;
+        private final int threads;
+        private final int maxThreads;
+        private final int active;
+        private final int queued;
+        private final long completed;
+
+        PoolMetrics(String name, boolean virtual, int threads, int maxThreads, int active, int queued, long completed) {
+            this.name = name;
+            this.virtual = virtual;
+            this.threads = threads;
+            this.maxThreads = maxThreads;
+            this.active = active;
+            this.queued = queued;
+            this.completed = completed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * True if tasks run on virtual threads.
+         */
+        public boolean isVirtual() {
+            return virtual;
+        }
+
+        /**
+         * Threads currently alive in the pool.
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Upper bound on threads, or {@link Integer#MAX_VALUE} for a pool that grows with demand.
+         */
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        /**
+         * Tasks running now.
+         */
+        public int getActive() {
+            return active;
+        }
+
+        /**
+         * Tasks waiting for a thread.
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * Tasks finished since the pool was created, successfully or not.
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d active, %d queued, %d completed, %d/%s threads%s", name, active, queued,
+                    completed, threads, maxThreads == Integer.MAX_VALUE ? "unbounded" : String.valueOf(maxThreads),
+                    virtual ? " (virtual)" : "");
+        }
+    }
+
+    /**
+     * Tasks forked together and finished together. {@link #join()} waits for all of them
+     * and fails as soon as one does, cancelling the rest; {@link #close()} cancels whatever
+     * is still running and waits until it has stopped, so no task outlives the block that
+     * started it:
+     * <pre>
+     * try (TaskScheduler.Scope scope = scheduler.openScope(scheduler.io())) {
+     *     for (Part part : parts) {
+     *         scope.fork(() -> fetch(part));
+     *     }
+     *     scope.join();
+     * }
+     * </pre>
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final ExecutorService executor;
+        private final List<FutureTask<?>> tasks = new ArrayList<>();
+        private final LinkedBlockingQueue<FutureTask<?>> finished = new LinkedBlockingQueue<>();
+        private int running;
+
+        Scope(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Start a task in this scope.
+         */
+        public <T> Future<T> fork(Callable<T> task) {
+            FutureTask<T> future = new FutureTask<>(task);
+            synchronized (this) {
+                tasks.add(future);
+                running++;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.run();
+                    } finally {
+                        taskFinished(future);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.cancel(false);
+                taskFinished(future);
+                throw e;
+            }
+            return future;
+        }
+
+        /**
+         * Wait for every forked task. The first to fail cancels the others, which are
+         * waited for before its exception is thrown.
+         */
+        public void join() throws InterruptedException, ExecutionException {
+            int count;
+            synchronized (this) {
+                count = tasks.size();
+            }
+            try {
+                for (int i = 0; i < count; i++) {
+                    FutureTask<?> future = finished.take();
+                    if (!future.isCancelled()) {
+                        future.get(); // Done, so this only surfaces a failure
+                    }
+                }
+            } catch (ExecutionException | CancellationException | InterruptedException e) {
+                cancel();
+                awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+        }
+
+        /**
+         * Interrupt the tasks still running and drop those not started.
+         */
+        public synchronized void cancel() {
+            for (FutureTask<?> task : tasks) {
+                task.cancel(true);
+            }
+        }
+
+        /**
+         * Wait until no task of the scope is running, without cancelling any.
+         * @return false if the timeout elapsed first
+         */
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (running > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            cancel();
+            try {
+                awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void taskFinished(FutureTask<?> future) {
+            synchronized (this) {
+                running--;
+                notifyAll();
+            }
+            finished.add(future);
+        }
+    }
+
+    private interface TrackedExecutorService extends ExecutorService {
+        PoolMetrics metrics();
+    }
+
+    /**
+     * A fixed-size pool that counts what it runs.
+     */
+    private final class TrackedPool extends ThreadPoolExecutor implements TrackedExecutorService {
+
+        private final String name;
+
+        TrackedPool(String name, int threads, ThreadFactory factory) {
+            super(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+            this.name = name;
+        }
+
+        @Override
+        protected void terminated() {
+            // Shut down by its owner; no longer worth reporting
+            if (this != cpu) {
+                pools.remove(this);
+            }
+        }
+
+        @Override
+        public PoolMetrics metrics() {
+            return new PoolMetrics(name, false, getPoolSize(), getMaximumPoolSize(), getActiveCount(),
+                    getQueue().size(), getCompletedTaskCount());
+        }
+    }
+
+    /**
+     * Wraps a thread-per-task executor, which keeps no counts of its own.
+     */
+    private static final class TrackedExecutor extends AbstractExecutorService implements TrackedExecutorService {
+
+        private final String name;
+        private final ExecutorService delegate;
+        private final boolean virtual;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+
+        TrackedExecutor(String name, ExecutorService delegate, boolean virtual) {
+            this.name = name;
+            this.delegate = delegate;
+            this.virtual = virtual;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                active.incrementAndGet();
+                try {
+                    command.run();
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            });
+        }
+
+        @Override
+        public PoolMetrics metrics() {
+            int running = active.get();
+            return new PoolMetrics(name, virtual, running, Integer.MAX_VALUE, running, 0, completed.get());
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package atri.palaash.jvosk.util;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
+import atri.palaash.jvosk.util.VarIntCodec.Output;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary transcript format ({@code .jvt}) for archiving and quick reloading.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * header   "JVTA" magic, version byte
+ * blocks   up to {@value #BLOCK_SEGMENTS} segments each, see below
+ * strings  varint count, then varint length + UTF-8 for every distinct word
+ * metadata varint count, then key and value strings
+ * index    per block: first start ms (8), latest end ms up to and including it (8), file offset (8)
+ * footer   strings offset (8), metadata offset (8), index offset (8),
+ *          segment count (4), block count (4), "JVTA" magic
+ * </pre>
+ * A segment is a flags varint, its text (left out when it is just its words joined by
+ * spaces, as recognizer output always is), its start as a zigzag varint delta from the
+ * previous segment's start (the block's first start for the first), its duration, a
+ * confidence byte and its words. A word is an index into the string table, a zigzag
+ * delta from the previous word's end (the segment start for the first), a duration and a
+ * confidence byte. Confidences are quantized to 1/255; everything else round-trips exactly.
+ * <p>
+ * The string table and index follow the data, so the file is written in one pass as
+ * segments arrive. A {@link Reader} maps the file and binary-searches the fixed-size
+ * index, so reading a stretch of a long transcript only decodes the blocks it covers. The
+ * end times in the index only grow, so the blocks still running into a stretch are found by
+ * stepping back until one ends before it. (Version 1 stored each block's own latest end,
+ * and every earlier block has to be checked.)
+ */
+public final class TranscriptArchive {
+
+    public static final String EXTENSION = "jvt";
+
+    static final int BLOCK_SEGMENTS = 64;
+
+    private static final int MAGIC = 0x4A565441; // "JVTA"
+    private static final byte VERSION = 2;
+    private static final byte VERSION_BLOCK_ENDS = 1; // Index holds per-block ends
+    private static final int HEADER_BYTES = 5;
+    private static final int INDEX_ENTRY_BYTES = 24;
+    private static final int FOOTER_BYTES = 36;
+    private static final int FLAG_TEXT_FROM_WORDS = 1;
+
+    private TranscriptArchive() {}
+
+    /**
+     * Write segments to an archive file.
+     */
+    public static void write(List<TranscriptSegment> segments, Map<String, String> metadata, File file) throws IOException {
+        try (Writer writer = new Writer(new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()), 64 * 1024), metadata)) {
+            for (TranscriptSegment segment : segments) {
+                writer.append(segment);
+            }
+        }
+    }
+
+    /**
+     * Encode segments as an archive in memory.
+     */
+    public static byte[] toBytes(List<TranscriptSegment> segments) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + segments.size() * 32);
+        try (Writer writer = new Writer(bytes, Map.of())) {
+            for (TranscriptSegment segment : segments) {
+                writer.append(segment);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory write failed", e); // ByteArrayOutputStream doesn't throw
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read every segment of an archive file.
+     */
+    public static List<TranscriptSegment> read(File file) throws IOException {
+        return Reader.open(file).readAll();
+    }
+
+    /**
+     * Writes an archive to a stream one segment at a time.
+     */
+    public static final class Writer implements Closeable {
+
+        private final OutputStream out;
+        private final Map<String, String> metadata;
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Output block = new Output(4096);
+        private final Output index = new Output(1024);
+
+        private long position;
+        private int segmentCount;
+        private int blockCount;
+        private int blockSegments;
+        private long blockStart;
+        private long latestEnd = Long.MIN_VALUE;
+        private long previousStart;
+        private boolean closed;
+
+        public Writer(OutputStream out, Map<String, String> metadata) throws IOException {
+            this.out = out;
+            this.metadata = metadata;
+            Output header = new Output(HEADER_BYTES);
+            header.writeInt(MAGIC);
+            header.write(VERSION);
+            emit(header);
+        }
+
+        public void append(TranscriptSegment segment) throws IOException {
+            if (blockSegments == 0) {
+                blockStart = segment.startTimeMs;
+                previousStart = blockStart;
+            }
+
+            boolean textFromWords = !segment.words.isEmpty() && segment.text.equals(joinWords(segment.words));
+            block.writeVarLong(textFromWords ? FLAG_TEXT_FROM_WORDS : 0);
+            if (!textFromWords) {
+                block.writeString(segment.text);
+            }
+            block.writeSignedVarLong(segment.startTimeMs - previousStart);
+            block.writeSignedVarLong(segment.endTimeMs - segment.startTimeMs);
+            block.write(quantize(segment.confidence));
+            previousStart = segment.startTimeMs;
+            latestEnd = Math.max(latestEnd, segment.endTimeMs);
+
+            block.writeVarLong(segment.words.size());
+            long previousEnd = segment.startTimeMs;
+            for (Word word : segment.words) {
+                Integer id = stringIndex.get(word.text);
+                if (id == null) {
+                    id = strings.size();
+                    stringIndex.put(word.text, id);
+                    strings.add(word.text);
+                }
+                block.writeVarLong(id);
+                block.writeSignedVarLong(word.startTimeMs - previousEnd);
+                block.writeSignedVarLong(word.endTimeMs - word.startTimeMs);
+                block.write(quantize(word.confidence));
+                previousEnd = word.endTimeMs;
+            }
+
+            segmentCount++;
+            if (++blockSegments == BLOCK_SEGMENTS) {
+                endBlock();
+            }
+        }
+
+        /**
+         * Write the string table, metadata, index and footer, then close the stream.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (blockSegments > 0) {
+                    endBlock();
+                }
+
+                long stringsOffset = position;
+                Output table = new Output(strings.size() * 8 + 8);
+                table.writeVarLong(strings.size());
+                for (String string : strings) {
+                    table.writeString(string);
+                }
+                emit(table);
+
+                long metadataOffset = position;
+                Output meta = new Output(64);
+                meta.writeVarLong(metadata.size());
+                for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                    meta.writeString(entry.getKey());
+                    meta.writeString(entry.getValue());
+                }
+                emit(meta);
+
+                long indexOffset = position;
+                emit(index);
+
+                Output footer = new Output(FOOTER_BYTES);
+                footer.writeLong(stringsOffset);
+                footer.writeLong(metadataOffset);
+                footer.writeLong(indexOffset);
+                footer.writeInt(segmentCount);
+                footer.writeInt(blockCount);
+                footer.writeInt(MAGIC);
+                emit(footer);
+            } finally {
+                out.close();
+            }
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void endBlock() throws IOException {
+            index.writeLong(blockStart);
+            index.writeLong(latestEnd);
+            index.writeLong(position);
+            emit(block);
+            block.reset();
+            blockSegments = 0;
+            blockCount++;
+        }
+
+        private void emit(Output bytes) throws IOException {
+            bytes.writeTo(out);
+            position += bytes.size();
+        }
+    }
+
+    /**
+     * Random access to an archive held in a buffer, usually a mapped file.
+     */
+    public static final class Reader {
+
+        private final ByteBuffer data;
+        private final boolean runningEnds;
+        private final String[] strings;
+        private final Map<String, String> metadata;
+        private final long indexOffset;
+        private final int segmentCount;
+        private final int blockCount;
+
+        private Reader(ByteBuffer data) throws IOException {
+            this.data = data;
+            int size = data.limit();
+            if (size < HEADER_BYTES + FOOTER_BYTES || data.getInt(0) != MAGIC || data.getInt(size - 4) != MAGIC) {
+                throw new IOException("Not a transcript archive");
+            }
+            byte version = data.get(4);
+            if (version != VERSION && version != VERSION_BLOCK_ENDS) {
+                throw new IOException("Unsupported transcript archive version " + version);
+            }
+            this.runningEnds = version == VERSION;
+
+            int footer = size - FOOTER_BYTES;
+            long stringsOffset = data.getLong(footer);
+            long metadataOffset = data.getLong(footer + 8);
+            this.indexOffset = data.getLong(footer + 16);
+            this.segmentCount = data.getInt(footer + 24);
+            this.blockCount = data.getInt(footer + 28);
+            if (stringsOffset < HEADER_BYTES || metadataOffset < stringsOffset || indexOffset < metadataOffset
+                    || indexOffset + (long) blockCount * INDEX_ENTRY_BYTES != footer
+                    || segmentCount < 0 || (long) blockCount * BLOCK_SEGMENTS < segmentCount) {
+                throw new IOException("Corrupt transcript archive");
+            }
+
+            try {
+                ByteBuffer in = slice(stringsOffset);
+                this.strings = new String[VarIntCodec.readCount(in)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = VarIntCodec.readString(in);
+                }
+
+                in = slice(metadataOffset);
+                int entries = VarIntCodec.readCount(in);
+                Map<String, String> meta = new LinkedHashMap<>();
+                for (int i = 0; i < entries; i++) {
+                    meta.put(VarIntCodec.readString(in), VarIntCodec.readString(in));
+                }
+                this.metadata = Collections.unmodifiableMap(meta);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt transcript archive", e);
+            }
+        }
+
+        /**
+         * Map an archive file. Only the string table and metadata are read up front.
+         */
+        public static Reader open(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed
+                return new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        /**
+         * Read an archive from memory.
+         */
+        public static Reader of(byte[] bytes) throws IOException {
+            return new Reader(ByteBuffer.wrap(bytes));
+        }
+
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        public Map<String, String> getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * End of the last segment, or 0 for an empty archive.
+         */
+        public long getEndTimeMs() {
+            long end = 0;
+            for (int block = 0; block < blockCount; block++) {
+                end = Math.max(end, blockEnd(block));
+            }
+            return end;
+        }
+
+        public List<TranscriptSegment> readAll() throws IOException {
+            List<TranscriptSegment> segments = new ArrayList<>(segmentCount);
+            for (int block = 0; block < blockCount; block++) {
+                decodeBlock(block, Long.MIN_VALUE, Long.MAX_VALUE, segments);
+            }
+            return segments;
+        }
+
+        /**
+         * Segments overlapping the time range, decoding only the blocks that can hold them.
+         */
+        public List<TranscriptSegment> read(long fromMs, long toMs) throws IOException {
+            List<TranscriptSegment> segments = new ArrayList<>();
+            // Last block starting at or before the range, and the blocks before it still running into it
+            int low = 0;
+            int high = blockCount - 1;
+            int first = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (blockStart(mid) <= fromMs) {
+                    first = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (runningEnds) {
+                while (first > 0 && blockEnd(first - 1) >= fromMs) {
+                    first--;
+                }
+            } else {
+                for (int block = 0; block < first; block++) {
+                    if (blockEnd(block) >= fromMs) {
+                        decodeBlock(block, fromMs, toMs, segments);
+                    }
+                }
+            }
+
+            for (int block = first; block < blockCount && blockStart(block) <= toMs; block++) {
+                decodeBlock(block, fromMs, toMs, segments);
+            }
+            return segments;
+        }
+
+        private long blockStart(int block) {
+            return data.getLong((int) (indexOffset + (long) block * INDEX_ENTRY_BYTES));
+        }
+
+        private long blockEnd(int block) {
+            return data.getLong((int) (indexOffset + (long) block * INDEX_ENTRY_BYTES + 8));
+        }
+
+        private void decodeBlock(int block, long fromMs, long toMs, List<TranscriptSegment> segments) throws IOException {
+            long entry = indexOffset + (long) block * INDEX_ENTRY_BYTES;
+            long offset = data.getLong((int) entry + 16);
+            if (offset < HEADER_BYTES || offset >= indexOffset) {
+                throw new IOException("Corrupt transcript archive");
+            }
+            int count = Math.min(BLOCK_SEGMENTS, segmentCount - block * BLOCK_SEGMENTS);
+
+            try {
+                ByteBuffer in = slice(offset);
+                long previousStart = data.getLong((int) entry);
+                for (int i = 0; i < count; i++) {
+                    int flags = (int) VarIntCodec.readVarLong(in);
+                    String text = (flags & FLAG_TEXT_FROM_WORDS) != 0 ? null : VarIntCodec.readString(in);
+                    long start = previousStart + VarIntCodec.readSignedVarLong(in);
+                    long end = start + VarIntCodec.readSignedVarLong(in);
+                    double confidence = dequantize(in.get());
+                    previousStart = start;
+
+                    int wordCount = VarIntCodec.readCount(in);
+                    List<Word> words = new ArrayList<>(wordCount);
+                    long previousEnd = start;
+                    for (int w = 0; w < wordCount; w++) {
+                        long id = VarIntCodec.readVarLong(in);
+                        if (id < 0 || id >= strings.length) {
+                            throw new IOException("Corrupt transcript archive");
+                        }
+                        long wordStart = previousEnd + VarIntCodec.readSignedVarLong(in);
+                        long wordEnd = wordStart + VarIntCodec.readSignedVarLong(in);
+                        words.add(new Word(strings[(int) id], wordStart, wordEnd, dequantize(in.get())));
+                        previousEnd = wordEnd;
+                    }
+
+                    if (end >= fromMs && start <= toMs) {
+                        segments.add(new TranscriptSegment(text != null ? text : joinWords(words),
+                                start, end, words, confidence));
+                    }
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt transcript archive", e);
+            }
+        }
+
+        private ByteBuffer slice(long offset) {
+            return data.duplicate().position((int) offset);
+        }
+    }
+
+    private static String joinWords(List<Word> words) {
+        StringBuilder text = new StringBuilder(words.size() * 6);
+        for (Word word : words) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(word.text);
+        }
+        return text.toString();
+    }
+
+    private static int quantize(double confidence) {
+        return (int) Math.round(Math.max(0, Math.min(1, confidence)) * 255);
+    }
+
+    private static double dequantize(byte value) {
+        // Rounded to what 8 bits can tell apart, so 0.8 comes back as 0.8, not 0.8000000119
+        return Math.round((value & 0xFF) / 255.0 * 1000) / 1000.0;
+    }
+}
@@ -1,9 +1,13 @@
 package atri.palaash.jvosk.util;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TranscriptExporter {
     
@@ -11,80 +15,96 @@ public class TranscriptExporter {
         public final String text;
         public final long startTimeMs;
         public final long endTimeMs;
+        public final List<Word> words;
+        public final double confidence;
         
         public TranscriptSegment(String text, long startTimeMs, long endTimeMs) {
+            this(text, startTimeMs, endTimeMs, Collections.emptyList(), 1.0);
+        }
+        
+        public TranscriptSegment(String text, long startTimeMs, long endTimeMs, List<Word> words, double confidence) {
             this.text = text;
             this.startTimeMs = startTimeMs;
             this.endTimeMs = endTimeMs;
+            this.words = Collections.unmodifiableList(words);
+            this.confidence = confidence;
         }
     }
     
-    public static void exportAsText(String content, File outputFile) throws IOException {
-        try (FileWriter writer = new FileWriter(outputFile)) {
-            writer.write(content);
+    /**
+     * A single recognized word with its position in the audio.
+     */
+    public static class Word {
+        public final String text;
+        public final long startTimeMs;
+        public final long endTimeMs;
+        public final double confidence;
+        
+        public Word(String text, long startTimeMs, long endTimeMs, double confidence) {
+            this.text = text;
+            this.startTimeMs = startTimeMs;
+            this.endTimeMs = endTimeMs;
+            this.confidence = confidence;
         }
     }
     
-    public static void exportAsSRT(List<TranscriptSegment> segments, File outputFile) throws IOException {
-        try (FileWriter writer = new FileWriter(outputFile)) {
-            for (int i = 0; i < segments.size(); i++) {
-                TranscriptSegment seg = segments.get(i);
-                writer.write(String.format("%d\n", i + 1));
-                writer.write(String.format("%s --> %s\n", 
-                    formatSRTTime(seg.startTimeMs), 
-                    formatSRTTime(seg.endTimeMs)));
-                writer.write(seg.text + "\n\n");
-            }
-        }
+    /**
+     * Export segments in one of the {@link TranscriptSink#FORMATS}; the text formats get one
+     * line per segment.
+     */
+    public static void export(List<TranscriptSegment> segments, String format, File outputFile) throws IOException {
+        export(segments, format, outputFile, Map.of());
     }
     
-    public static void exportAsVTT(List<TranscriptSegment> segments, File outputFile) throws IOException {
-        try (FileWriter writer = new FileWriter(outputFile)) {
-            writer.write("WEBVTT\n\n");
-            for (TranscriptSegment seg : segments) {
-                writer.write(String.format("%s --> %s\n", 
-                    formatVTTTime(seg.startTimeMs), 
-                    formatVTTTime(seg.endTimeMs)));
-                writer.write(seg.text + "\n\n");
+    /**
+     * Export segments, with metadata such as {@link #metadata the model and audio file} in
+     * the JSON formats.
+     */
+    public static void export(List<TranscriptSegment> segments, String format, File outputFile,
+                              Map<String, String> metadata) throws IOException {
+        try (TranscriptSink sink = TranscriptSink.open(format, outputFile, metadata)) {
+            sink.setAutoFlush(false);
+            for (TranscriptSegment segment : segments) {
+                sink.accept(segment);
             }
         }
     }
     
-    public static void exportAsJSON(List<TranscriptSegment> segments, File outputFile) throws IOException {
-        try (FileWriter writer = new FileWriter(outputFile)) {
-            writer.write("{\n  \"segments\": [\n");
-            for (int i = 0; i < segments.size(); i++) {
-                TranscriptSegment seg = segments.get(i);
-                writer.write(String.format("    {\"text\": \"%s\", \"start\": %d, \"end\": %d}%s\n",
-                    seg.text.replace("\"", "\\\""),
-                    seg.startTimeMs,
-                    seg.endTimeMs,
-                    i < segments.size() - 1 ? "," : ""));
-            }
-            writer.write("  ]\n}");
+    /**
+     * Metadata naming the model and audio file a transcript came from; either may be null.
+     */
+    public static Map<String, String> metadata(String modelName, File audioFile) {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        if (modelName != null) {
+            metadata.put("model", modelName);
+        }
+        if (audioFile != null) {
+            metadata.put("audio", audioFile.getName());
         }
+        return metadata;
     }
     
-    public static void exportAsMarkdown(String content, File outputFile) throws IOException {
-        try (FileWriter writer = new FileWriter(outputFile)) {
-            writer.write("# Transcription\n\n");
-            writer.write(content);
-        }
+    public static void exportAsText(String content, File outputFile) throws IOException {
+        Files.writeString(outputFile.toPath(), content, StandardCharsets.UTF_8);
     }
     
-    private static String formatSRTTime(long ms) {
-        long hours = ms / 3600000;
-        long minutes = (ms % 3600000) / 60000;
-        long seconds = (ms % 60000) / 1000;
-        long millis = ms % 1000;
-        return String.format("%02d:%02d:%02d,%03d", hours, minutes, seconds, millis);
+    public static void exportAsSRT(List<TranscriptSegment> segments, File outputFile) throws IOException {
+        export(segments, "srt", outputFile);
     }
     
-    private static String formatVTTTime(long ms) {
-        long hours = ms / 3600000;
-        long minutes = (ms % 3600000) / 60000;
-        long seconds = (ms % 60000) / 1000;
-        long millis = ms % 1000;
-        return String.format("%02d:%02d:%02d.%03d", hours, minutes, seconds, millis);
+    public static void exportAsVTT(List<TranscriptSegment> segments, File outputFile) throws IOException {
+        export(segments, "vtt", outputFile);
+    }
+    
+    public static void exportAsJSON(List<TranscriptSegment> segments, File outputFile) throws IOException {
+        export(segments, "json", outputFile);
+    }
+    
+    public static void exportAsJSONLines(List<TranscriptSegment> segments, File outputFile) throws IOException {
+        export(segments, "jsonl", outputFile);
+    }
+    
+    public static void exportAsMarkdown(String content, File outputFile) throws IOException {
+        Files.writeString(outputFile.toPath(), "# Transcription\n\n" + content, StandardCharsets.UTF_8);
     }
 }
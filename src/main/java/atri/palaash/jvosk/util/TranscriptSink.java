@@ -0,0 +1,551 @@
+package atri.palaash.jvosk.util;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.PrettyPrinter;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a transcript to a file one segment at a time, as the segments are recognized.
+ * <p>
+ * Output is buffered UTF-8 that is flushed after every segment, so memory stays flat
+ * however long the recording is, and everything written before a crash is already in the
+ * file. JSON and JSON Lines go through Jackson's UTF-8 generator straight to bytes; the
+ * other formats through a buffered writer. SRT, VTT, JSONL, text and Markdown files cut short that way are
+ * still valid up to their last segment; JSON and {@link TranscriptArchive} files are only
+ * closed off by {@link #close()}.
+ */
+public abstract class TranscriptSink implements Closeable {
+
+    /**
+     * Formats {@link #open} accepts.
+     */
+    public static final List<String> FORMATS = List.of("txt", "md", "srt", "vtt", "json", "jsonl", TranscriptArchive.EXTENSION);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private boolean autoFlush = true;
+    private int count;
+
+    /**
+     * Create or overwrite the file and write the format's header.
+     * @param format one of {@link #FORMATS}
+     */
+    public static TranscriptSink open(String format, File outputFile) throws IOException {
+        return open(format, outputFile, Map.of());
+    }
+
+    /**
+     * Create or overwrite the file and write the format's header.
+     * @param format one of {@link #FORMATS}
+     * @param metadata written into JSON, JSON Lines and archive output, e.g. the model name; other
+     *                 formats have nowhere to put it
+     */
+    public static TranscriptSink open(String format, File outputFile, Map<String, String> metadata) throws IOException {
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+
+        OutputStream stream = Files.newOutputStream(outputFile.toPath());
+        try {
+            return open(format, stream, metadata);
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the format's header to the stream, which the sink buffers and closes.
+     * @param format one of {@link #FORMATS}
+     * @param metadata written into JSON, JSON Lines and archive output
+     */
+    public static TranscriptSink open(String format, OutputStream stream, Map<String, String> metadata) throws IOException {
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+
+        TranscriptSink sink = switch (format) {
+            case "json" -> new JsonSink(new BufferedOutputStream(stream, BUFFER_SIZE), metadata);
+            case "jsonl" -> new JsonLinesSink(new BufferedOutputStream(stream, BUFFER_SIZE), metadata);
+            case TranscriptArchive.EXTENSION -> new ArchiveSink(new BufferedOutputStream(stream, BUFFER_SIZE), metadata);
+            default -> {
+                Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+                yield switch (format) {
+                    case "srt" -> new SrtSink(out);
+                    case "vtt" -> new VttSink(out);
+                    case "md" -> new TextSink(out, "# Transcription\n\n");
+                    default -> new TextSink(out, "");
+                };
+            }
+        };
+        sink.writeHeader();
+        sink.flush();
+        return sink;
+    }
+
+    /**
+     * Stream segments as Server-Sent Events: a {@code segment} event per segment with the
+     * same JSON as a JSON Lines line, then a {@code done} event with the count and metadata
+     * when closed, unless {@link EventStreamSink#error} was sent instead.
+     */
+    public static EventStreamSink openEventStream(OutputStream stream, Map<String, String> metadata) throws IOException {
+        EventStreamSink sink = new EventStreamSink(new BufferedOutputStream(stream, BUFFER_SIZE), metadata);
+        sink.flush();
+        return sink;
+    }
+
+    /**
+     * Whether every segment is flushed to the file as soon as it is accepted (default).
+     * Turn it off when writing a finished transcript in one go.
+     */
+    public void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+    }
+
+    /**
+     * Append a segment, flushing it to the file unless auto-flush is off.
+     */
+    public void accept(TranscriptSegment segment) throws IOException {
+        writeSegment(segment, count++);
+        if (autoFlush) {
+            flush();
+        }
+    }
+
+    /**
+     * Number of segments written so far.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Write the format's footer and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeFooter();
+        } finally {
+            closeOutput();
+        }
+    }
+
+    protected void writeHeader() throws IOException {}
+
+    protected abstract void writeSegment(TranscriptSegment segment, int index) throws IOException;
+
+    protected void writeFooter() throws IOException {}
+
+    protected abstract void flush() throws IOException;
+
+    protected abstract void closeOutput() throws IOException;
+
+    /**
+     * Write hh:mm:ss followed by the separator and milliseconds, without String.format.
+     */
+    static void writeTime(Writer out, long ms, char millisSeparator) throws IOException {
+        ms = Math.max(0, ms);
+        writePadded(out, ms / 3600000, 2);
+        out.write(':');
+        writePadded(out, (ms % 3600000) / 60000, 2);
+        out.write(':');
+        writePadded(out, (ms % 60000) / 1000, 2);
+        out.write(millisSeparator);
+        writePadded(out, ms % 1000, 3);
+    }
+
+    private static void writePadded(Writer out, long value, int width) throws IOException {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            out.write('0');
+        }
+        out.write(digits);
+    }
+
+    /**
+     * Base of the plain-text formats.
+     */
+    private abstract static class WriterSink extends TranscriptSink {
+
+        protected final Writer out;
+
+        WriterSink(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        protected void closeOutput() throws IOException {
+            out.close();
+        }
+    }
+
+    private static class TextSink extends WriterSink {
+
+        private final String header;
+
+        TextSink(Writer out, String header) {
+            super(out);
+            this.header = header;
+        }
+
+        @Override
+        protected void writeHeader() throws IOException {
+            out.write(header);
+        }
+
+        @Override
+        protected void writeSegment(TranscriptSegment segment, int index) throws IOException {
+            out.write(segment.text);
+            out.write('\n');
+        }
+    }
+
+    private static class SrtSink extends WriterSink {
+
+        SrtSink(Writer out) {
+            super(out);
+        }
+
+        @Override
+        protected void writeSegment(TranscriptSegment segment, int index) throws IOException {
+            out.write(Integer.toString(index + 1));
+            out.write('\n');
+            writeTime(out, segment.startTimeMs, ',');
+            out.write(" --> ");
+            writeTime(out, segment.endTimeMs, ',');
+            out.write('\n');
+            out.write(segment.text);
+            out.write("\n\n");
+        }
+    }
+
+    private static class VttSink extends WriterSink {
+
+        VttSink(Writer out) {
+            super(out);
+        }
+
+        @Override
+        protected void writeHeader() throws IOException {
+            out.write("WEBVTT\n\n");
+        }
+
+        @Override
+        protected void writeSegment(TranscriptSegment segment, int index) throws IOException {
+            writeTime(out, segment.startTimeMs, '.');
+            out.write(" --> ");
+            writeTime(out, segment.endTimeMs, '.');
+            out.write('\n');
+            out.write(segment.text);
+            out.write("\n\n");
+        }
+    }
+
+    private static class ArchiveSink extends TranscriptSink {
+
+        private final TranscriptArchive.Writer archive;
+
+        ArchiveSink(OutputStream out, Map<String, String> metadata) throws IOException {
+            this.archive = new TranscriptArchive.Writer(out, metadata);
+        }
+
+        @Override
+        protected void writeSegment(TranscriptSegment segment, int index) throws IOException {
+            archive.append(segment);
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            archive.flush();
+        }
+
+        @Override
+        protected void closeOutput() throws IOException {
+            archive.close();
+        }
+    }
+
+    /**
+     * Writes segments with Jackson's streaming generator, which escapes everything JSON
+     * requires and formats numbers without going through String.format.
+     */
+    private abstract static class JacksonSink extends TranscriptSink {
+
+        // Field names pre-encoded once rather than per segment and word
+        private static final SerializedString TEXT = new SerializedString("text");
+        private static final SerializedString START = new SerializedString("start");
+        private static final SerializedString END = new SerializedString("end");
+        private static final SerializedString CONFIDENCE = new SerializedString("confidence");
+        private static final SerializedString WORDS = new SerializedString("words");
+        private static final SerializedString WORD = new SerializedString("word");
+
+        protected final JsonGenerator json;
+        protected final Map<String, String> metadata;
+
+        JacksonSink(OutputStream out, Map<String, String> metadata) throws IOException {
+            this.json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            this.metadata = metadata;
+        }
+
+        protected void writeMetadata() throws IOException {
+            if (metadata.isEmpty()) {
+                return;
+            }
+            json.writeObjectFieldStart("metadata");
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                json.writeStringField(entry.getKey(), entry.getValue());
+            }
+            json.writeEndObject();
+        }
+
+        /**
+         * Write the segment's fields into the current object.
+         */
+        protected void writeSegmentFields(TranscriptSegment segment) throws IOException {
+            json.writeFieldName(TEXT);
+            json.writeString(segment.text);
+            json.writeFieldName(START);
+            json.writeNumber(segment.startTimeMs);
+            json.writeFieldName(END);
+            json.writeNumber(segment.endTimeMs);
+            // As floats: the recognizer reports a few digits, not double precision
+            json.writeFieldName(CONFIDENCE);
+            json.writeNumber((float) segment.confidence);
+            json.writeFieldName(WORDS);
+            json.writeStartArray();
+            for (Word word : segment.words) {
+                json.writeStartObject();
+                json.writeFieldName(WORD);
+                json.writeString(word.text);
+                json.writeFieldName(START);
+                json.writeNumber(word.startTimeMs);
+                json.writeFieldName(END);
+                json.writeNumber(word.endTimeMs);
+                json.writeFieldName(CONFIDENCE);
+                json.writeNumber((float) word.confidence);
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            json.flush();
+        }
+
+        @Override
+        protected void closeOutput() throws IOException {
+            json.close();
+        }
+    }
+
+    /**
+     * One JSON object per line, so a partial file is readable up to its last line. Each
+     * line repeats the metadata so it can be indexed on its own.
+     */
+    private static class JsonLinesSink extends JacksonSink {
+
+        JsonLinesSink(OutputStream out, Map<String, String> metadata) throws IOException {
+            super(out, metadata);
+            json.setRootValueSeparator(null);
+        }
+
+        @Override
+        protected void writeSegment(TranscriptSegment segment, int index) throws IOException {
+            json.writeStartObject();
+            writeSegmentFields(segment);
+            writeMetadata();
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+    }
+
+    /**
+     * Server-Sent Events, see {@link #openEventStream}.
+     */
+    public static final class EventStreamSink extends JacksonSink {
+
+        private static final SerializedString SEGMENT_EVENT = new SerializedString("event: segment\ndata: ");
+        private static final SerializedString DONE_EVENT = new SerializedString("event: done\ndata: ");
+        private static final SerializedString ERROR_EVENT = new SerializedString("event: error\ndata: ");
+        private static final SerializedString EVENT_END = new SerializedString("\n\n");
+
+        private boolean failed;
+
+        private EventStreamSink(OutputStream out, Map<String, String> metadata) throws IOException {
+            super(out, metadata);
+            json.setRootValueSeparator(null);
+        }
+
+        /**
+         * End the stream with an {@code error} event instead of {@code done}.
+         */
+        public void error(String message) throws IOException {
+            failed = true;
+            json.writeRaw(ERROR_EVENT);
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
+            json.writeRaw(EVENT_END);
+            json.flush();
+        }
+
+        @Override
+        protected void writeSegment(TranscriptSegment segment, int index) throws IOException {
+            json.writeRaw(SEGMENT_EVENT);
+            json.writeStartObject();
+            writeSegmentFields(segment);
+            json.writeEndObject();
+            json.writeRaw(EVENT_END);
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            if (failed) {
+                return;
+            }
+            json.writeRaw(DONE_EVENT);
+            json.writeStartObject();
+            json.writeNumberField("segments", getCount());
+            writeMetadata();
+            json.writeEndObject();
+            json.writeRaw(EVENT_END);
+        }
+    }
+
+    /**
+     * A single object with the metadata and a segments array, one segment per line.
+     */
+    private static class JsonSink extends JacksonSink {
+
+        JsonSink(OutputStream out, Map<String, String> metadata) throws IOException {
+            super(out, metadata);
+            json.setPrettyPrinter(new SegmentPerLinePrinter());
+        }
+
+        @Override
+        protected void writeHeader() throws IOException {
+            json.writeStartObject();
+            writeMetadata();
+            json.writeArrayFieldStart("segments");
+        }
+
+        @Override
+        protected void writeSegment(TranscriptSegment segment, int index) throws IOException {
+            json.writeStartObject();
+            writeSegmentFields(segment);
+            json.writeEndObject();
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Breaks lines only in the root object and the segments array, so each field of the
+     * root and each segment gets a line of its own while a segment and its words stay on one.
+     */
+    private static class SegmentPerLinePrinter implements PrettyPrinter {
+
+        // Pre-encoded, since separators are written a dozen times per segment
+        private static final SerializedString COLON = new SerializedString(": ");
+        private static final SerializedString COMMA = new SerializedString(", ");
+        private static final SerializedString[] NEW_LINE = {
+                new SerializedString("\n"), new SerializedString("\n  "), new SerializedString("\n    ")};
+        private static final SerializedString[] COMMA_NEW_LINE = {
+                new SerializedString(",\n"), new SerializedString(",\n  "), new SerializedString(",\n    ")};
+
+        private int depth;
+
+        @Override
+        public void writeRootValueSeparator(JsonGenerator g) throws IOException {
+            g.writeRaw(NEW_LINE[0]);
+        }
+
+        @Override
+        public void writeStartObject(JsonGenerator g) throws IOException {
+            g.writeRaw('{');
+            depth++;
+        }
+
+        @Override
+        public void beforeObjectEntries(JsonGenerator g) throws IOException {
+            if (depth <= 1) {
+                g.writeRaw(NEW_LINE[depth]);
+            }
+        }
+
+        @Override
+        public void writeObjectFieldValueSeparator(JsonGenerator g) throws IOException {
+            g.writeRaw(COLON);
+        }
+
+        @Override
+        public void writeObjectEntrySeparator(JsonGenerator g) throws IOException {
+            g.writeRaw(depth <= 1 ? COMMA_NEW_LINE[depth] : COMMA);
+        }
+
+        @Override
+        public void writeEndObject(JsonGenerator g, int nrOfEntries) throws IOException {
+            depth--;
+            if (depth < 1) {
+                g.writeRaw(NEW_LINE[depth]);
+            }
+            g.writeRaw('}');
+        }
+
+        @Override
+        public void writeStartArray(JsonGenerator g) throws IOException {
+            g.writeRaw('[');
+            depth++;
+        }
+
+        @Override
+        public void beforeArrayValues(JsonGenerator g) throws IOException {
+            if (depth <= 2) {
+                g.writeRaw(NEW_LINE[depth]);
+            }
+        }
+
+        @Override
+        public void writeArrayValueSeparator(JsonGenerator g) throws IOException {
+            g.writeRaw(depth <= 2 ? COMMA_NEW_LINE[depth] : COMMA);
+        }
+
+        @Override
+        public void writeEndArray(JsonGenerator g, int nrOfValues) throws IOException {
+            depth--;
+            if (depth < 2) {
+                g.writeRaw(NEW_LINE[depth]);
+            }
+            g.writeRaw(']');
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package atri.palaash.jvosk.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Varint and zigzag encoding for the binary transcript format ({@link TranscriptArchive}),
+ * which the transcript cache and checkpoints store segments in.
+ * <p>
+ * Readers throw {@link java.nio.BufferUnderflowException} or {@link IllegalArgumentException}
+ * on malformed input; callers turn those into an {@link java.io.IOException} naming their format.
+ */
+public final class VarIntCodec {
+
+    private VarIntCodec() {
+    }
+
+    public static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    public static long readSignedVarLong(ByteBuffer in) {
+        long zigzag = readVarLong(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * Read a count of items that follow, rejecting one the rest of the buffer can't hold.
+     */
+    public static int readCount(ByteBuffer in) {
+        long count = readVarLong(in);
+        // Every counted item takes at least one byte
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Bad count " + count);
+        }
+        return (int) count;
+    }
+
+    public static String readString(ByteBuffer in) {
+        int length = readCount(in);
+        if (in.hasArray()) {
+            // Decode in place rather than copying out first
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Growable big-endian output buffer with varint support.
+     */
+    public static final class Output extends ByteArrayOutputStream {
+
+        public Output(int size) {
+            super(size);
+        }
+
+        public void writeByte(int value) {
+            write(value);
+        }
+
+        public void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        public void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        public void writeFloat(float value) {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        public void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        public void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        public void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package atri.palaash.jvosk.models;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RangedDownloader} against a local HTTP server standing in for the model host:
+ * parallel ranges, a connection dropped mid-segment, resume after a cancel, a file that
+ * changed on the server between attempts, and a server without range support.
+ */
+class RangedDownloaderTest {
+
+    private static final int FILE_BYTES = 40 * 1024 * 1024;
+    private static final int CONNECTIONS = 4;
+
+    /**
+     * Serves one file, honouring single {@code bytes=a-b} ranges and {@code If-Range} unless
+     * told otherwise, and records what it was asked for.
+     */
+    private static final class FileServer {
+        final HttpServer server;
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+        final AtomicLong bytesServed = new AtomicLong();
+        final AtomicInteger dropsLeft = new AtomicInteger();
+        volatile byte[] content;
+        volatile String etag;
+        volatile boolean supportsRanges = true;
+
+        FileServer(byte[] content, String etag) throws IOException {
+            this.content = content;
+            this.etag = etag;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/model.zip", this::handle);
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/model.zip";
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            byte[] body = content;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (ifRange != null && !ifRange.equals(etag)) {
+                range = null; // Changed since the client's copy: send the whole file
+            }
+
+            int start = 0;
+            int end = body.length - 1;
+            int status = 200;
+            if (range != null && supportsRanges) {
+                ranges.add(range);
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                start = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(end, Integer.parseInt(bounds[1]));
+                }
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            }
+            exchange.getResponseHeaders().add("ETag", etag);
+
+            int length = end - start + 1;
+            exchange.sendResponseHeaders(status, length);
+            // Drop the connection halfway through a segment (not the one-byte probe)
+            boolean drop = status == 206 && length > 1 && dropsLeft.getAndDecrement() > 0;
+            int send = drop ? length / 2 : length;
+            OutputStream out = exchange.getResponseBody();
+            try {
+                for (int offset = 0; offset < send; offset += 64 * 1024) {
+                    int chunk = Math.min(64 * 1024, send - offset);
+                    out.write(body, start + offset, chunk);
+                    bytesServed.addAndGet(chunk);
+                }
+                out.flush();
+            } catch (IOException e) {
+                return; // Client went away
+            }
+            if (drop) {
+                // The server closes the connection when a handler fails
+                throw new IllegalStateException("Dropping connection");
+            }
+            out.close();
+        }
+    }
+
+    @TempDir
+    Path workDir;
+
+    private FileServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.server.stop(0);
+        }
+    }
+
+    @Test
+    void downloadsSegmentsInParallel() throws IOException {
+        byte[] content = randomBytes(1);
+        server = new FileServer(content, "\"v1\"");
+        Path target = workDir.resolve("parallel.zip");
+
+        new RangedDownloader(server.url(), target, CONNECTIONS, () -> false).download(null);
+
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+        // The probe plus one range per connection
+        Assertions.assertEquals(CONNECTIONS + 1, server.ranges.size());
+        Assertions.assertFalse(RangedDownloader.hasPartialDownload(target));
+    }
+
+    @Test
+    void continuesSegmentAfterDroppedConnection() throws IOException {
+        byte[] content = randomBytes(2);
+        server = new FileServer(content, "\"v1\"");
+        server.dropsLeft.set(1);
+        Path target = workDir.resolve("dropped.zip");
+
+        new RangedDownloader(server.url(), target, CONNECTIONS, () -> false).download(null);
+
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+        // The retry continues the segment from where the drop left it
+        long resumedRanges = server.ranges.stream()
+                .filter(range -> !range.equals("bytes=0-0"))
+                .filter(range -> Long.parseLong(range.substring(6, range.indexOf('-'))) % (FILE_BYTES / CONNECTIONS) != 0)
+                .count();
+        Assertions.assertEquals(1, resumedRanges);
+        Assertions.assertTrue(server.bytesServed.get() < FILE_BYTES * 1.1);
+    }
+
+    @Test
+    void resumesAfterCancel() throws IOException {
+        byte[] content = randomBytes(3);
+        server = new FileServer(content, "\"v1\"");
+        Path target = workDir.resolve("resume.zip");
+
+        Assertions.assertThrows(IOException.class, () -> new RangedDownloader(server.url(), target, CONNECTIONS,
+                () -> server.bytesServed.get() > FILE_BYTES / 2).download(null));
+        Assertions.assertTrue(RangedDownloader.hasPartialDownload(target));
+        long saved = savedBytes(target);
+        Assertions.assertTrue(saved > 0, "progress saved");
+
+        long firstAttempt = server.bytesServed.get();
+        new RangedDownloader(server.url(), target, CONNECTIONS, () -> false).download(null);
+        long secondAttempt = server.bytesServed.get() - firstAttempt;
+
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+        // Only the rest, plus the one-byte probe
+        Assertions.assertEquals(FILE_BYTES - saved + 1, secondAttempt);
+    }
+
+    @Test
+    void discardsPartialDownloadOfChangedFile() throws IOException {
+        server = new FileServer(randomBytes(4), "\"v1\"");
+        Path target = workDir.resolve("changed.zip");
+        // Leaves a partial download of v1
+        Assertions.assertThrows(IOException.class, () -> new RangedDownloader(server.url(), target, CONNECTIONS,
+                () -> server.bytesServed.get() > FILE_BYTES / 2).download(null));
+
+        // A new file under the same URL: the v1 manifest must not be resumed
+        byte[] updated = randomBytes(5);
+        server.content = updated;
+        server.etag = "\"v2\"";
+        new RangedDownloader(server.url(), target, CONNECTIONS, () -> false).download(null);
+
+        Assertions.assertArrayEquals(updated, Files.readAllBytes(target));
+    }
+
+    @Test
+    void startsOverOnOneConnectionWhenFileChangesMidDownload() throws IOException {
+        byte[] content = randomBytes(6);
+        server = new FileServer(content, "\"v1\"");
+        AtomicInteger refusedRanges = new AtomicInteger();
+        server.server.removeContext("/model.zip");
+        server.server.createContext("/model.zip", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            boolean probe = "bytes=0-0".equals(range);
+            if (range != null && !probe && !server.etag.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+                refusedRanges.incrementAndGet();
+            }
+            server.handle(exchange);
+            if (probe) {
+                // Changed between the probe and the segments: If-Range gets a 200
+                server.etag = "\"v2\"";
+            }
+        });
+        Path target = workDir.resolve("changed.zip");
+
+        new RangedDownloader(server.url(), target, CONNECTIONS, () -> false).download(null);
+
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+        Assertions.assertFalse(RangedDownloader.hasPartialDownload(target));
+        // Each segment gave up on its first 200 instead of retrying
+        Assertions.assertTrue(refusedRanges.get() <= CONNECTIONS, refusedRanges + " refused ranges");
+    }
+
+    @Test
+    void downloadsWholeFileWithoutRangeSupport() throws IOException {
+        byte[] content = randomBytes(7);
+        server = new FileServer(content, "\"v1\"");
+        server.supportsRanges = false;
+        Path target = workDir.resolve("single.zip");
+
+        new RangedDownloader(server.url(), target, CONNECTIONS, () -> false).download(null);
+
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+        Assertions.assertFalse(RangedDownloader.hasPartialDownload(target));
+    }
+
+    /**
+     * Bytes the manifest of an unfinished download says are on disk.
+     */
+    private static long savedBytes(Path target) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(
+                target.resolveSibling(target.getFileName() + RangedDownloader.MANIFEST_SUFFIX))) {
+            manifest.load(in);
+        }
+        long saved = 0;
+        int segments = Integer.parseInt(manifest.getProperty("segments"));
+        for (int i = 0; i < segments; i++) {
+            saved += Long.parseLong(manifest.getProperty("segment." + i + ".next"))
+                    - Long.parseLong(manifest.getProperty("segment." + i + ".start"));
+        }
+        return saved;
+    }
+
+    private static byte[] randomBytes(long seed) {
+        byte[] bytes = new byte[FILE_BYTES];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
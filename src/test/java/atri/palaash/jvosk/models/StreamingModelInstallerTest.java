@@ -0,0 +1,183 @@
+package atri.palaash.jvosk.models;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * {@link StreamingModelInstaller} against a local HTTP server: extraction over parallel
+ * ranges, a dropped connection, resume inside an entry after a cancel, and a server
+ * without range support.
+ */
+class StreamingModelInstallerTest {
+
+    // Larger than the installer's checkpoint interval, so it is saved part way through
+    private static final int LARGE_ENTRY_BYTES = 80 * 1024 * 1024;
+    private static final int CONNECTIONS = 4;
+    private static final byte[] CONF = "--sample-frequency=16000\n".getBytes();
+
+    private static byte[] largeEntry;
+    private static byte[] zip;
+
+    @TempDir
+    Path workDir;
+
+    private HttpServer server;
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong dropAt = new AtomicLong(-1);
+    private volatile boolean supportsRanges = true;
+
+    @BeforeAll
+    static void buildZip() throws IOException {
+        // Compressible, so the zip is about half the size of what it extracts to
+        largeEntry = new byte[LARGE_ENTRY_BYTES];
+        Random random = new Random(1);
+        for (int i = 0; i < largeEntry.length; i++) {
+            largeEntry[i] = (byte) random.nextInt(16);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            writeEntry(out, "vosk-model-test/conf/model.conf", CONF);
+            writeEntry(out, "vosk-model-test/am/final.mdl", largeEntry);
+            writeEntry(out, "vosk-model-test/graph/words.txt", CONF);
+        }
+        zip = bytes.toByteArray();
+    }
+
+    private static void writeEntry(ZipOutputStream out, String name, byte[] content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void extractsOverParallelRanges() throws IOException {
+        Path model = workDir.resolve("vosk-model-test");
+
+        new StreamingModelInstaller(startServer(), model, CONNECTIONS, () -> false).install(null);
+
+        assertInstalled(model);
+        // The probe, then each byte once
+        Assertions.assertEquals(zip.length + 1, bytesServed.get());
+    }
+
+    @Test
+    void continuesAfterDroppedConnection() throws IOException {
+        Path model = workDir.resolve("vosk-model-test");
+        dropAt.set(zip.length / 2);
+
+        new StreamingModelInstaller(startServer(), model, CONNECTIONS, () -> false).install(null);
+
+        assertInstalled(model);
+    }
+
+    @Test
+    void resumesInsideEntryAfterCancel() throws IOException {
+        String url = startServer();
+        Path model = workDir.resolve("vosk-model-test");
+
+        // Cancel once the large entry is checkpointed part way
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Assertions.assertThrows(IOException.class, () -> new StreamingModelInstaller(url, model, CONNECTIONS,
+                cancelled::get).install(progress -> cancelled.set(progress >= 50)));
+        Assertions.assertTrue(StreamingModelInstaller.hasPartialInstall(model));
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(workDir.resolve(".vosk-model-test.partial/.install"))) {
+            manifest.load(in);
+        }
+        Assertions.assertTrue(Long.parseLong(manifest.getProperty("entryWritten")) > 0, "large entry checkpointed");
+
+        new StreamingModelInstaller(url, model, CONNECTIONS, () -> false).install(null);
+
+        assertInstalled(model);
+        Assertions.assertFalse(StreamingModelInstaller.hasPartialInstall(model));
+    }
+
+    @Test
+    void extractsWithoutRangeSupport() throws IOException {
+        supportsRanges = false;
+        Path model = workDir.resolve("vosk-model-test");
+
+        new StreamingModelInstaller(startServer(), model, CONNECTIONS, () -> false).install(null);
+
+        assertInstalled(model);
+    }
+
+    private void assertInstalled(Path model) throws IOException {
+        Assertions.assertArrayEquals(CONF, Files.readAllBytes(model.resolve("conf/model.conf")));
+        Assertions.assertArrayEquals(CONF, Files.readAllBytes(model.resolve("graph/words.txt")));
+        Assertions.assertArrayEquals(largeEntry, Files.readAllBytes(model.resolve("am/final.mdl")));
+    }
+
+    private String startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/model.zip", this::handle);
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/model.zip";
+    }
+
+    /**
+     * Serves single {@code bytes=a-b} ranges, and drops the connection once at {@code dropAt}.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0;
+        int end = zip.length - 1;
+        int status = 200;
+        if (range != null && supportsRanges) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + zip.length);
+        }
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+
+        int length = end - start + 1;
+        exchange.sendResponseHeaders(status, length);
+        long drop = dropAt.get();
+        boolean dropping = drop > start && drop <= end && dropAt.compareAndSet(drop, -1);
+        int send = dropping ? (int) (drop - start) : length;
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(zip, start, send);
+            out.flush();
+            bytesServed.addAndGet(send);
+        } catch (IOException e) {
+            return; // Client went away
+        }
+        if (dropping) {
+            // The server closes the connection when a handler fails
+            throw new IllegalStateException("Dropping connection");
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,126 @@
+package atri.palaash.jvosk.server;
+
+import atri.palaash.jvosk.models.ModelManager;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * {@link TranscriptionServer} on localhost, without a model: request validation, the
+ * errors clients get, and the health report.
+ */
+class TranscriptionServerTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @TempDir
+    Path modelsDir;
+
+    private TranscriptionServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        // A directory that looks installed but holds no model
+        Files.createDirectories(modelsDir.resolve("not-a-model"));
+        server = new TranscriptionServer.Builder(new ModelManager(modelsDir.toString()))
+                .port(0)
+                .maxConcurrent(2)
+                .maxQueued(3)
+                .build();
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void rejectsOtherMethods() throws Exception {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/transcribe?model=not-a-model")).GET());
+
+        Assertions.assertEquals(405, response.statusCode());
+        Assertions.assertEquals("POST", response.headers().firstValue("Allow").orElse(null));
+    }
+
+    @Test
+    void requiresModelWithoutDefault() throws Exception {
+        HttpResponse<String> response = post("/transcribe", "audio/pcm");
+
+        Assertions.assertEquals(400, response.statusCode());
+        Assertions.assertTrue(error(response).contains("No model"));
+    }
+
+    @Test
+    void rejectsModelsOutsideModelsDirectory() throws Exception {
+        Assertions.assertEquals(404, post("/transcribe?model=missing", "audio/pcm").statusCode());
+        Assertions.assertEquals(404, post("/transcribe?model=..%2Fnot-a-model", "audio/pcm").statusCode());
+        Assertions.assertEquals(404, post("/transcribe?model=.hidden", "audio/pcm").statusCode());
+    }
+
+    @Test
+    void rejectsUnsupportedContentType() throws Exception {
+        HttpResponse<String> response = post("/transcribe?model=not-a-model", "text/plain");
+
+        Assertions.assertEquals(415, response.statusCode());
+    }
+
+    @Test
+    void rejectsInvalidPcmParameters() throws Exception {
+        HttpResponse<String> response = post("/transcribe?model=not-a-model", "audio/pcm; rate=fast");
+
+        Assertions.assertEquals(400, response.statusCode());
+    }
+
+    @Test
+    void reportsModelThatFailsToLoad() throws Exception {
+        HttpResponse<String> response = post("/transcribe?model=not-a-model", "audio/pcm");
+
+        Assertions.assertEquals(500, response.statusCode());
+        Assertions.assertTrue(error(response).contains("Failed to load model"));
+    }
+
+    @Test
+    void reportsHealth() throws Exception {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/health")).GET());
+
+        Assertions.assertEquals(200, response.statusCode());
+        JsonNode health = JSON.readTree(response.body());
+        Assertions.assertEquals("ok", health.get("status").asText());
+        Assertions.assertEquals(0, health.get("active").asInt());
+        Assertions.assertEquals(2, health.get("maxConcurrent").asInt());
+        Assertions.assertEquals(3, health.get("maxQueued").asInt());
+        Assertions.assertTrue(health.get("pools").isArray());
+    }
+
+    private HttpResponse<String> post(String path, String contentType) throws Exception {
+        return send(HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[3200])));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    private static String error(HttpResponse<String> response) throws IOException {
+        return JSON.readTree(response.body()).get("error").asText();
+    }
+}
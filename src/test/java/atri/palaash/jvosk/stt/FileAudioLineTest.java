@@ -0,0 +1,103 @@
+package atri.palaash.jvosk.stt;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * {@link FileAudioLine}: the PCM it hands out, whole samples only, and real-time pacing.
+ */
+class FileAudioLineTest {
+
+    private static final int BYTES_PER_SECOND = FfmpegPcmDecoder.SAMPLE_RATE * 2;
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void readsPcmOfWavFile() throws IOException {
+        byte[] pcm = randomPcm(BYTES_PER_SECOND);
+        File wav = writeWav(pcm);
+
+        FileAudioLine line = new FileAudioLine(wav, false);
+        line.start();
+        Assertions.assertEquals(wav.getName(), line.getName());
+        Assertions.assertArrayEquals(pcm, readAll(line, 4096));
+        Assertions.assertEquals(-1, line.read(new byte[4096], 0, 4096));
+    }
+
+    @Test
+    void readsWholeSamplesOnly() throws IOException {
+        FileAudioLine line = new FileAudioLine("raw", new ByteArrayInputStream(randomPcm(1000)), false);
+        line.start();
+
+        Assertions.assertEquals(100, line.read(new byte[101], 0, 101));
+    }
+
+    @Test
+    void pacesReadsAtRecordingRate() throws IOException {
+        // Half a second of audio
+        byte[] pcm = randomPcm(BYTES_PER_SECOND / 2);
+        FileAudioLine line = new FileAudioLine("raw", new ByteArrayInputStream(pcm), true);
+
+        long start = System.nanoTime();
+        line.start();
+        byte[] read = readAll(line, BYTES_PER_SECOND / 50);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Assertions.assertArrayEquals(pcm, read);
+        Assertions.assertTrue(elapsedMillis >= 450, "took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void endsWhenClosed() throws IOException {
+        FileAudioLine line = new FileAudioLine("raw", new ByteArrayInputStream(randomPcm(1000)), false);
+        line.start();
+        line.close();
+
+        Assertions.assertEquals(-1, line.read(new byte[100], 0, 100));
+    }
+
+    @Test
+    void rejectsFileThatIsNotAudio() throws IOException {
+        Path text = Files.writeString(workDir.resolve("notes.wav"), "not audio");
+
+        Assertions.assertThrows(IOException.class, () -> new FileAudioLine(text.toFile(), false));
+    }
+
+    private File writeWav(byte[] pcm) throws IOException {
+        AudioFormat format = new AudioFormat(FfmpegPcmDecoder.SAMPLE_RATE, 16, 1, true, false);
+        File wav = workDir.resolve("clip.wav").toFile();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / 2),
+                AudioFileFormat.Type.WAVE, wav);
+        return wav;
+    }
+
+    private static byte[] readAll(FileAudioLine line, int chunkBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[chunkBytes];
+        int read;
+        while ((read = line.read(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomPcm(int bytes) {
+        byte[] pcm = new byte[bytes];
+        new Random(bytes).nextBytes(pcm);
+        return pcm;
+    }
+}
@@ -0,0 +1,71 @@
+package atri.palaash.jvosk.util;
+
+import atri.palaash.jvosk.util.TranscriptExporter.TranscriptSegment;
+import atri.palaash.jvosk.util.TranscriptExporter.Word;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link TranscriptArchive}: round trips and reading a stretch by time.
+ */
+class TranscriptArchiveTest {
+
+    @Test
+    void roundTripsSegments() throws IOException {
+        List<TranscriptSegment> segments = new ArrayList<>();
+        segments.add(new TranscriptSegment("hello world", 0, 900,
+                List.of(new Word("hello", 0, 400, 0.8), new Word("world", 500, 900, 1.0)), 0.9));
+        segments.add(new TranscriptSegment("Not the words, ünïcode", 1000, 1500));
+
+        List<TranscriptSegment> read = TranscriptArchive.Reader.of(TranscriptArchive.toBytes(segments)).readAll();
+
+        Assertions.assertEquals(2, read.size());
+        Assertions.assertEquals("hello world", read.get(0).text);
+        Assertions.assertEquals(2, read.get(0).words.size());
+        Assertions.assertEquals("world", read.get(0).words.get(1).text);
+        Assertions.assertEquals(500, read.get(0).words.get(1).startTimeMs);
+        Assertions.assertEquals(0.8, read.get(0).words.get(0).confidence);
+        Assertions.assertEquals("Not the words, ünïcode", read.get(1).text);
+        Assertions.assertEquals(1500, read.get(1).endTimeMs);
+    }
+
+    @Test
+    void readsSegmentsRunningIntoRange() throws IOException {
+        List<TranscriptSegment> segments = new ArrayList<>();
+        // One segment lasting the whole transcript, then short ones filling several blocks
+        segments.add(new TranscriptSegment("long", 0, 1_000_000));
+        for (int i = 1; i < TranscriptArchive.BLOCK_SEGMENTS * 4; i++) {
+            segments.add(new TranscriptSegment("short " + i, i * 1000L, i * 1000L + 500));
+        }
+        TranscriptArchive.Reader reader = TranscriptArchive.Reader.of(TranscriptArchive.toBytes(segments));
+
+        // Far into the transcript, where blocks in between end before the range
+        long from = TranscriptArchive.BLOCK_SEGMENTS * 3 * 1000L + 700;
+        List<TranscriptSegment> read = reader.read(from, from + 1000);
+
+        Assertions.assertEquals("long", read.get(0).text);
+        Assertions.assertEquals(2, read.size());
+        Assertions.assertEquals(from + 300, read.get(1).startTimeMs);
+    }
+
+    @Test
+    void includesSegmentEndingWhereRangeStarts() throws IOException {
+        List<TranscriptSegment> segments = new ArrayList<>();
+        for (int i = 0; i < TranscriptArchive.BLOCK_SEGMENTS * 2; i++) {
+            segments.add(new TranscriptSegment("segment " + i, i * 1000L, i * 1000L + 1000));
+        }
+        TranscriptArchive.Reader reader = TranscriptArchive.Reader.of(TranscriptArchive.toBytes(segments));
+
+        // The last segment of the first block ends exactly where the second block starts
+        long from = TranscriptArchive.BLOCK_SEGMENTS * 1000L;
+        List<TranscriptSegment> read = reader.read(from, from);
+
+        Assertions.assertEquals(2, read.size());
+        Assertions.assertEquals(from, read.get(0).endTimeMs);
+        Assertions.assertEquals(from, read.get(1).startTimeMs);
+    }
+}